@@ -26,9 +26,14 @@
 
 package de.unkrig.cscontrib;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.puppycrawl.tools.checkstyle.api.TokenTypes;
 
@@ -247,30 +252,66 @@ enum LocalTokenType {
         } else {
 
             // Find the corresponding constant in 'TokenTypes'.
-            int delocalized;
+            Integer delocalized = TokenTypeValues.BY_NAME.get(name);
+
+            // If the constant does not exist, then we are running against an old CS version, in which the token
+            // does not yet exist.
+            this.delocalized = delocalized == null ? -1 : delocalized;
+        }
+    }
+    private final int delocalized;
+
+    /**
+     * The values of the {@code int} constants declared in {@link TokenTypes}, by name.
+     * <p>
+     *   These are determined with ONE reflective pass over the fields of {@link TokenTypes}, which is much faster
+     *   than calling {@link Class#getField(String)} for each {@link LocalTokenType}, and then catching a {@link
+     *   NoSuchFieldException} for each token that the running CS version does not know.
+     * </p>
+     * <p>
+     *   (The constants cannot be referenced directly, because the compiler would inline their values, which differ
+     *   between CS versions.)
+     * </p>
+     */
+    private static final
+    class TokenTypeValues {
+
+        private TokenTypeValues() {}
+
+        static final Map<String, Integer> BY_NAME;
+        static {
+            Map<String, Integer> byName = new HashMap<String, Integer>();
             try {
-                delocalized = (Integer) TokenTypes.class.getField(name).get(null);
-            } catch (NoSuchFieldException nsfe) {
-                // We are running against an old CS version, in which the token does not yet exist.
-                delocalized = -1;
-            } catch (Exception e) {
-                throw new ExceptionInInitializerError(e);
+                for (Field f : TokenTypes.class.getFields()) {
+                    if (f.getType() == int.class && Modifier.isStatic(f.getModifiers())) {
+                        byName.put(f.getName(), f.getInt(null));
+                    }
+                }
+            } catch (IllegalAccessException iae) {
+                throw new ExceptionInInitializerError(iae);
             }
-            
-            this.delocalized = delocalized;
+            BY_NAME = byName;
         }
     }
-    private final int delocalized;
 
-    private static final Map<Integer, LocalTokenType> TO_LOCAL;
+    /**
+     * Maps {@link TokenTypes} constants to {@link LocalTokenType}s; {@code null} elements indicate {@link
+     * #UNKNOWN_TOKEN}. (An array is much faster than a {@code Map<Integer, LocalTokenType>}, and also avoids the
+     * boxing of the token type.)
+     */
+    private static final LocalTokenType[] TO_LOCAL;
     static {
-        Map<Integer, LocalTokenType> toLocal   = new HashMap<Integer, LocalTokenType>();
+        int maxTt = -1;
+        for (LocalTokenType ltt : LocalTokenType.values()) {
+            if (ltt.delocalized > maxTt) maxTt = ltt.delocalized;
+        }
 
+        LocalTokenType[] toLocal = new LocalTokenType[maxTt + 1];
         for (LocalTokenType ltt : LocalTokenType.values()) {
-            toLocal.put(ltt.delocalized, ltt);
+            if (ltt.delocalized != -1) toLocal[ltt.delocalized] = ltt;
         }
 
-        TO_LOCAL = Collections.unmodifiableMap(toLocal);
+        TO_LOCAL = toLocal;
     }
 
     /**
@@ -278,10 +319,99 @@ enum LocalTokenType {
      */
     public static LocalTokenType
     localize(int tt) {
-        LocalTokenType ltt = LocalTokenType.TO_LOCAL.get(tt);
+        LocalTokenType ltt = tt >= 0 && tt < LocalTokenType.TO_LOCAL.length ? LocalTokenType.TO_LOCAL[tt] : null;
         return ltt == null ? LocalTokenType.UNKNOWN_TOKEN : ltt;
     }
 
+    // Token classes. (An EnumSet is a bit set, so testing for membership is very cheap.)
+
+    /** The assignment operators, e.g. "{@code =}" and "{@code +=}". */
+    public static final Set<LocalTokenType> ASSIGNMENT_OPERATORS = Collections.unmodifiableSet(EnumSet.of(
+        ASSIGN,       // "="
+        BAND_ASSIGN,  // "&="
+        BOR_ASSIGN,   // "|="
+        BSR_ASSIGN,   // ">>>="
+        BXOR_ASSIGN,  // "^="
+        DIV_ASSIGN,   // "/="
+        MINUS_ASSIGN, // "-="
+        MOD_ASSIGN,   // "%="
+        PLUS_ASSIGN,  // "+="
+        SL_ASSIGN,    // "<<="
+        SR_ASSIGN,    // ">>="
+        STAR_ASSIGN   // "*="
+    ));
+
+    /** The binary arithmetic, bitwise, logical and relational operators, e.g. "{@code +}" and "{@code &&}". */
+    public static final Set<LocalTokenType> BINARY_OPERATORS = Collections.unmodifiableSet(EnumSet.of(
+        BAND,               // "&"
+        BOR,                // "|"
+        BSR,                // ">>>"
+        BXOR,               // "^"
+        DIV,                // "/"
+        EQUAL,              // "=="
+        GE,                 // ">="
+        GT,                 // ">"
+        LAND,               // "&&"
+        LE,                 // "<="
+        LITERAL_INSTANCEOF, // "instanceof"
+        LOR,                // "||"
+        LT,                 // "<"
+        MINUS,              // "-"
+        MOD,                // "%"
+        NOT_EQUAL,          // "!="
+        PLUS,               // "+"
+        SL,                 // "<<"
+        SR,                 // ">>"
+        STAR                // "*"
+    ));
+
+    /** The modifier keywords, e.g. "{@code public}" and "{@code static}". */
+    public static final Set<LocalTokenType> MODIFIER_KEYWORDS = Collections.unmodifiableSet(EnumSet.of(
+        ABSTRACT,
+        FINAL,
+        LITERAL_NATIVE,
+        LITERAL_PRIVATE,
+        LITERAL_PROTECTED,
+        LITERAL_PUBLIC,
+        LITERAL_STATIC,
+        LITERAL_SYNCHRONIZED,
+        LITERAL_TRANSIENT,
+        LITERAL_VOLATILE,
+        STRICTFP
+    ));
+
+    /** The opening and closing brackets, e.g. "{@code (}" and "{@code >}" (of a type argument list). */
+    public static final Set<LocalTokenType> BRACKETS = Collections.unmodifiableSet(EnumSet.of(
+        ARRAY_DECLARATOR, // "["
+        GENERIC_END,      // ">"
+        GENERIC_START,    // "<"
+        INDEX_OP,         // "["
+        LCURLY,           // "{"
+        LPAREN,           // "("
+        RBRACK,           // "]"
+        RCURLY,           // "}"
+        RPAREN            // ")"
+    ));
+
+    /** The declarations of packages, types, members, parameters and variables. */
+    public static final Set<LocalTokenType> DECLARATIONS = Collections.unmodifiableSet(EnumSet.of(
+        ANNOTATION_DEF,
+        ANNOTATION_FIELD_DEF,
+        CLASS_DEF,
+        COMPACT_CTOR_DEF,
+        CTOR_DEF,
+        ENUM_CONSTANT_DEF,
+        ENUM_DEF,
+        INTERFACE_DEF,
+        METHOD_DEF,
+        PACKAGE_DEF,
+        PARAMETER_DEF,
+        PATTERN_VARIABLE_DEF,
+        RECORD_COMPONENT_DEF,
+        RECORD_DEF,
+        VARIABLE_DEF
+    ));
+
     /**
      * @return The {@link TokenTypes} corresponding with the given {@link LocalTokenType} constant, or -1
      *         iff {@code ltt} has no counterpart in this CheckStyle version
@@ -303,4 +433,10 @@ enum LocalTokenType {
 
         return tts;
     }
+
+    /** @return The values of the constants declared in {@link TokenTypes} that map the given {@code ltts} */
+    public static int[]
+    delocalize(Collection<LocalTokenType> ltts) {
+        return LocalTokenType.delocalize(ltts.toArray(new LocalTokenType[ltts.size()]));
+    }
 }
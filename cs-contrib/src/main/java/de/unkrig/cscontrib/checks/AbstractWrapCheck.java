@@ -30,9 +30,11 @@ import static de.unkrig.cscontrib.LocalTokenType.CASE_GROUP;
 import static de.unkrig.cscontrib.LocalTokenType.MODIFIERS;
 import static de.unkrig.cscontrib.checks.AbstractWrapCheck.Control.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
@@ -41,6 +43,8 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
+import de.unkrig.cscontrib.util.FlatAst;
+import de.unkrig.cscontrib.util.LineGeometry;
 import de.unkrig.csdoclet.annotation.IntegerRuleProperty;
 import de.unkrig.csdoclet.annotation.Message;
 
@@ -286,8 +290,52 @@ class AbstractWrapCheck extends AbstractCheck {
         throw exception;
     }
 
+    /**
+     * The snapshot of the AST of the current file.
+     */
+    protected FlatAst flatAst;
+
+    /**
+     * The line geometry of the current file.
+     */
+    private LineGeometry lineGeometry;
+
+    /**
+     * Whether {@link #compilePrograms()} was already invoked.
+     */
+    private boolean programsCompiled;
+
+    @Override public void
+    init() {
+        this.compilePrograms();
+        this.programsCompiled = true;
+    }
+
+    @Override public void
+    beginTree(DetailAST rootAst) {
+        if (!this.programsCompiled) this.init();
+        this.flatAst      = FlatAst.of(rootAst);
+        this.lineGeometry = LineGeometry.of(this.getFileContents());
+    }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        FlatAst.release(rootAst);
+        LineGeometry.release(this.getFileContents());
+        this.flatAst      = null;
+        this.lineGeometry = null;
+    }
+
+    /**
+     * Hook for derived classes to {@link #compile(Object...)} the {@link Program}s that they pass to {@link
+     * #checkChildren(DetailAST, Program)}. Invoked once, after the check was configured.
+     */
+    protected void
+    compilePrograms() {}
+
     /**
      * @return Whether all children of the given <var>ast</var> appear in the same line.
+     * @see    #spansSingleLine(DetailAST)
      */
     protected static boolean
     isSingleLine(DetailAST ast) {
@@ -297,8 +345,29 @@ class AbstractWrapCheck extends AbstractCheck {
         );
     }
 
+    /**
+     * Equivalent with {@link #isSingleLine(DetailAST)}, but answers from the {@link FlatAst} of the current file
+     * instead of walking the tree.
+     */
+    protected boolean
+    spansSingleLine(DetailAST ast) {
+        FlatAst fa = this.flatAst;
+        return fa.isSingleLine(fa.indexOf(ast));
+    }
+
+    /**
+     * @return The {@link FlatAst#getFingerprint(int) fingerprint} of the given <var>ast</var>, for matching against
+     *         {@link de.unkrig.cscontrib.util.AstUtil.AncestorPattern}s
+     */
+    protected long
+    getFingerprint(DetailAST ast) {
+        FlatAst fa = this.flatAst;
+        return fa.getFingerprint(fa.indexOf(ast));
+    }
+
     /**
      * @return The leftmost descendant of the given <var>ast</var>
+     * @see    #leftmostDescendant(DetailAST)
      */
     protected static DetailAST
     getLeftmostDescendant(DetailAST ast) {
@@ -314,8 +383,19 @@ class AbstractWrapCheck extends AbstractCheck {
         }
     }
 
+    /**
+     * Equivalent with {@link #getLeftmostDescendant(DetailAST)}, but answers from the {@link FlatAst} of the current
+     * file instead of walking the tree.
+     */
+    protected DetailAST
+    leftmostDescendant(DetailAST ast) {
+        FlatAst fa = this.flatAst;
+        return fa.getAst(fa.getLeftmostDescendant(fa.indexOf(ast)));
+    }
+
     /**
      * @return The rightmost descendant of the given <var>ast</var>
+     * @see    #rightmostDescendant(DetailAST)
      */
     protected static DetailAST
     getRightmostDescendant(DetailAST ast) {
@@ -330,16 +410,28 @@ class AbstractWrapCheck extends AbstractCheck {
         }
     }
 
+    /**
+     * Equivalent with {@link #getRightmostDescendant(DetailAST)}, but answers from the {@link FlatAst} of the current
+     * file instead of walking the tree.
+     */
+    protected DetailAST
+    rightmostDescendant(DetailAST ast) {
+        FlatAst fa = this.flatAst;
+        return fa.getAst(fa.getRightmostDescendant(fa.indexOf(ast)));
+    }
+
     /**
      * Verifies that the children of the given {@code ast} are positioned as specified.
+     * <p>
+     *   Interprets the {@code args} on each invocation; {@link #checkChildren(DetailAST, Program)} is equivalent,
+     *   but much faster.
+     * </p>
      *
      * @param args A sequence of {@link LocalTokenType}s and {@link Control}s
      */
     protected final void
     checkChildren(DetailAST ast, Object... args) {
 
-        @SuppressWarnings("unused") AstDumper astDumper = new AstDumper(ast); // For debugging
-
         DetailAST child = Cs820.getFirstChild(ast);
 
         // Determine the "indentation parent".
@@ -360,7 +452,7 @@ class AbstractWrapCheck extends AbstractCheck {
             break;
 
         case DOT:
-            ast = AbstractWrapCheck.getLeftmostDescendant(ast);
+            ast = this.leftmostDescendant(ast);
             break;
 
         default:
@@ -379,7 +471,7 @@ class AbstractWrapCheck extends AbstractCheck {
 
                 case END:
                     if (child == null) return;
-                    this.log(child, "Unexpected extra token ''{0}''", Cs820.getText(child));
+                    this.logOrRecord(child, "Unexpected extra token ''{0}''", Cs820.getText(child));
                     return;
 
                 case OPTIONAL:
@@ -496,7 +588,7 @@ class AbstractWrapCheck extends AbstractCheck {
 
                 case ANY:
                     if (child == null) {
-                        this.log(
+                        this.logOrRecord(
                             previousAst,
                             "Token missing after ''{0}''",
                             Cs820.getText(previousAst)
@@ -504,7 +596,7 @@ class AbstractWrapCheck extends AbstractCheck {
                         return;
                     }
 
-                    previousAst = AbstractWrapCheck.getRightmostDescendant(child);
+                    previousAst = this.rightmostDescendant(child);
                     child       = Cs820.getNextSibling(child);
                     break;
 
@@ -519,31 +611,31 @@ class AbstractWrapCheck extends AbstractCheck {
 
                     case 0:
                         {
-                            DetailAST c = AbstractWrapCheck.getLeftmostDescendant(child);
+                            DetailAST c = this.leftmostDescendant(child);
                             if (Cs820.getLineNo(c) == Cs820.getLineNo(previousAst)) {
                                 mode = 1;
                             } else {
                                 mode = 2;
                                 if (Cs820.getType(child) == CASE_GROUP.delocalize()) {
-                                    this.checkWrapped(ast, c);
+                                    this.checkWrappedOrRecord(ast, c);
                                 } else {
-                                    this.checkIndented(ast, c);
+                                    this.checkIndentedOrRecord(ast, c);
                                 }
                             }
                         }
                         break;
 
                     case 1:
-                        this.checkSameLine(previousAst, AbstractWrapCheck.getLeftmostDescendant(child));
+                        this.checkSameLineOrRecord(previousAst, this.leftmostDescendant(child));
                         break;
 
                     case 2:
                         {
-                            DetailAST l = AbstractWrapCheck.getLeftmostDescendant(child);
+                            DetailAST l = this.leftmostDescendant(child);
                             if (Cs820.getLineNo(l) == Cs820.getLineNo(previousAst)) {
 
                                 if (!this.checkMultipleElementsPerLine(child)) {
-                                    this.log(
+                                    this.logOrRecord(
                                         l,
                                         AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
                                         Cs820.getText(previousAst),
@@ -552,9 +644,9 @@ class AbstractWrapCheck extends AbstractCheck {
                                 }
                             } else {
                                 if (Cs820.getType(child) == CASE_GROUP.delocalize()) {
-                                    this.checkWrapped(ast, l);
+                                    this.checkWrappedOrRecord(ast, l);
                                 } else {
-                                    this.checkIndented(ast, l);
+                                    this.checkIndentedOrRecord(ast, l);
                                 }
                             }
                         }
@@ -568,16 +660,16 @@ class AbstractWrapCheck extends AbstractCheck {
 
                     case 0:
                         if (Cs820.getLineNo(previousAst) != Cs820.getLineNo(child)) {
-                            this.checkWrapped(ast, child);
+                            this.checkWrappedOrRecord(ast, child);
                         }
                         break;
 
                     case 1:
-                        this.checkSameLine(previousAst, child);
+                        this.checkSameLineOrRecord(previousAst, child);
                         break;
 
                     case 2:
-                        this.checkWrapped(ast, child);
+                        this.checkWrappedOrRecord(ast, child);
                         break;
                     }
                     mode = 0;
@@ -587,7 +679,7 @@ class AbstractWrapCheck extends AbstractCheck {
                     assert child != null;
                     assert mode == 0;
                     if (Cs820.getLineNo(child) != Cs820.getLineNo(previousAst)) {
-                        this.checkWrapped(previousAst, child);
+                        this.checkWrappedOrRecord(previousAst, child);
                     }
                     break;
 
@@ -597,19 +689,19 @@ class AbstractWrapCheck extends AbstractCheck {
                         ;
                     } else
                     {
-                        this.checkWrapped(previousAst, child);
+                        this.checkWrappedOrRecord(previousAst, child);
                     }
                     break;
 
                 case NO_WRAP:
-                    this.checkSameLine(previousAst, AbstractWrapCheck.getLeftmostDescendant(child));
+                    this.checkSameLineOrRecord(previousAst, this.leftmostDescendant(child));
                     break;
                 }
             } else
             if (tokenType instanceof LocalTokenType) {
 
                 if (child == null) {
-                    this.log(
+                    this.logOrRecord(
                         previousAst,
                         "''{0}'' after ''{1}''",
                         tokenType,
@@ -619,7 +711,7 @@ class AbstractWrapCheck extends AbstractCheck {
                 }
 
                 if (Cs820.getType(child) != ((LocalTokenType) tokenType).delocalize()) {
-                    this.log(
+                    this.logOrRecord(
                         child,
                         "Expected ''{0}'' instead of ''{1}''",
                         tokenType,
@@ -629,7 +721,7 @@ class AbstractWrapCheck extends AbstractCheck {
                 }
 
                 assert child != null;
-                previousAst = AbstractWrapCheck.getRightmostDescendant(child);
+                previousAst = this.rightmostDescendant(child);
                 child       = Cs820.getNextSibling(child);
             } else
             {
@@ -638,6 +730,572 @@ class AbstractWrapCheck extends AbstractCheck {
         }
     }
 
+    /**
+     * Verifies that the children of the given {@code ast} are positioned as specified by the {@code program}.
+     * <p>
+     *   If the system property "{@code de.unkrig.cscontrib.checks.AbstractWrapCheck.verifyPrograms}" is {@code
+     *   true}, then the {@code program} is also interpreted, and an {@link AssertionError} is thrown iff the results
+     *   differ.
+     * </p>
+     */
+    protected final void
+    checkChildren(DetailAST ast, Program program) {
+
+        if (AbstractWrapCheck.VERIFY_PROGRAMS) this.verify(ast, program);
+
+        this.execute(ast, program);
+    }
+
+    private void
+    execute(DetailAST ast, Program program) {
+
+        final FlatAst fa = this.flatAst;
+
+        int parent = fa.indexOf(ast);
+        int child  = fa.getFirstChild(parent);
+
+        // Determine the "indentation parent".
+        switch (fa.getLocalType(parent)) {
+
+        case ELIST:      // There's an ELIST between the METH_CALL ('(') and the argument EXPRs.
+            parent = fa.getParent(parent);
+            break;
+
+        case SLIST:
+            if (fa.getType(fa.getParent(parent)) == CASE_GROUP.delocalize()) {
+                parent = fa.getParent(fa.getParent(parent));
+            }
+            break;
+
+        case PARAMETERS:
+            parent = fa.getPreviousSibling(parent); // Use the LPAREN, not the PARAMETERS.
+            break;
+
+        case DOT:
+            parent = fa.getLeftmostDescendant(parent);
+            break;
+
+        default:
+            ;
+        }
+
+        final Program.Op[] ops     = program.ops;
+        final int[]        types   = program.types;
+        final int[]        targets = program.targets;
+
+        int previous = parent;
+        int mode     = 0; // SUPPRESS CHECKSTYLE UsageDistance
+        for (int pc = 0;;) {
+            int ip = pc++;
+            switch (ops[ip]) {
+
+            case EXPECT:
+                if (child == FlatAst.NONE) {
+                    this.logOrRecord(
+                        fa.getAst(previous),
+                        "''{0}'' after ''{1}''",
+                        program.tokenTypes[ip],
+                        Cs820.getText(fa.getAst(previous))
+                    );
+                    return;
+                }
+
+                if (fa.getType(child) != types[ip]) {
+                    this.logOrRecord(
+                        fa.getAst(child),
+                        "Expected ''{0}'' instead of ''{1}''",
+                        program.tokenTypes[ip],
+                        Cs820.getText(fa.getAst(child)) + "'"
+                    );
+                    return;
+                }
+
+                previous = fa.getRightmostDescendant(child);
+                child    = fa.getNextSibling(child);
+                break;
+
+            case ANY:
+                if (child == FlatAst.NONE) {
+                    this.logOrRecord(
+                        fa.getAst(previous),
+                        "Token missing after ''{0}''",
+                        Cs820.getText(fa.getAst(previous))
+                    );
+                    return;
+                }
+
+                previous = fa.getRightmostDescendant(child);
+                child    = fa.getNextSibling(child);
+                break;
+
+            case END:
+                if (child == FlatAst.NONE) return;
+                this.logOrRecord(fa.getAst(child), "Unexpected extra token ''{0}''", Cs820.getText(fa.getAst(child)));
+                return;
+
+            case OPTIONAL:
+                if (child != FlatAst.NONE && fa.getType(child) == types[ip]) {
+                    previous = child;
+                    child    = fa.getNextSibling(child);
+                }
+                break;
+
+            case OPTIONAL_ANY:
+                if (child != FlatAst.NONE) {
+                    previous = child;
+                    child    = fa.getNextSibling(child);
+                }
+                break;
+
+            case JUMP:
+                pc = targets[ip];
+                break;
+
+            case FORK_IF_END:
+                if (child == FlatAst.NONE) pc = targets[ip];
+                break;
+
+            case FORK_IF_ANY:
+                if (child != FlatAst.NONE) pc = targets[ip];
+                break;
+
+            case FORK_IF_TYPE:
+                if (child != FlatAst.NONE && fa.getType(child) == types[ip]) pc = targets[ip];
+                break;
+
+            case FORK_UNLESS_TYPE:
+                if (child == FlatAst.NONE || fa.getType(child) != types[ip]) pc = targets[ip];
+                break;
+
+            case INDENT_IF_CHILDREN:
+            case MAY_INDENT:
+                assert child != FlatAst.NONE;
+                if (ops[ip] == Program.Op.INDENT_IF_CHILDREN && fa.getFirstChild(child) == FlatAst.NONE) break;
+                switch (mode) {
+
+                case 0:
+                    {
+                        int c = fa.getLeftmostDescendant(child);
+                        if (fa.getLineNo(c) == fa.getLineNo(previous)) {
+                            mode = 1;
+                        } else {
+                            mode = 2;
+                            if (fa.getType(child) == CASE_GROUP.delocalize()) {
+                                this.checkWrappedOrRecord(fa.getAst(parent), fa.getAst(c));
+                            } else {
+                                this.checkIndentedOrRecord(fa.getAst(parent), fa.getAst(c));
+                            }
+                        }
+                    }
+                    break;
+
+                case 1:
+                    this.checkSameLineOrRecord(
+                        fa.getAst(previous),
+                        fa.getAst(fa.getLeftmostDescendant(child))
+                    );
+                    break;
+
+                case 2:
+                    {
+                        int l = fa.getLeftmostDescendant(child);
+                        if (fa.getLineNo(l) == fa.getLineNo(previous)) {
+
+                            if (!this.checkMultipleElementsPerLine(fa.getAst(child))) {
+                                this.logOrRecord(
+                                    fa.getAst(l),
+                                    AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
+                                    Cs820.getText(fa.getAst(previous)),
+                                    Cs820.getText(fa.getAst(l))
+                                );
+                            }
+                        } else {
+                            if (fa.getType(child) == CASE_GROUP.delocalize()) {
+                                this.checkWrappedOrRecord(fa.getAst(parent), fa.getAst(l));
+                            } else {
+                                this.checkIndentedOrRecord(fa.getAst(parent), fa.getAst(l));
+                            }
+                        }
+                    }
+                    break;
+                }
+                break;
+
+            case UNINDENT:
+                assert child != FlatAst.NONE;
+                switch (mode) {
+
+                case 0:
+                    if (fa.getLineNo(previous) != fa.getLineNo(child)) {
+                        this.checkWrappedOrRecord(fa.getAst(parent), fa.getAst(child));
+                    }
+                    break;
+
+                case 1:
+                    this.checkSameLineOrRecord(fa.getAst(previous), fa.getAst(child));
+                    break;
+
+                case 2:
+                    this.checkWrappedOrRecord(fa.getAst(parent), fa.getAst(child));
+                    break;
+                }
+                mode = 0;
+                break;
+
+            case MAY_WRAP:
+                assert child != FlatAst.NONE;
+                assert mode == 0;
+                if (fa.getLineNo(child) != fa.getLineNo(previous)) {
+                    this.checkWrappedOrRecord(fa.getAst(previous), fa.getAst(child));
+                }
+                break;
+
+            case MUST_WRAP:
+                assert mode == 0;
+                if (fa.getType(previous) == MODIFIERS.delocalize()) {
+                    ;
+                } else
+                {
+                    this.checkWrappedOrRecord(fa.getAst(previous), fa.getAstOrNull(child));
+                }
+                break;
+
+            case NO_WRAP:
+                this.checkSameLineOrRecord(
+                    fa.getAst(previous),
+                    fa.getAst(fa.getLeftmostDescendant(child))
+                );
+                break;
+            }
+        }
+    }
+
+    private static final boolean
+    VERIFY_PROGRAMS = Boolean.getBoolean(AbstractWrapCheck.class.getName() + ".verifyPrograms");
+
+    /**
+     * Iff non-{@code null}, then the checks that {@link #checkChildren(DetailAST, Object...)} and {@link
+     * #checkChildren(DetailAST, Program)} would execute are recorded here instead.
+     */
+    private List<String> record;
+
+    /**
+     * Executes the {@code program} on the {@code ast}, and also interprets it; throws an {@link AssertionError} iff
+     * the two do not execute exactly the same checks.
+     */
+    private void
+    verify(DetailAST ast, Program program) {
+
+        List<String> expected = new ArrayList<String>();
+        this.record = expected;
+        try {
+            this.checkChildren(ast, program.args);
+        } finally {
+            this.record = null;
+        }
+
+        List<String> actual = new ArrayList<String>();
+        this.record = actual;
+        try {
+            this.execute(ast, program);
+        } finally {
+            this.record = null;
+        }
+
+        if (!actual.equals(expected)) {
+            throw new AssertionError(
+                ast
+                + ": Program "
+                + program
+                + " executes "
+                + actual
+                + ", but the interpreter executes "
+                + expected
+            );
+        }
+    }
+
+    private void
+    logOrRecord(DetailAST ast, String key, Object... args) {
+        if (this.record != null) {
+            this.record.add("log(" + ast + ", " + key + ", " + Arrays.toString(args) + ")");
+        } else {
+            this.log(ast, key, args);
+            if (DecisionTrace.ENABLED) DecisionTrace.record(this, ast, "children", "token sequence", key);
+        }
+    }
+
+    private void
+    checkIndentedOrRecord(DetailAST previous, DetailAST next) {
+        if (this.record != null) {
+            this.record.add("checkIndented(" + previous + ", " + next + ")");
+        } else {
+            this.checkIndented(previous, next);
+        }
+    }
+
+    private void
+    checkWrappedOrRecord(DetailAST previous, DetailAST next) {
+        if (this.record != null) {
+            this.record.add("checkWrapped(" + previous + ", " + next + ")");
+        } else {
+            this.checkWrapped(previous, next);
+        }
+    }
+
+    private void
+    checkSameLineOrRecord(DetailAST left, DetailAST right) {
+        if (this.record != null) {
+            this.record.add("checkSameLine(" + left + ", " + right + ")");
+        } else {
+            this.checkSameLine(left, right);
+        }
+    }
+
+    /**
+     * Compiles the {@code args} for {@link #checkChildren(DetailAST, Program)}.
+     *
+     * @param args A sequence of {@link LocalTokenType}s and {@link Control}s, exactly as for {@link
+     *             #checkChildren(DetailAST, Object...)}
+     */
+    protected static Program
+    compile(Object... args) { return new Program(args); }
+
+    /**
+     * The compiled form of the {@code args} of {@link #checkChildren(DetailAST, Object...)}: The labels are resolved
+     * to instruction indexes, and the lookahead of each FORK is reduced to a single test of the next child.
+     * Immutable.
+     */
+    protected static final
+    class Program {
+
+        enum Op {
+            EXPECT, ANY, END, OPTIONAL, OPTIONAL_ANY,
+            JUMP, FORK_IF_END, FORK_IF_ANY, FORK_IF_TYPE, FORK_UNLESS_TYPE,
+            MAY_INDENT, INDENT_IF_CHILDREN, UNINDENT, MAY_WRAP, MUST_WRAP, NO_WRAP,
+        }
+
+        /** The source of this program; for verification and debugging. */
+        final Object[] args;
+
+        /** The instructions. */
+        final Op[] ops;
+
+        /**
+         * For {@link Op#EXPECT}, {@link Op#OPTIONAL}, {@link Op#FORK_IF_TYPE} and {@link Op#FORK_UNLESS_TYPE}: The
+         * {@link com.puppycrawl.tools.checkstyle.api.TokenTypes} value to test the next child against.
+         */
+        final int[] types;
+
+        /** For {@link Op#EXPECT}: The expected token type, as it appears in messages. */
+        final LocalTokenType[] tokenTypes;
+
+        /** For {@link Op#JUMP} and the {@code FORK_...} instructions: The index of the target instruction. */
+        final int[] targets;
+
+        Program(Object[] args) {
+            this.args = args.clone();
+
+            Op[]             ops        = new Op[args.length];
+            int[]            types      = new int[args.length];
+            LocalTokenType[] tokenTypes = new LocalTokenType[args.length];
+            int[]            targets    = new int[args.length];
+
+            // Maps each index into "args" to the index of the instruction that it compiles to; -1 for the operands
+            // of OPTIONAL.
+            int[] pcs = new int[args.length + 1];
+            Arrays.fill(pcs, -1);
+
+            int pc = 0;
+            for (int idx = 0; idx < args.length;) {
+                pcs[idx] = pc;
+
+                Object arg = args[idx++];
+
+                if (arg instanceof LocalTokenType) {
+                    ops[pc]        = Op.EXPECT;
+                    types[pc]      = ((LocalTokenType) arg).delocalize();
+                    tokenTypes[pc] = (LocalTokenType) arg;
+                    pc++;
+                    continue;
+                }
+
+                if (!(arg instanceof Control)) throw new AssertionError(arg);
+
+                Control control = (Control) arg;
+                switch (control) {
+
+                case END:                ops[pc++] = Op.END;                break;
+                case ANY:                ops[pc++] = Op.ANY;                break;
+                case MAY_INDENT:         ops[pc++] = Op.MAY_INDENT;         break;
+                case INDENT_IF_CHILDREN: ops[pc++] = Op.INDENT_IF_CHILDREN; break;
+                case UNINDENT:           ops[pc++] = Op.UNINDENT;           break;
+                case MAY_WRAP:           ops[pc++] = Op.MAY_WRAP;           break;
+                case MUST_WRAP:          ops[pc++] = Op.MUST_WRAP;          break;
+                case NO_WRAP:            ops[pc++] = Op.NO_WRAP;            break;
+
+                case OPTIONAL:
+                    {
+                        // Notice: The "skippables" between the OPTIONAL and its operand are NOT executed.
+                        Object operand = args[idx++];
+                        while (AbstractWrapCheck.SKIPPABLES.contains(operand)) operand = args[idx++];
+
+                        if (operand == ANY) {
+                            ops[pc] = Op.OPTIONAL_ANY;
+                        } else {
+                            ops[pc]   = Op.OPTIONAL;
+                            types[pc] = (
+                                operand instanceof LocalTokenType
+                                ? ((LocalTokenType) operand).delocalize()
+                                : -1
+                            );
+                        }
+                        pc++;
+                    }
+                    break;
+
+                case FORK1:
+                case FORK2:
+                case FORK3:
+                case FORK4:
+                case FORK5:
+                case FORK6:
+                case FORK7:
+                case FORK8:
+                case FORK9:
+                    {
+                        Control label = Control.values()[control.ordinal() - FORK1.ordinal() + LABEL1.ordinal()];
+
+                        int destination = Arrays.asList(args).indexOf(label);
+                        if (destination == -1) {
+                            throw new AssertionError(control + ": Label '" + label + "' undefined");
+                        }
+
+                        destination++;
+
+                        // Decide, once and for all, how to decide whether to branch or to continue. (This is the
+                        // same logic as in the interpreter.)
+                        Op  op;
+                        int type = -1;
+                        LOOKAHEAD:
+                        for (int i = destination;; i++) {
+                            Object da = args[i];
+                            if (AbstractWrapCheck.SKIPPABLES.contains(da)) {
+                                ;
+                            } else
+                            if (da == END) {
+                                op = Op.FORK_IF_END;
+                                break LOOKAHEAD;
+                            } else
+                            if (da instanceof LocalTokenType) {
+                                op   = Op.FORK_IF_TYPE;
+                                type = ((LocalTokenType) da).delocalize();
+                                break LOOKAHEAD;
+                            } else
+                            {
+                                for (int j = idx;; j++) {
+                                    Object na = args[j];
+                                    if (AbstractWrapCheck.SKIPPABLES.contains(na)) {
+                                        ;
+                                    } else
+                                    if (na == END) {
+                                        op = Op.FORK_IF_ANY;
+                                        break LOOKAHEAD;
+                                    } else
+                                    if (na instanceof LocalTokenType) {
+                                        op   = Op.FORK_UNLESS_TYPE;
+                                        type = ((LocalTokenType) na).delocalize();
+                                        break LOOKAHEAD;
+                                    } else
+                                    if (na == ANY) {
+                                        assert da != ANY;
+                                        op = Op.FORK_IF_END;
+                                        break LOOKAHEAD;
+                                    } else
+                                    if (da == ANY) {
+                                        op = Op.FORK_IF_ANY;
+                                        break LOOKAHEAD;
+                                    } else
+                                    {
+                                        assert false : na + " / " + da;
+                                    }
+                                }
+                            }
+                        }
+
+                        ops[pc]     = op;
+                        types[pc]   = type;
+                        targets[pc] = destination; // Resolved below.
+                        pc++;
+                    }
+                    break;
+
+                case BRANCH1:
+                case BRANCH2:
+                case BRANCH3:
+                case BRANCH4:
+                case BRANCH5:
+                case BRANCH6:
+                case BRANCH7:
+                case BRANCH8:
+                case BRANCH9:
+                    {
+                        Control label = Control.values()[control.ordinal() - BRANCH1.ordinal() + LABEL1.ordinal()];
+
+                        int destination = Arrays.asList(args).indexOf(label);
+                        if (destination == -1) {
+                            throw new AssertionError(control + ": Label '" + label + "' undefined");
+                        }
+
+                        ops[pc]     = Op.JUMP;
+                        targets[pc] = destination + 1; // Resolved below.
+                        pc++;
+                    }
+                    break;
+
+                case LABEL1:
+                case LABEL2:
+                case LABEL3:
+                case LABEL4:
+                case LABEL5:
+                case LABEL6:
+                case LABEL7:
+                case LABEL8:
+                case LABEL9:
+                    ;
+                    break;
+                }
+            }
+            pcs[args.length] = pc;
+
+            // Resolve the jump targets.
+            for (int i = 0; i < pc; i++) {
+                switch (ops[i]) {
+
+                case JUMP:
+                case FORK_IF_END:
+                case FORK_IF_ANY:
+                case FORK_IF_TYPE:
+                case FORK_UNLESS_TYPE:
+                    targets[i] = pcs[targets[i]];
+                    if (targets[i] == -1) throw new AssertionError("Jump into the operands of OPTIONAL");
+                    break;
+
+                default:
+                    ;
+                }
+            }
+
+            this.ops        = Arrays.copyOf(ops, pc);
+            this.types      = Arrays.copyOf(types, pc);
+            this.tokenTypes = Arrays.copyOf(tokenTypes, pc);
+            this.targets    = Arrays.copyOf(targets, pc);
+        }
+
+        @Override public String
+        toString() { return Arrays.toString(this.args); }
+    }
+
     /**
      * Hook for derived classes to check whether multiple elements in one line (e.g. method call arguments) are
      * allowed.
@@ -668,8 +1326,11 @@ class AbstractWrapCheck extends AbstractCheck {
     checkIndented(DetailAST previous, DetailAST next) {
         if (Cs820.getLineNo(next) == Cs820.getLineNo(previous)) {
             this.log(next, AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP, Cs820.getText(previous), Cs820.getText(next));
+            if (DecisionTrace.ENABLED) {
+                DecisionTrace.record(this, next, "indented", "same line", AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP);
+            }
         } else {
-            this.checkAlignment(next, this.calculateIndentation(previous) + this.basicOffset);
+            this.checkAlignment(next, this.calculateIndentation(previous) + this.basicOffset, "indented");
         }
     }
 
@@ -681,8 +1342,11 @@ class AbstractWrapCheck extends AbstractCheck {
     checkUnindented(DetailAST previous, DetailAST next) {
         if (Cs820.getLineNo(next) == Cs820.getLineNo(previous)) {
             this.log(next, AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP, Cs820.getText(previous), Cs820.getText(next));
+            if (DecisionTrace.ENABLED) {
+                DecisionTrace.record(this, next, "unindented", "same line", AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP);
+            }
         } else {
-            this.checkAlignment(next, this.calculateIndentation(previous) - this.basicOffset);
+            this.checkAlignment(next, this.calculateIndentation(previous) - this.basicOffset, "unindented");
         }
     }
 
@@ -693,8 +1357,11 @@ class AbstractWrapCheck extends AbstractCheck {
     checkWrapped(DetailAST previous, DetailAST next) {
         if (Cs820.getLineNo(next) == Cs820.getLineNo(previous)) {
             this.log(next, AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP, Cs820.getText(previous), Cs820.getText(next));
+            if (DecisionTrace.ENABLED) {
+                DecisionTrace.record(this, next, "wrapped", "same line", AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP);
+            }
         } else {
-            this.checkAlignment(next, this.calculateIndentation(previous));
+            this.checkAlignment(next, this.calculateIndentation(previous), "wrapped");
         }
     }
 
@@ -703,7 +1370,8 @@ class AbstractWrapCheck extends AbstractCheck {
      */
     protected void
     checkSameLine(DetailAST left, DetailAST right) {
-        if (Cs820.getLineNo(left) != Cs820.getLineNo(right)) {
+        boolean sameLine = Cs820.getLineNo(left) == Cs820.getLineNo(right);
+        if (!sameLine) {
             this.log(
                 right,
                 AbstractWrapCheck.MESSAGE_KEY_MUST_JOIN,
@@ -711,17 +1379,27 @@ class AbstractWrapCheck extends AbstractCheck {
                 Cs820.getText(left)
             );
         }
+        if (DecisionTrace.ENABLED) {
+            DecisionTrace.record(
+                this,
+                right,
+                "same line",
+                sameLine ? "same line" : "wrapped",
+                sameLine ? DecisionTrace.OK : AbstractWrapCheck.MESSAGE_KEY_MUST_JOIN
+            );
+        }
     }
 
     /**
      * Logs a problem iff the given {@code ast} is not vertically positioned at the given {@code targetColumnNo}.
      *
      * @param targetColumnNo Counting from zero
+     * @param rule           The name of the rule that requires the alignment, for the {@link DecisionTrace}
      */
     private void
-    checkAlignment(DetailAST ast, int targetColumnNo) {
-        int actualColumnNo = AbstractWrapCheck.lengthExpandedTabs(
-            this.getLines()[Cs820.getLineNo(ast) - 1],
+    checkAlignment(DetailAST ast, int targetColumnNo, String rule) {
+        int actualColumnNo = this.lineGeometry.getExpandedColumn(
+            Cs820.getLineNo(ast),
             Cs820.getColumnNo(ast),
             this.getTabWidth()
         );
@@ -734,6 +1412,15 @@ class AbstractWrapCheck extends AbstractCheck {
                 actualColumnNo + 1
             );
         }
+        if (DecisionTrace.ENABLED) {
+            DecisionTrace.record(
+                this,
+                ast,
+                rule,
+                "column " + (actualColumnNo + 1) + " vs. " + (targetColumnNo + 1),
+                actualColumnNo == targetColumnNo ? DecisionTrace.OK : AbstractWrapCheck.MESSAGE_KEY_WRONG_COLUMN
+            );
+        }
     }
 
     /**
@@ -764,27 +1451,6 @@ class AbstractWrapCheck extends AbstractCheck {
      */
     private int
     calculateIndentation(DetailAST ast) {
-        String line = this.getLines()[Cs820.getLineNo(ast) - 1];
-
-        int result = 0;
-        for (int i = 0; i < line.length(); ++i) {
-            switch (line.charAt(i)) {
-
-            case ' ':
-                ++result;
-                break;
-
-            case '\t':
-                {
-                    int tabWidth = this.getTabWidth();
-                    result += tabWidth - (result % tabWidth);
-                }
-                break;
-
-            default:
-                return result;
-            }
-        }
-        return 0;
+        return this.lineGeometry.getIndentation(Cs820.getLineNo(ast), this.getTabWidth());
     }
 }
@@ -33,6 +33,8 @@ import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.Rule;
@@ -227,23 +229,31 @@ class Alignment extends AbstractCheck {
     private DetailAST previousCaseGroup;
     private DetailAST previousAssignment;
 
+    /** The snapshot of the AST of the current file. */
+    private FlatAst flatAst;
+
+    private static final AncestorPattern[] IN_CLASS_INTERFACE_ENUM_BODY = {
+        AstUtil.ANY_NODE.grandParent(LocalTokenType.CLASS_DEF),
+        AstUtil.ANY_NODE.grandParent(LocalTokenType.INTERFACE_DEF),
+        AstUtil.ANY_NODE.grandParent(LocalTokenType.ENUM_DEF),
+    };
+
+    private static final AncestorPattern IN_SLIST = AstUtil.ANY_NODE.parent(LocalTokenType.SLIST);
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
 
-        @SuppressWarnings("unused") AstDumper ad = new AstDumper(ast);
+        FlatAst flatAst     = this.flatAst;
+        int     node        = flatAst.indexOf(ast);
+        long    fingerprint = flatAst.getFingerprint(node);
 
-        switch (LocalTokenType.localize(Cs820.getType(ast))) {
+        switch (flatAst.getLocalType(node)) {
 
         case VARIABLE_DEF:
             if (
-                !AstUtil.previousSiblingTypeIs(ast, LocalTokenType.COMMA)
-                && AstUtil.grandParentTypeIs(
-                    ast,
-                    LocalTokenType.CLASS_DEF,
-                    LocalTokenType.INTERFACE_DEF,
-                    LocalTokenType.ENUM_DEF
-                )
+                flatAst.getLocalTypeOrNull(flatAst.getPreviousSibling(node)) != LocalTokenType.COMMA
+                && AncestorPattern.matchesAny(fingerprint, Alignment.IN_CLASS_INTERFACE_ENUM_BODY)
             ) {
 
                 // First declarator in a field declaration.
@@ -258,8 +268,8 @@ class Alignment extends AbstractCheck {
             }
 
             if (
-                !AstUtil.previousSiblingTypeIs(ast, LocalTokenType.COMMA)
-                && AstUtil.parentTypeIs(ast, LocalTokenType.SLIST)
+                flatAst.getLocalTypeOrNull(flatAst.getPreviousSibling(node)) != LocalTokenType.COMMA
+                && Alignment.IN_SLIST.matches(fingerprint)
             ) {
 
                 // First declarator in a local variable declaration in block (not in a FOR initializer).
@@ -295,23 +305,9 @@ class Alignment extends AbstractCheck {
             break;
 
         case EXPR:
-            if (this.applyToAssignments && AstUtil.parentTypeIs(ast, LocalTokenType.SLIST)) {
+            if (this.applyToAssignments && Alignment.IN_SLIST.matches(fingerprint)) {
                 DetailAST      ass   = Cs820.getFirstChild(ast);
-                LocalTokenType fcltt = LocalTokenType.localize(Cs820.getType(ass));
-                if (
-                    fcltt == LocalTokenType.ASSIGN
-                    || fcltt == LocalTokenType.PLUS_ASSIGN
-                    || fcltt == LocalTokenType.MINUS_ASSIGN
-                    || fcltt == LocalTokenType.STAR_ASSIGN
-                    || fcltt == LocalTokenType.DIV_ASSIGN
-                    || fcltt == LocalTokenType.MOD_ASSIGN
-                    || fcltt == LocalTokenType.SR_ASSIGN
-                    || fcltt == LocalTokenType.BSR_ASSIGN
-                    || fcltt == LocalTokenType.SL_ASSIGN
-                    || fcltt == LocalTokenType.BAND_ASSIGN
-                    || fcltt == LocalTokenType.BXOR_ASSIGN
-                    || fcltt == LocalTokenType.BOR_ASSIGN
-                ) {
+                if (LocalTokenType.ASSIGNMENT_OPERATORS.contains(LocalTokenType.localize(Cs820.getType(ass)))) {
                     this.checkTokenAlignment(this.previousAssignment, ass);
                     this.previousAssignment = ass;
                 }
@@ -333,8 +329,8 @@ class Alignment extends AbstractCheck {
         if (Cs820.getChildCount(slist) == 0) return;
 
         this.checkTokenAlignment(
-            Alignment.getLeftmostDescendant(Cs820.getNextSibling(Cs820.getFirstChild(previous))),
-            Alignment.getLeftmostDescendant(Cs820.getFirstChild(slist))
+            this.getLeftmostDescendant(Cs820.getNextSibling(Cs820.getFirstChild(previous))),
+            this.getLeftmostDescendant(Cs820.getFirstChild(slist))
         );
     }
 
@@ -346,6 +342,13 @@ class Alignment extends AbstractCheck {
         this.previousMethodDeclaration        = null;
         this.previousCaseGroup                = null;
         this.previousAssignment               = null;
+        this.flatAst                          = FlatAst.of(aRootAst);
+    }
+
+    @Override public void
+    finishTree(DetailAST aRootAst) {
+        FlatAst.release(aRootAst);
+        this.flatAst = null;
     }
 
     /**
@@ -391,10 +394,6 @@ class Alignment extends AbstractCheck {
      */
     private void
     checkMethodDefinitionAlignment(DetailAST previousDefinition, DetailAST currentDefinition) {
-
-        @SuppressWarnings("unused") AstDumper pdad = new AstDumper(previousDefinition);
-        @SuppressWarnings("unused") AstDumper cdad = new AstDumper(currentDefinition);
-
         if (previousDefinition == null) return;
 
         // Check vertical alignment of names.
@@ -425,10 +424,20 @@ class Alignment extends AbstractCheck {
     checkTokenAlignment(DetailAST previousToken, DetailAST currentToken) {
         if (previousToken == null || currentToken == null) return;
 
-        if (
-        		Cs820.getLineNo(previousToken) + 1 == Cs820.getLineNo(currentToken)
-            && Cs820.getColumnNo(previousToken) != Cs820.getColumnNo(currentToken)
-        ) {
+        boolean adjacent = Cs820.getLineNo(previousToken) + 1 == Cs820.getLineNo(currentToken);
+        boolean aligned  = Cs820.getColumnNo(previousToken) == Cs820.getColumnNo(currentToken);
+
+        if (DecisionTrace.ENABLED) {
+            DecisionTrace.record(
+                this,
+                currentToken,
+                "vertical alignment",
+                adjacent ? (aligned ? "aligned" : "not aligned") : "not in adjacent lines",
+                adjacent && !aligned ? Alignment.MESSAGE_KEY_MISALIGNED : DecisionTrace.OK
+            );
+        }
+
+        if (adjacent && !aligned) {
 
             // The name in the current declaration is not vertically aligned with the name in the declaration in the
             // preceding line.
@@ -441,24 +450,10 @@ class Alignment extends AbstractCheck {
             );
         }
     }
-    private static DetailAST
+    private DetailAST
     getLeftmostDescendant(DetailAST ast) {
-        for (;;) {
-
-            DetailAST tmp = Cs820.getFirstChild(ast);
-            if (
-                tmp == null
-                && LocalTokenType.localize(Cs820.getType(ast)) == LocalTokenType.MODIFIERS
-            ) tmp = Cs820.getNextSibling(ast);
-
-            if (
-                tmp == null
-                || Cs820.getLineNo(tmp) > Cs820.getLineNo(ast)
-                || (Cs820.getLineNo(tmp) == Cs820.getLineNo(ast) && Cs820.getColumnNo(tmp) > Cs820.getColumnNo(ast))
-            ) return ast;
-
-            ast = tmp;
-        }
+        FlatAst fa = this.flatAst;
+        return fa.getAst(fa.getLeftmostDescendant(fa.indexOf(ast)));
     }
 
 //    private static DetailAST
@@ -26,12 +26,13 @@
 
 package de.unkrig.cscontrib.checks;
 
-import java.util.ArrayList;
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
@@ -41,7 +42,7 @@ import com.puppycrawl.tools.checkstyle.api.TextBlock;
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
-import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.Rule;
 
@@ -73,48 +74,66 @@ class CppCommentAlignment extends AbstractCheck {
     @Message("C++ comment must appear on column {0}, not {1}")
     private static final String MESSAGE_KEY_MISALIGNED = "CppCommentAlignment.misaligned";
 
-    private Map<Integer /*lineNumber*/, TextBlock> cppComments;
+    /**
+     * For each line (counting from one), the column (counting from zero) of the C++-style comment in that line, or -1.
+     */
+    private int[]   cppCommentColumns;
+    private FlatAst flatAst;
+
+    /**
+     * Whether the text of each node equals the text of its parent, e.g. the inner "+" of "a + b + c".
+     */
+    private boolean[] sameTextAsParent;
+
+    // Buffers that "finishTree()" reuses.
+    private int[] children = new int[16];
+    private int[] stack    = new int[16];
+    private int   childCount;
+    private int[] commentLineNos = new int[16], commentColNos = new int[16];
+    private int   commentCount;
+
+    /**
+     * For each line, the "{@link #groupStamp}" of the comment group that the line's comment was last added to.
+     */
+    private int[] lineStamps;
+    private int   groupStamp;
+
+    /**
+     * The reflective "{@code getSingleLineComments()}" method, resolved only once.
+     */
+    private static volatile Method getSingleLineCommentsMethod;
+
+    /**
+     * The types of the nodes whose children are checked for comment alignment, indexed by the (global) token type.
+     */
+    private static final boolean[] GROUPING_TYPES;
+    static {
+        int[] tokens = CppCommentAlignment.groupingTokens();
+
+        int maxType = 0;
+        for (int t : tokens) {
+            if (t > maxType) maxType = t;
+        }
+
+        GROUPING_TYPES = new boolean[maxType + 1];
+        for (int t : tokens) CppCommentAlignment.GROUPING_TYPES[t] = true;
+    }
 
     @Override public int[]
-    getAcceptableTokens() {
-
-        return LocalTokenType.delocalize(new LocalTokenType[] {
-
-            // Binary operators.
-            LocalTokenType.ASSIGN,
-            LocalTokenType.BAND,
-            LocalTokenType.BAND_ASSIGN,
-            LocalTokenType.BOR,
-            LocalTokenType.BOR_ASSIGN,
-            LocalTokenType.BSR,
-            LocalTokenType.BSR_ASSIGN,
-            LocalTokenType.BXOR,
-            LocalTokenType.BXOR_ASSIGN,
-            LocalTokenType.DIV,
-            LocalTokenType.DIV_ASSIGN,
-            LocalTokenType.DOT,
-            LocalTokenType.EQUAL,
-            LocalTokenType.GE,
-            LocalTokenType.GT,
-            LocalTokenType.INDEX_OP,
-            LocalTokenType.LAND,
-            LocalTokenType.LE,
-            LocalTokenType.LITERAL_INSTANCEOF,
-            LocalTokenType.LOR,
-            LocalTokenType.LT,
-            LocalTokenType.MINUS,
-            LocalTokenType.MINUS_ASSIGN,
-            LocalTokenType.MOD,
-            LocalTokenType.MOD_ASSIGN,
-            LocalTokenType.NOT_EQUAL,
-            LocalTokenType.PLUS,
-            LocalTokenType.PLUS_ASSIGN,
-            LocalTokenType.SL,
-            LocalTokenType.SL_ASSIGN,
-            LocalTokenType.SR,
-            LocalTokenType.SR_ASSIGN,
-            LocalTokenType.STAR,
-            LocalTokenType.STAR_ASSIGN,
+    getAcceptableTokens() { return CppCommentAlignment.groupingTokens(); }
+
+    private static int[]
+    groupingTokens() {
+
+        Set<LocalTokenType> tokens = EnumSet.noneOf(LocalTokenType.class);
+
+        // Binary operators.
+        tokens.addAll(LocalTokenType.BINARY_OPERATORS);
+        tokens.addAll(LocalTokenType.ASSIGNMENT_OPERATORS);
+        tokens.add(LocalTokenType.DOT);
+        tokens.add(LocalTokenType.INDEX_OP);
+
+        Collections.addAll(tokens, new LocalTokenType[] {
 
             // Unary operators.
             LocalTokenType.BNOT,
@@ -248,6 +267,8 @@ class CppCommentAlignment extends AbstractCheck {
 //            LocalTokenType.VARIABLE_DEF,  // Pseudo token, e.g. VARIABLE_DEF { MODIFIERS TYPE name init }
 //            LocalTokenType.WILDCARD_TYPE,
         });
+
+        return LocalTokenType.delocalize(tokens);
     }
 
     @Override public int[]
@@ -258,7 +279,33 @@ class CppCommentAlignment extends AbstractCheck {
 
     @Override public void
     beginTree(DetailAST ast) {
-        this.cppComments = CppCommentAlignment.getSingleLineComments(this.getFileContents());
+
+        Map<Integer, TextBlock> cppComments = CppCommentAlignment.getSingleLineComments(this.getFileContents());
+
+        int maxLineNo = 0;
+        for (Integer lineNo : cppComments.keySet()) {
+            if (lineNo > maxLineNo) maxLineNo = lineNo;
+        }
+
+        int[] cppCommentColumns = new int[maxLineNo + 1];
+        Arrays.fill(cppCommentColumns, -1);
+        for (Entry<Integer, TextBlock> e : cppComments.entrySet()) {
+            cppCommentColumns[e.getKey()] = e.getValue().getStartColNo();
+        }
+
+        this.cppCommentColumns = cppCommentColumns;
+        this.lineStamps        = new int[maxLineNo + 1];
+        this.groupStamp        = 0;
+        this.flatAst           = FlatAst.of(ast);
+    }
+
+    /**
+     * @return The column (counting from zero) of the C++-style comment in the given line, or -1
+     */
+    private int
+    getCppCommentColumn(int lineNo) {
+        int[] cccs = this.cppCommentColumns;
+        return lineNo < cccs.length ? cccs[lineNo] : -1;
     }
 
     @SuppressWarnings("unchecked") private static Map<Integer, TextBlock>
@@ -271,95 +318,165 @@ class CppCommentAlignment extends AbstractCheck {
         // So...:
 //      return fileContents.getSingleLineComments();
         try {
-            return (Map<Integer, TextBlock>) (
-                fileContents
-                .getClass()
-                .getDeclaredMethod("getSingleLineComments")
-                .invoke(fileContents)
-            );
+            Method m = CppCommentAlignment.getSingleLineCommentsMethod;
+            if (m == null || m.getDeclaringClass() != fileContents.getClass()) {
+                m = fileContents.getClass().getDeclaredMethod("getSingleLineComments");
+                CppCommentAlignment.getSingleLineCommentsMethod = m;
+            }
+            return (Map<Integer, TextBlock>) m.invoke(fileContents);
         } catch (Exception e) {
             throw new AssertionError(e);
         }
     }
 
+    /**
+     * Computes and checks all comment groups of the file in one pass over the AST.
+     */
     @Override public void
-    visitToken(DetailAST ast) {
+    finishTree(DetailAST ast) {
+
+        FlatAst flatAst = this.flatAst;
+        int     size    = flatAst.size();
+
+        // Determine which nodes have the same text as their parent, and are thus flattened into their parent.
+        boolean[] sameTextAsParent = new boolean[size];
+        for (int node = 0; node < size; node++) {
+            int parent = flatAst.getParent(node);
+            sameTextAsParent[node] = (
+                parent != FlatAst.NONE
+                && Cs820.getText(flatAst.getAst(node)).equals(Cs820.getText(flatAst.getAst(parent)))
+            );
+        }
+        this.sameTextAsParent = sameTextAsParent;
+
+        // Now analyze the (flattened) children of each relevant node.
+        for (int node = 0; node < size; node++) {
+
+            if (sameTextAsParent[node]) continue;
+
+            int       type          = flatAst.getType(node);
+            boolean[] groupingTypes = CppCommentAlignment.GROUPING_TYPES;
+            if (type >= groupingTypes.length || !groupingTypes[type]) continue;
 
-        @SuppressWarnings("unused") AstDumper astDumper = new AstDumper(ast);
+            int firstChild = flatAst.getFirstChild(node);
+            if (firstChild == FlatAst.NONE || flatAst.getNextSibling(firstChild) == FlatAst.NONE) continue;
 
-        if (Cs820.getChildCount(ast) <= 1) return;
+            this.checkChildren(node);
+        }
 
-        List<DetailAST> children = this.getChildren(ast);
+        FlatAst.release(ast);
+        this.flatAst = null;
+    }
 
-        Map<Integer /*lineNo*/, Integer /*colNo*/> commentCoordinates = new HashMap<Integer, Integer>();
+    /**
+     * Verifies that the C++-style comments right from the children of the given node are aligned.
+     */
+    private void
+    checkChildren(int node) {
+
+        FlatAst        flatAst = this.flatAst;
+        LocalTokenType type    = flatAst.getLocalType(node);
+
+        this.getChildren(node);
+        int[] children   = this.children;
+        int   childCount = this.childCount;
+
+        this.newGroup();
 
         // Collect all C++-style comments that appear right from all children.
         int prevLineNo = Integer.MAX_VALUE; // SUPPRESS CHECKSTYLE UsageDistance
-        for (DetailAST child : children) {
+        for (int i = 0; i < childCount; i++) {
+            int child = children[i];
 
-            final int lineNo = Cs820.getLineNo(child);
+            final int lineNo = flatAst.getLineNo(child);
+
+            LocalTokenType childType = flatAst.getLocalType(child);
 
             // Special case "CASE_GROUP { 'case' 'case' SLIST }".
-            if (AstUtil.typeIs(child, LocalTokenType.SLIST)) continue;
+            if (childType == LocalTokenType.SLIST) continue;
 
             // For statement lists and SWITCH statements...
-            if (
-                AstUtil.typeIs(ast, LocalTokenType.LITERAL_SWITCH)
-                || AstUtil.typeIs(ast, LocalTokenType.SLIST)
-            ) {
+            if (type == LocalTokenType.LITERAL_SWITCH || type == LocalTokenType.SLIST) {
 
                 // ... tolerate different alignments if lines are not consecutive.
-                TextBlock tb = this.cppComments.get(lineNo);
-                if (tb == null || tb.getStartColNo() == 1) continue;
+                int colNo = this.getCppCommentColumn(lineNo);
+                if (colNo == -1 || colNo == 1) continue;
 
-                if (tb.getStartLineNo() - 1 > prevLineNo) {
-                    this.analyze(commentCoordinates);
-                    commentCoordinates.clear();
+                if (lineNo - 1 > prevLineNo) {
+                    this.analyze();
+                    this.newGroup();
                     prevLineNo = Integer.MAX_VALUE;
                     continue;
                 }
             }
 
             // Do not regard the '{' as a child of an OBJBLOCK.
-            if (AstUtil.typeIs(ast, LocalTokenType.OBJBLOCK) && AstUtil.typeIs(child, LocalTokenType.LCURLY)) continue;
+            if (type == LocalTokenType.OBJBLOCK && childType == LocalTokenType.LCURLY) continue;
 
             // Do not regard the PARAMETERS as a child of a METHOD_DEF.
-            if (
-                AstUtil.typeIs(ast, LocalTokenType.METHOD_DEF)
-                && AstUtil.typeIs(child, LocalTokenType.PARAMETERS)
-            ) continue;
+            if (type == LocalTokenType.METHOD_DEF && childType == LocalTokenType.PARAMETERS) continue;
 
-            if (AstUtil.typeIs(child, LocalTokenType.RCURLY)) continue;
+            if (childType == LocalTokenType.RCURLY) continue;
 
-            TextBlock tb = this.cppComments.get(lineNo);
-            if (tb == null /*|| tb.getStartColNo() == 1*/) continue;
+            int colNo = this.getCppCommentColumn(lineNo);
+            if (colNo == -1) continue;
 
-            if (commentCoordinates.containsKey(lineNo)) continue;
+            // Each line only once.
+            if (this.lineStamps[lineNo] == this.groupStamp) continue;
+            this.lineStamps[lineNo] = this.groupStamp;
 
-            commentCoordinates.put(lineNo, tb.getStartColNo());
+            this.addComment(lineNo, colNo);
             prevLineNo = lineNo;
         }
 
         // Verify that these C++-style comments are properly aligned.
-        this.analyze(commentCoordinates);
+        this.analyze();
+    }
+
+    /**
+     * Starts a new, empty group of comments.
+     */
+    private void
+    newGroup() {
+        this.commentCount = 0;
+        this.groupStamp++;
     }
 
     private void
-    analyze(Map<Integer /*lineNo*/, Integer /*colNo*/> commentCoordinates) {
+    addComment(int lineNo, int colNo) {
 
-        if (commentCoordinates.size() <= 1) return;
+        if (this.commentCount == this.commentLineNos.length) {
+            this.commentLineNos = Arrays.copyOf(this.commentLineNos, 2 * this.commentCount);
+            this.commentColNos  = Arrays.copyOf(this.commentColNos, 2 * this.commentCount);
+        }
+
+        this.commentLineNos[this.commentCount] = lineNo;
+        this.commentColNos[this.commentCount]  = colNo;
+        this.commentCount++;
+    }
+
+    /**
+     * Verifies that the comments of the current group are aligned.
+     */
+    private void
+    analyze() {
+
+        int   n              = this.commentCount;
+        int[] commentLineNos = this.commentLineNos;
+        int[] commentColNos  = this.commentColNos;
+
+        if (n <= 1) return;
 
         int maxCommentColNo = 0;
-        for (Integer commentColNo : commentCoordinates.values()) {
-            if (commentColNo > maxCommentColNo) maxCommentColNo = commentColNo;
+        for (int i = 0; i < n; i++) {
+            if (commentColNos[i] > maxCommentColNo) maxCommentColNo = commentColNos[i];
         }
 
-        for (Entry<Integer /*lineNo*/, Integer /*colNo*/> e : commentCoordinates.entrySet()) {
-            Integer commentLineNo = e.getKey();
-            Integer commentColNo  = e.getValue();
+        for (int i = 0; i < n; i++) {
+            int commentColNo = commentColNos[i];
             if (commentColNo != maxCommentColNo) {
                 this.log(
-                    commentLineNo,
+                    commentLineNos[i],
                     commentColNo,
                     CppCommentAlignment.MESSAGE_KEY_MISALIGNED,
                     maxCommentColNo + 1,
@@ -370,41 +487,54 @@ class CppCommentAlignment extends AbstractCheck {
     }
 
     /**
-     * Returns the children of the given node, but sometimes flattened, e.g. "(a + b) + (c + d)" is "a + b + c + d".
+     * Determines the children of the given node, but sometimes flattened, e.g. "(a + b) + (c + d)" is "a + b + c + d",
+     * and stores them in {@link #children} and {@link #childCount}.
      */
-    private List<DetailAST>
-    getChildren(DetailAST ast) {
+    private void
+    getChildren(int node) {
 
-        {
-            DetailAST parent = Cs820.getParent(ast);
-            if (parent != null && Cs820.getText(parent).equals(Cs820.getText(ast))) return Collections.emptyList();
-        }
+        FlatAst   flatAst          = this.flatAst;
+        boolean[] sameTextAsParent = this.sameTextAsParent;
 
-        List<DetailAST> result = new ArrayList<DetailAST>();
-        this.getChildren2(ast, result);
-        return result;
-    }
+        this.childCount = 0;
 
-    private void
-    getChildren2(DetailAST ast, List<DetailAST> result) {
+        // Iterate (rather than recurse) through the subtrees with the same text, because these can be very deep,
+        // e.g. "a + b + ... + z".
+        int stackSize = 0;
+        for (int child = flatAst.getFirstChild(node);;) {
 
-        for (DetailAST child = Cs820.getFirstChild(ast); child != null; child = Cs820.getNextSibling(child)) {
+            if (child == FlatAst.NONE) {
+                if (stackSize == 0) break;
+                child = flatAst.getNextSibling(this.stack[--stackSize]);
+                continue;
+            }
 
-            if (LocalTokenType.localize(Cs820.getType(child)) == LocalTokenType.LPAREN) {
-                result.add(child);
+            if (flatAst.getLocalType(child) == LocalTokenType.LPAREN) {
+                this.addChild(child);
                 for (
-                    child = Cs820.getNextSibling(child);
-                    LocalTokenType.localize(Cs820.getType(child)) != LocalTokenType.RPAREN;
-                    child = Cs820.getNextSibling(child)
+                    child = flatAst.getNextSibling(child);
+                    flatAst.getLocalType(child) != LocalTokenType.RPAREN;
+                    child = flatAst.getNextSibling(child)
                 );
             }
 
-            if (Cs820.getText(child).equals(Cs820.getText(ast))) {
-                this.getChildren2(child, result);
+            if (sameTextAsParent[child]) {
+                if (stackSize == this.stack.length) this.stack = Arrays.copyOf(this.stack, 2 * stackSize);
+                this.stack[stackSize++] = child;
+                child                   = flatAst.getFirstChild(child);
                 continue;
             }
 
-            result.add(child);
+            this.addChild(child);
+            child = flatAst.getNextSibling(child);
+        }
+    }
+
+    private void
+    addChild(int child) {
+        if (this.childCount == this.children.length) {
+            this.children = Arrays.copyOf(this.children, 2 * this.childCount);
         }
+        this.children[this.childCount++] = child;
     }
 }
@@ -0,0 +1,147 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package de.unkrig.cscontrib.checks;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+import de.unkrig.cscontrib.LocalTokenType;
+import de.unkrig.cscontrib.compat.Cs820;
+
+/**
+ * Writes the decisions that the checks make to a file, for later analysis.
+ * <p>
+ *   Tracing is enabled by setting the system property "{@code de.unkrig.cscontrib.checks.DecisionTrace.file}" to
+ *   the name of the trace file, e.g. "{@code -Dde.unkrig.cscontrib.checks.DecisionTrace.file=trace.tsv}". The file
+ *   is overwritten when the first check class is loaded.
+ * </p>
+ * <p>
+ *   Each decision is written as one line of tab-separated fields:
+ * </p>
+ * <pre>check  file  line  column  token-type  rule  branch  verdict</pre>
+ * <p>
+ *   , where <var>verdict</var> is either "{@code ok}", "{@code continue}", or the key of the message that was
+ *   logged.
+ * </p>
+ * <p>
+ *   Call sites must test {@link #ENABLED} before they compose the arguments of {@link #record(AbstractCheck,
+ *   DetailAST, String, String, String)}, so that tracing costs nothing when it is disabled.
+ * </p>
+ */
+final
+class DecisionTrace {
+
+    private DecisionTrace() {}
+
+    /**
+     * The verdict for a decision that did not log a problem.
+     */
+    static final String OK = "ok";
+
+    /**
+     * The verdict for a decision that only selects what is checked next.
+     */
+    static final String CONTINUE = "continue";
+
+    /**
+     * Whether the "{@code de.unkrig.cscontrib.checks.DecisionTrace.file}" system property is set.
+     */
+    static final boolean ENABLED;
+
+    @Nullable private static final PrintWriter WRITER;
+
+    static {
+        String fileName = System.getProperty(DecisionTrace.class.getName() + ".file");
+        if (fileName == null) {
+            ENABLED = false;
+            WRITER  = null;
+        } else {
+            final PrintWriter pw;
+            try {
+                pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(fileName),
+                    "UTF-8"
+                )));
+            } catch (IOException ioe) {
+                throw new ExceptionInInitializerError(ioe);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() { pw.close(); }
+            });
+            ENABLED = true;
+            WRITER  = pw;
+        }
+    }
+
+    /**
+     * Writes one decision to the trace file. Must only be invoked iff {@link #ENABLED}.
+     *
+     * @param node    The node that the decision is about, or {@code null}
+     * @param rule    What was checked
+     * @param branch  Which branch the check took
+     * @param verdict {@link #OK}, {@link #CONTINUE}, or the key of the message that was logged
+     */
+    static void
+    record(AbstractCheck check, @Nullable DetailAST node, String rule, String branch, String verdict) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(check.getClass().getSimpleName()).append('\t');
+        sb.append(DecisionTrace.field(check.getFileContents().getFileName())).append('\t');
+        if (node == null) {
+            sb.append("-\t-\t-\t");
+        } else {
+            sb.append(Cs820.getLineNo(node)).append('\t');
+            sb.append(Cs820.getColumnNo(node)).append('\t');
+            sb.append(LocalTokenType.localize(Cs820.getType(node))).append('\t');
+        }
+        sb.append(DecisionTrace.field(rule)).append('\t');
+        sb.append(DecisionTrace.field(branch)).append('\t');
+        sb.append(DecisionTrace.field(verdict));
+
+        PrintWriter pw = DecisionTrace.WRITER;
+        assert pw != null;
+        synchronized (pw) {
+            pw.println(sb);
+        }
+    }
+
+    /**
+     * @return {@code s}, with TABs and line breaks replaced with spaces
+     */
+    private static String
+    field(String s) {
+        return s.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -31,8 +31,9 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
-import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.Rule;
 
@@ -55,22 +56,40 @@ class InnerAssignment extends AbstractCheck {
     private static final String
     MESSAGE_KEY_MUST_PARENTHESIZE = "InnerAssignment.mustParenthesize";
 
+    private static final AncestorPattern ASSIGNMENT_EXPRESSION = AstUtil.ANY_NODE.parent(LocalTokenType.EXPR);
+
+    /**
+     * The assignments that need not be parenthesized.
+     */
+    private static final AncestorPattern[] ALLOWED = {
+
+        // Field or variable initializer.
+        AstUtil.ANY_NODE.parent(LocalTokenType.VARIABLE_DEF),                          // int a = 3;
+
+        // Try-with-resource.
+        AstUtil.ANY_NODE.parent(LocalTokenType.RESOURCE),                              // try (InputStream is = ...)
+
+        // Assignment statement.
+        InnerAssignment.ASSIGNMENT_EXPRESSION.grandParent(LocalTokenType.SLIST),       // { ... a = b
+        InnerAssignment.ASSIGNMENT_EXPRESSION.previousUncle(LocalTokenType.RPAREN),    // if (...) a = b
+        InnerAssignment.ASSIGNMENT_EXPRESSION.grandParent(LocalTokenType.LITERAL_ELSE), // if (...) {...} else a = b
+        InnerAssignment.ASSIGNMENT_EXPRESSION                                          // for (...; ...; a += b)
+        .grandParent(LocalTokenType.ELIST)
+        .grandGrandParent(LocalTokenType.FOR_ITERATOR),
+        InnerAssignment.ASSIGNMENT_EXPRESSION                                          // for (a = b; ...; ...)
+        .grandParent(LocalTokenType.ELIST)
+        .grandGrandParent(LocalTokenType.FOR_INIT),
+
+        // Annotation member-value pair.
+        AstUtil.ANY_NODE.parent(LocalTokenType.ANNOTATION_MEMBER_VALUE_PAIR),
+    };
+
+    /** The snapshot of the AST of the current file. */
+    private FlatAst flatAst;
+
     @Override public int[]
     getAcceptableTokens() {
-        return LocalTokenType.delocalize(new LocalTokenType[] {
-            LocalTokenType.ASSIGN,       // "="
-            LocalTokenType.DIV_ASSIGN,   // "/="
-            LocalTokenType.PLUS_ASSIGN,  // "+="
-            LocalTokenType.MINUS_ASSIGN, // "-="
-            LocalTokenType.STAR_ASSIGN,  // "*="
-            LocalTokenType.MOD_ASSIGN,   // "%="
-            LocalTokenType.SR_ASSIGN,    // ">>="
-            LocalTokenType.BSR_ASSIGN,   // ">>>="
-            LocalTokenType.SL_ASSIGN,    // "<<="
-            LocalTokenType.BXOR_ASSIGN,  // "^="
-            LocalTokenType.BOR_ASSIGN,   // "|="
-            LocalTokenType.BAND_ASSIGN,  // "&="
-        });
+        return LocalTokenType.delocalize(LocalTokenType.ASSIGNMENT_OPERATORS);
     }
 
     @Override public int[]
@@ -79,44 +98,27 @@ class InnerAssignment extends AbstractCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    @Override public void
+    beginTree(DetailAST rootAst) { this.flatAst = FlatAst.of(rootAst); }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        FlatAst.release(rootAst);
+        this.flatAst = null;
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
 
-        // Field or variable initializer?
-        if (AstUtil.parentTypeIs(ast, LocalTokenType.VARIABLE_DEF)) return; // int a = 3;
-
-        // Try-with-resource?
-        if (AstUtil.parentTypeIs(ast, LocalTokenType.RESOURCE)) return; // try { InputStream is = new ... }
-
-        // Assignment statement?
-        if (AstUtil.parentTypeIs(ast, LocalTokenType.EXPR) && (
-            AstUtil.grandParentTypeIs(ast, LocalTokenType.SLIST)           // { ... a = b
-            || AstUtil.previousUncleTypeIs(ast, LocalTokenType.RPAREN)     // if (...) a = b
-            || AstUtil.grandParentTypeIs(ast, LocalTokenType.LITERAL_ELSE) // if (...) {...} else a = b
-            || (                                                           // for (...; ...; a += b)
-                AstUtil.grandParentTypeIs(ast, LocalTokenType.ELIST)
-                && AstUtil.grandGrandParentTypeIs(ast, LocalTokenType.FOR_ITERATOR)
-            )
-            || (                                                           // for (a = b; ...; ...)
-                AstUtil.grandParentTypeIs(ast, LocalTokenType.ELIST)
-                && AstUtil.grandGrandParentTypeIs(ast, LocalTokenType.FOR_INIT)
-            )
-        )) return;
-
-        // For iterator?
-        if (
-            AstUtil.parentTypeIs(ast, LocalTokenType.EXPR)
-            && AstUtil.grandParentTypeIs(ast, LocalTokenType.ELIST)
-            && AstUtil.grandGrandParentTypeIs(ast, LocalTokenType.FOR_ITERATOR)
-        ) return; // for (...; ...; a += b)
+        FlatAst flatAst = this.flatAst;
+        int     node    = flatAst.indexOf(ast);
 
-        // Parenthesized assignment?
-        if (Cs820.getPreviousSibling(ast) != null && AstUtil.previousSiblingTypeIs(ast, LocalTokenType.LPAREN)) return;
+        if (AncestorPattern.matchesAny(flatAst.getFingerprint(node), InnerAssignment.ALLOWED)) return;
 
-        // Annotation member-value pair?
-        if (AstUtil.parentTypeIs(ast, LocalTokenType.ANNOTATION_MEMBER_VALUE_PAIR)) return;
+        // Parenthesized assignment?
+        if (flatAst.getLocalTypeOrNull(flatAst.getPreviousSibling(node)) == LocalTokenType.LPAREN) return;
 
-        this.log(Cs820.getLineNo(ast), Cs820.getColumnNo(ast), InnerAssignment.MESSAGE_KEY_MUST_PARENTHESIZE);
+        this.log(flatAst.getLineNo(node), flatAst.getColumnNo(node), InnerAssignment.MESSAGE_KEY_MUST_PARENTHESIZE);
     }
 }
@@ -0,0 +1,800 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.cscontrib.checks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * Matches a name against a set of regular expressions in one single scan, like {@link
+ * java.util.regex.Matcher#find()} would for each of them.
+ * <p>
+ *   Only the "regular" subset of the {@link java.util.regex.Pattern} syntax is supported (see {@link #parse(String)}),
+ *   which is what name patterns like "{@code ^[a-z][a-zA-Z0-9]*$}" typically use. The regexes are combined into one
+ *   nondeterministic automaton, from which a deterministic automaton is constructed lazily, as names are matched.
+ * </p>
+ */
+final
+class NameAutomaton {
+
+    /**
+     * Returned by {@link #match(CharSequence)} iff the subject cannot be matched by the automaton.
+     */
+    public static final long UNKNOWN = -1L;
+
+    /**
+     * The maximum number of regexes that one automaton can match, so that the result of {@link #match(CharSequence)}
+     * can never be {@link #UNKNOWN}.
+     */
+    public static final int MAX_REGEXES = 63;
+
+    /**
+     * When the deterministic automaton exceeds this number of states, {@link #match(CharSequence)} gives up.
+     */
+    private static final int MAX_DFA_STATES = 10000;
+
+    /**
+     * The maximum repetition count for "<code>X{n,m}</code>" quantifiers.
+     */
+    private static final int MAX_REPETITIONS = 64;
+
+    /**
+     * Character set that matches any character.
+     */
+    private static final int[] ANY = { 0, 0xffff };
+
+    /**
+     * Character set that the regex "{@code .}" matches, i.e. any character except the line terminators.
+     */
+    private static final int[] DOT = NameAutomaton.complement(NameAutomaton.set("\n\r\u0085\u2028\u2029"));
+
+    private static final int[] DIGIT      = { '0', '9' };
+    private static final int[] WORD       = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+    private static final int[] WHITESPACE = { '\t', '\r', ' ', ' ' }; // \t \n \u000b \f \r and space
+
+    /**
+     * A regex in the supported subset of the {@link java.util.regex.Pattern} syntax; see {@link #parse(String)}.
+     */
+    public static final
+    class Regex {
+
+        final boolean anchoredAtStart, anchoredAtEnd;
+        final Node    node;
+
+        Regex(boolean anchoredAtStart, Node node, boolean anchoredAtEnd) {
+            this.anchoredAtStart = anchoredAtStart;
+            this.node            = node;
+            this.anchoredAtEnd   = anchoredAtEnd;
+        }
+    }
+
+    // The parse tree of a regex.
+    interface Node {}
+
+    static
+    class CharSetNode implements Node {
+
+        /** Sorted, disjoint, non-adjacent ranges "lo1, hi1, lo2, hi2, ..."; the bounds are inclusive. */
+        final int[] ranges;
+
+        CharSetNode(int[] ranges) { this.ranges = ranges; }
+    }
+
+    static
+    class SequenceNode implements Node {
+        final List<Node> elements;
+        SequenceNode(List<Node> elements) { this.elements = elements; }
+    }
+
+    static
+    class AlternativesNode implements Node {
+        final List<Node> alternatives;
+        AlternativesNode(List<Node> alternatives) { this.alternatives = alternatives; }
+    }
+
+    static
+    class RepetitionNode implements Node {
+
+        final Node operand;
+        final int  min, max; // "max" is -1 for "unbounded"
+
+        RepetitionNode(Node operand, int min, int max) {
+            this.operand = operand;
+            this.min     = min;
+            this.max     = max;
+        }
+    }
+
+    /**
+     * Parses a regex that was already successfully compiled by {@link java.util.regex.Pattern#compile(String)}, i.e.
+     * that is known to be syntactically correct.
+     * <p>
+     *   Supported are literal characters, "{@code .}", character classes ("{@code [a-z_]}", "{@code [^0-9]}"), the
+     *   predefined character classes "{@code \d \D \s \S \w \W}", groups ("{@code (...)}", "{@code (?:...)}"),
+     *   alternatives ("{@code |}"), the greedy and the reluctant quantifiers ("<code>? * + {n} {n,} {n,m}</code>"),
+     *   and the anchors "{@code ^}" and "{@code $}" at the very beginning resp. end of the regex.
+     * </p>
+     * <p>
+     *   Not supported are e.g. flags, back references, lookaround, boundary matchers, possessive quantifiers, Unicode
+     *   categories, quotations and intersections of character classes.
+     * </p>
+     *
+     * @return {@code null} iff the regex uses features that are not supported
+     */
+    @Nullable public static Regex
+    parse(String regex) {
+
+        boolean anchoredAtStart = regex.startsWith("^");
+        int     start           = anchoredAtStart ? 1 : 0;
+
+        // A trailing "$" is an anchor iff it is not escaped.
+        boolean anchoredAtEnd = false;
+        int     end           = regex.length();
+        if (end > start && regex.charAt(end - 1) == '$') {
+            int backslashes = 0;
+            while (end - 2 - backslashes >= start && regex.charAt(end - 2 - backslashes) == '\\') backslashes++;
+            if (backslashes % 2 == 0) {
+                anchoredAtEnd = true;
+                end--;
+            }
+        }
+
+        Parser parser = new Parser(regex.substring(start, end));
+        try {
+            Node node = parser.parseAlternatives();
+            if (parser.pos != parser.regex.length()) return null;
+
+            // In "^a|b$", the anchors apply to the first resp. last alternative only.
+            if ((anchoredAtStart || anchoredAtEnd) && node instanceof AlternativesNode) return null;
+
+            return new Regex(anchoredAtStart, node, anchoredAtEnd);
+        } catch (Unsupported u) {
+            return null;
+        }
+    }
+
+    /**
+     * Signals that the regex uses a construct that the automaton does not support.
+     */
+    private static
+    class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A recursive-descent parser which throws {@link Unsupported} on unsupported constructs.
+     */
+    private static
+    class Parser {
+
+        final String regex;
+        int          pos;
+
+        Parser(String regex) { this.regex = regex; }
+
+        Node
+        parseAlternatives() {
+
+            List<Node> alternatives = new ArrayList<Node>();
+            alternatives.add(this.parseSequence());
+            while (this.peek() == '|') {
+                this.pos++;
+                alternatives.add(this.parseSequence());
+            }
+
+            return alternatives.size() == 1 ? alternatives.get(0) : new AlternativesNode(alternatives);
+        }
+
+        private Node
+        parseSequence() {
+
+            List<Node> elements = new ArrayList<Node>();
+            for (;;) {
+                int c = this.peek();
+                if (c == -1 || c == '|' || c == ')') break;
+                elements.add(this.parseRepetition());
+            }
+
+            return elements.size() == 1 ? elements.get(0) : new SequenceNode(elements);
+        }
+
+        private Node
+        parseRepetition() {
+
+            Node operand = this.parseAtom();
+
+            int min, max;
+            switch (this.peek()) {
+
+            case '?': this.pos++; min = 0; max = 1;  break;
+            case '*': this.pos++; min = 0; max = -1; break;
+            case '+': this.pos++; min = 1; max = -1; break;
+
+            case '{':
+                this.pos++;
+                min = this.parseNumber();
+                if (this.peek() == ',') {
+                    this.pos++;
+                    max = this.peek() == '}' ? -1 : this.parseNumber();
+                } else {
+                    max = min;
+                }
+                if (this.peek() != '}') throw new Unsupported();
+                this.pos++;
+                if (min > NameAutomaton.MAX_REPETITIONS || max > NameAutomaton.MAX_REPETITIONS) {
+                    throw new Unsupported();
+                }
+                break;
+
+            default:
+                return operand;
+            }
+
+            // A reluctant quantifier matches the same set of subjects (only differently); a possessive quantifier
+            // does not.
+            if (this.peek() == '?') this.pos++;
+
+            // Possessive quantifiers, and quantified quantifiers.
+            int c = this.peek();
+            if (c == '+' || c == '*' || c == '?' || c == '{') throw new Unsupported();
+
+            return new RepetitionNode(operand, min, max);
+        }
+
+        private int
+        parseNumber() {
+
+            int start = this.pos;
+            while (this.pos < this.regex.length() && Character.isDigit(this.regex.charAt(this.pos))) this.pos++;
+            if (this.pos == start || this.pos - start > 4) throw new Unsupported();
+
+            return Integer.parseInt(this.regex.substring(start, this.pos));
+        }
+
+        private Node
+        parseAtom() {
+
+            char c = this.regex.charAt(this.pos++);
+            switch (c) {
+
+            case '(':
+                if (this.peek() == '?') {
+                    if (!this.regex.startsWith("?:", this.pos)) throw new Unsupported();
+                    this.pos += 2;
+                }
+                Node result = this.parseAlternatives();
+                if (this.peek() != ')') throw new Unsupported();
+                this.pos++;
+                return result;
+
+            case '[':
+                return new CharSetNode(this.parseCharacterClass());
+
+            case '.':
+                return new CharSetNode(NameAutomaton.DOT);
+
+            case '\\':
+                return new CharSetNode(this.parseEscape());
+
+            case '^':
+            case '$':
+            case '?':
+            case '*':
+            case '+':
+            case '{':
+                throw new Unsupported();
+
+            default:
+                if (NameAutomaton.isSurrogate(c)) throw new Unsupported();
+                return new CharSetNode(new int[] { c, c });
+            }
+        }
+
+        /**
+         * Parses the rest of a character class, after the opening "{@code [}".
+         */
+        private int[]
+        parseCharacterClass() {
+
+            boolean negated = this.peek() == '^';
+            if (negated) this.pos++;
+
+            // Java treats a "]" right after the "[" specially.
+            if (this.peek() == ']') throw new Unsupported();
+
+            int[] result = new int[0];
+            for (;;) {
+                int c = this.peek();
+                if (c == -1 || c == '[' || this.regex.startsWith("&&", this.pos)) {
+                    throw new Unsupported();
+                }
+                this.pos++;
+
+                if (c == ']') break;
+
+                int[] set;
+                if (c == '\\') {
+                    set = this.parseEscape();
+                } else
+                if (NameAutomaton.isSurrogate((char) c)) {
+                    throw new Unsupported();
+                } else
+                if (
+                    this.peek() == '-'
+                    && this.pos + 1 < this.regex.length()
+                    && this.regex.charAt(this.pos + 1) != ']'
+                ) {
+
+                    // A range, like "a-z".
+                    int hi = this.regex.charAt(this.pos + 1);
+                    if (hi == '\\' || hi == '[' || NameAutomaton.isSurrogate((char) hi) || hi < c) {
+                        throw new Unsupported();
+                    }
+                    this.pos += 2;
+                    set = new int[] { c, hi };
+                } else
+                if (c == '-' && result.length > 0 && this.peek() != ']') {
+
+                    // Something like "[a-z-9]".
+                    throw new Unsupported();
+                } else
+                {
+                    set = new int[] { c, c };
+                }
+                result = NameAutomaton.union(result, set);
+            }
+
+            return negated ? NameAutomaton.complement(result) : result;
+        }
+
+        /**
+         * Parses the rest of an escape sequence, after the backslash.
+         */
+        private int[]
+        parseEscape() {
+
+            if (this.pos >= this.regex.length()) throw new Unsupported();
+
+            char c = this.regex.charAt(this.pos++);
+            switch (c) {
+            case 'd': return NameAutomaton.DIGIT;
+            case 'D': return NameAutomaton.complement(NameAutomaton.DIGIT);
+            case 'w': return NameAutomaton.WORD;
+            case 'W': return NameAutomaton.complement(NameAutomaton.WORD);
+            case 's': return NameAutomaton.WHITESPACE;
+            case 'S': return NameAutomaton.complement(NameAutomaton.WHITESPACE);
+            case 't': return new int[] { '\t', '\t' };
+            case 'n': return new int[] { '\n', '\n' };
+            case 'r': return new int[] { '\r', '\r' };
+            case 'f': return new int[] { '\f', '\f' };
+            case 'a': return new int[] { '\u0007', '\u0007' };
+            case 'e': return new int[] { '\u001b', '\u001b' };
+            }
+
+            // "\b", "\Q", "\p{...}", "\1", "\x41", ... are not supported. (A backslash followed by any other
+            // non-alphabetic character quotes that character.)
+            if (Character.isLetterOrDigit(c) || c >= 0x80) throw new Unsupported();
+
+            return new int[] { c, c };
+        }
+
+        private int
+        peek() { return this.pos < this.regex.length() ? this.regex.charAt(this.pos) : -1; }
+    }
+
+    // ---------------------------------- The nondeterministic automaton ----------------------------------
+
+    // Per NFA state: The epsilon transitions, and the character transitions, as pairs "charSetIndex, target".
+    private final List<int[]> epsilonTransitions   = new ArrayList<int[]>();
+    private final List<int[]> characterTransitions = new ArrayList<int[]>();
+
+    /** Per NFA state: The regexes that have matched when that state is reached. */
+    private long[] acceptMasks = new long[16];
+
+    private final List<int[]> charSets = new ArrayList<int[]>();
+
+    /** Per DFA state: The NFA states that it represents. */
+    private final List<BitSet>         dfaStates       = new ArrayList<BitSet>();
+    private final Map<BitSet, Integer> dfaStateIndexes = new HashMap<BitSet, Integer>();
+
+    /** Per DFA state: The DFA states reached for each character class; -1 where not yet determined. */
+    private final List<int[]> dfaTransitions = new ArrayList<int[]>();
+
+    /** Per DFA state: The regexes that have matched when that state is reached. */
+    private long[] dfaAcceptMasks = new long[16];
+
+    /**
+     * The boundaries of the "character classes", i.e. the ranges of chars that all regexes treat identically. The
+     * first character class starts at char 0.
+     */
+    private int[] characterClassStarts;
+
+    /** The character class of each ASCII character, for speed. */
+    private final byte[] asciiCharacterClasses = new byte[128];
+
+    /** For each character class and each {@link #charSets char set}: Whether the char set contains the class. */
+    private boolean[][] charSetContainsClass;
+
+    private boolean gaveUp;
+
+    /**
+     * @param regexes At most {@link #MAX_REGEXES}
+     */
+    NameAutomaton(List<Regex> regexes) {
+
+        if (regexes.size() > NameAutomaton.MAX_REGEXES) throw new IllegalArgumentException();
+
+        int[] starts = new int[regexes.size()];
+        for (int i = 0; i < starts.length; i++) {
+            Regex regex = regexes.get(i);
+
+            // "Matcher.find()" searches the subject, so unless the regex is anchored, it may be preceded and followed
+            // by anything.
+            int start = (starts[i] = this.newState());
+            if (!regex.anchoredAtStart) this.addTransition(start, NameAutomaton.ANY, start);
+
+            int end = this.compile(regex.node, start);
+            if (!regex.anchoredAtEnd) this.addTransition(end, NameAutomaton.ANY, end);
+
+            this.acceptMasks[end] |= 1L << i;
+        }
+
+        this.computeCharacterClasses();
+
+        BitSet initialState = new BitSet();
+        for (int start : starts) initialState.set(start);
+        this.dfaState(this.epsilonClosure(initialState));
+    }
+
+    /**
+     * @return Bit <var>i</var> is set iff the <var>i</var>th regex is found in the <var>subject</var>, or {@link
+     *         #UNKNOWN} if the subject contains surrogates or line terminators (where the semantics of {@code .} and
+     *         "{@code $}" would be more complicated), or if the automaton became too large
+     */
+    long
+    match(CharSequence subject) {
+
+        if (this.gaveUp) return NameAutomaton.UNKNOWN;
+
+        int state = 0;
+        for (int i = 0, n = subject.length(); i < n; i++) {
+            char c = subject.charAt(i);
+
+            int cc;
+            if (c < 128) {
+                if (c == '\n' || c == '\r') return NameAutomaton.UNKNOWN;
+                cc = this.asciiCharacterClasses[c];
+            } else {
+                if (NameAutomaton.isSurrogate(c) || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return NameAutomaton.UNKNOWN;
+                }
+                cc = Arrays.binarySearch(this.characterClassStarts, c);
+                if (cc < 0) cc = -cc - 2;
+            }
+
+            int[] transitions = this.dfaTransitions.get(state);
+
+            int next = transitions[cc];
+            if (next == -1) {
+                if (this.dfaStates.size() >= NameAutomaton.MAX_DFA_STATES) {
+                    this.gaveUp = true;
+                    return NameAutomaton.UNKNOWN;
+                }
+                next = (transitions[cc] = this.dfaState(this.step(this.dfaStates.get(state), cc)));
+            }
+            state = next;
+        }
+
+        return this.dfaAcceptMasks[state];
+    }
+
+    /**
+     * Adds the NFA states and transitions for the given node.
+     *
+     * @return The NFA state that is reached when the <var>node</var> matched, starting at <var>state</var>
+     */
+    private int
+    compile(Node node, int state) {
+
+        if (node instanceof CharSetNode) {
+            int next = this.newState();
+            this.addTransition(state, ((CharSetNode) node).ranges, next);
+            return next;
+        }
+
+        if (node instanceof SequenceNode) {
+            for (Node element : ((SequenceNode) node).elements) state = this.compile(element, state);
+            return state;
+        }
+
+        if (node instanceof AlternativesNode) {
+            int end = this.newState();
+            for (Node alternative : ((AlternativesNode) node).alternatives) {
+                int start = this.newState();
+                this.addEpsilonTransition(state, start);
+                this.addEpsilonTransition(this.compile(alternative, start), end);
+            }
+            return end;
+        }
+
+        if (node instanceof RepetitionNode) {
+            RepetitionNode rn = (RepetitionNode) node;
+
+            for (int i = 0; i < rn.min; i++) state = this.compile(rn.operand, state);
+
+            if (rn.max == -1) {
+                int loop = this.newState();
+                this.addEpsilonTransition(state, loop);
+                this.addEpsilonTransition(this.compile(rn.operand, loop), loop);
+                return loop;
+            }
+
+            for (int i = rn.min; i < rn.max; i++) {
+                int end = this.newState();
+                this.addEpsilonTransition(state, end);
+                this.addEpsilonTransition(this.compile(rn.operand, state), end);
+                state = end;
+            }
+            return state;
+        }
+
+        throw new IllegalStateException(String.valueOf(node));
+    }
+
+    private int
+    newState() {
+
+        int result = this.epsilonTransitions.size();
+
+        this.epsilonTransitions.add(new int[0]);
+        this.characterTransitions.add(new int[0]);
+        if (result == this.acceptMasks.length) this.acceptMasks = Arrays.copyOf(this.acceptMasks, 2 * result);
+
+        return result;
+    }
+
+    private void
+    addEpsilonTransition(int from, int to) {
+        this.epsilonTransitions.set(from, NameAutomaton.append(this.epsilonTransitions.get(from), to));
+    }
+
+    private void
+    addTransition(int from, int[] charSet, int to) {
+
+        int charSetIndex = this.charSets.indexOf(charSet);
+        if (charSetIndex == -1) {
+            charSetIndex = this.charSets.size();
+            this.charSets.add(charSet);
+        }
+
+        this.characterTransitions.set(
+            from,
+            NameAutomaton.append(NameAutomaton.append(this.characterTransitions.get(from), charSetIndex), to)
+        );
+    }
+
+    /**
+     * Partitions the chars into the coarsest set of ranges that each char set either contains or does not intersect.
+     */
+    private void
+    computeCharacterClasses() {
+
+        BitSet boundaries = new BitSet();
+        boundaries.set(0);
+        for (int[] ranges : this.charSets) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                boundaries.set(ranges[i]);
+                boundaries.set(ranges[i + 1] + 1);
+            }
+        }
+        boundaries.clear(0x10000);
+
+        int[] starts = new int[boundaries.cardinality()];
+        for (int i = 0, b = boundaries.nextSetBit(0); b != -1; b = boundaries.nextSetBit(b + 1)) starts[i++] = b;
+        this.characterClassStarts = starts;
+
+        for (int c = 0; c < 128; c++) {
+            int cc = Arrays.binarySearch(starts, c);
+            this.asciiCharacterClasses[c] = (byte) (cc < 0 ? -cc - 2 : cc);
+        }
+
+        // In the (unlikely) case that there are more than 128 character classes, the ASCII lookup table would
+        // overflow.
+        if (starts.length > 128) this.gaveUp = true;
+
+        this.charSetContainsClass = new boolean[this.charSets.size()][];
+        for (int i = 0; i < this.charSets.size(); i++) {
+            int[]     ranges   = this.charSets.get(i);
+            boolean[] contains = (this.charSetContainsClass[i] = new boolean[starts.length]);
+            for (int cc = 0; cc < starts.length; cc++) contains[cc] = NameAutomaton.contains(ranges, starts[cc]);
+        }
+    }
+
+    /**
+     * @return The NFA states reached from the given NFA states with a char of the given character class
+     */
+    private BitSet
+    step(BitSet states, int characterClass) {
+
+        BitSet result = new BitSet();
+        for (int state = states.nextSetBit(0); state != -1; state = states.nextSetBit(state + 1)) {
+            int[] transitions = this.characterTransitions.get(state);
+            for (int i = 0; i < transitions.length; i += 2) {
+                if (this.charSetContainsClass[transitions[i]][characterClass]) result.set(transitions[i + 1]);
+            }
+        }
+
+        return this.epsilonClosure(result);
+    }
+
+    private BitSet
+    epsilonClosure(BitSet states) {
+
+        BitSet result = (BitSet) states.clone();
+
+        int[] stack     = new int[16];
+        int   stackSize = 0;
+        for (int state = states.nextSetBit(0); state != -1; state = states.nextSetBit(state + 1)) {
+            if (stackSize == stack.length) stack = Arrays.copyOf(stack, 2 * stackSize);
+            stack[stackSize++] = state;
+        }
+
+        while (stackSize > 0) {
+            for (int to : this.epsilonTransitions.get(stack[--stackSize])) {
+                if (result.get(to)) continue;
+                result.set(to);
+                if (stackSize == stack.length) stack = Arrays.copyOf(stack, 2 * stackSize);
+                stack[stackSize++] = to;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The index of the DFA state that represents the given set of NFA states
+     */
+    private int
+    dfaState(BitSet nfaStates) {
+
+        Integer index = this.dfaStateIndexes.get(nfaStates);
+        if (index != null) return index;
+
+        int result = this.dfaStates.size();
+        this.dfaStates.add(nfaStates);
+        this.dfaStateIndexes.put(nfaStates, result);
+
+        int[] transitions = new int[this.characterClassStarts.length];
+        Arrays.fill(transitions, -1);
+        this.dfaTransitions.add(transitions);
+
+        long acceptMask = 0;
+        for (int state = nfaStates.nextSetBit(0); state != -1; state = nfaStates.nextSetBit(state + 1)) {
+            acceptMask |= this.acceptMasks[state];
+        }
+        if (result == this.dfaAcceptMasks.length) this.dfaAcceptMasks = Arrays.copyOf(this.dfaAcceptMasks, 2 * result);
+        this.dfaAcceptMasks[result] = acceptMask;
+
+        return result;
+    }
+
+    // ---------------------------------- Char set operations ----------------------------------
+
+    private static int[]
+    set(String chars) {
+        int[] result = new int[0];
+        for (char c : chars.toCharArray()) result = NameAutomaton.union(result, new int[] { c, c });
+        return result;
+    }
+
+    private static boolean
+    contains(int[] ranges, int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c >= ranges[i] && c <= ranges[i + 1]) return true;
+        }
+        return false;
+    }
+
+    private static int[]
+    complement(int[] ranges) {
+
+        int[] result = new int[ranges.length + 2];
+        int   n      = 0;
+        int   lo     = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > lo) {
+                result[n++] = lo;
+                result[n++] = ranges[i] - 1;
+            }
+            lo = ranges[i + 1] + 1;
+        }
+        if (lo <= 0xffff) {
+            result[n++] = lo;
+            result[n++] = 0xffff;
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[]
+    union(int[] ranges1, int[] ranges2) {
+
+        // Merge the ranges by their lower bounds.
+        int[] all = new int[ranges1.length + ranges2.length];
+        {
+            int i1 = 0, i2 = 0, n = 0;
+            while (i1 < ranges1.length || i2 < ranges2.length) {
+                int[] from;
+                int   i;
+                if (i2 == ranges2.length || (i1 < ranges1.length && ranges1[i1] <= ranges2[i2])) {
+                    from = ranges1;
+                    i    = i1;
+                    i1  += 2;
+                } else {
+                    from = ranges2;
+                    i    = i2;
+                    i2  += 2;
+                }
+                all[n++] = from[i];
+                all[n++] = from[i + 1];
+            }
+        }
+
+        // Join overlapping and adjacent ranges.
+        int[] result = new int[all.length];
+        int   n      = 0;
+        for (int i = 0; i < all.length; i += 2) {
+            if (n > 0 && all[i] <= result[n - 1] + 1) {
+                if (all[i + 1] > result[n - 1]) result[n - 1] = all[i + 1];
+            } else {
+                result[n++] = all[i];
+                result[n++] = all[i + 1];
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[]
+    append(int[] a, int value) {
+        int[] result = Arrays.copyOf(a, a.length + 1);
+        result[a.length] = value;
+        return result;
+    }
+
+    /**
+     * Equivalent with JRE 7's {@code Character.isSurrogate(char)}.
+     */
+    private static boolean
+    isSurrogate(char c) { return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE; }
+}
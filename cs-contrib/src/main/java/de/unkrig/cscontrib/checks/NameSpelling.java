@@ -35,13 +35,18 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.api.FullIdent;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
+import de.unkrig.commons.nullanalysis.Nullable;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.MultiCheckRuleProperty;
 import de.unkrig.csdoclet.annotation.RegexRuleProperty;
@@ -83,6 +88,29 @@ import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
  *   <li>Static Variable Names</li>
  *   <li>Type Names</li>
  * </ul>
+ * <p>
+ *   Instead of configuring one instance of this check per naming rule, you can configure any number of rules as
+ *   nested "{@code rule}" modules of one single instance, which is much cheaper, because then each declaration is
+ *   analyzed only once:
+ * </p>
+ * <pre>
+ * &lt;module name="de.unkrig.cscontrib.checks.NameSpelling">
+ *   &lt;module name="rule">
+ *     &lt;property name="elements"          value="field" />
+ *     &lt;property name="requiredModifiers" value="static, final" />
+ *     &lt;property name="format"            value="^[A-Z][A-Z0-9]*(_[A-Z0-9]+)*$" />
+ *   &lt;/module>
+ *   &lt;module name="rule">
+ *     &lt;property name="elements" value="method" />
+ *     &lt;property name="format"   value="^[a-z][a-zA-Z0-9]*$" />
+ *   &lt;/module>
+ * &lt;/module>
+ * </pre>
+ * <p>
+ *   Each nested rule has the same naming properties as this check. Violations of a nested rule are reported by the
+ *   enclosing check, i.e. with its "{@code id}", "{@code severity}" and custom messages; thus a nested rule must not
+ *   configure these.
+ * </p>
  */
 @Rule(
     group     = "%Naming.group",
@@ -224,40 +252,166 @@ class NameSpelling extends AbstractCheck {
 
         try {
             this.formatPattern = Pattern.compile(format);
+            this.formatRegex   = NameAutomaton.parse(format);
         } catch (PatternSyntaxException ex) {
             throw new IllegalArgumentException("unable to parse " + format, ex);
         }
     }
-    private Pattern formatPattern = Pattern.compile("");
+    private Pattern                       formatPattern = Pattern.compile("");
+    @Nullable private NameAutomaton.Regex formatRegex   = NameAutomaton.parse("");
 
     // END CONFIGURATION SETTERS
 
+    /**
+     * The nested "{@code rule}" modules.
+     */
+    private final List<NameSpelling> nestedRules = new ArrayList<NameSpelling>();
+
+    /**
+     * Indexed by {@link Elements#ordinal()} and modifier mask (see {@link #MODIFIER_BITS}): The rules that apply;
+     * buckets are computed lazily.
+     */
+    private RuleSet[][] rulesByElementAndModifiers;
+
+    /**
+     * The rules that apply to one (element, modifier mask) combination.
+     */
+    private static
+    class RuleSet {
+
+        final NameSpelling[] rules;
+
+        /**
+         * Matches the formats of all rules that are supported by {@link NameAutomaton}, or {@code null} if none is.
+         */
+        @Nullable final NameAutomaton automaton;
+
+        /**
+         * For each rule: The index of its format within the {@link #automaton}, or -1 if its format is not supported
+         * by the automaton.
+         */
+        final int[] automatonIndexes;
+
+        RuleSet(NameSpelling[] rules) {
+
+            this.rules            = rules;
+            this.automatonIndexes = new int[rules.length];
+
+            List<NameAutomaton.Regex> regexes = new ArrayList<NameAutomaton.Regex>();
+            for (int i = 0; i < rules.length; i++) {
+                NameAutomaton.Regex regex = rules[i].formatRegex;
+                if (regex == null || regexes.size() == NameAutomaton.MAX_REGEXES) {
+                    this.automatonIndexes[i] = -1;
+                } else {
+                    this.automatonIndexes[i] = regexes.size();
+                    regexes.add(regex);
+                }
+            }
+
+            this.automaton = regexes.isEmpty() ? null : new NameAutomaton(regexes);
+        }
+    }
+
+    /**
+     * Maps each {@link com.puppycrawl.tools.checkstyle.api.TokenTypes} value to the corresponding bit of a modifier
+     * mask, which is {@code 1 << }{@link Modifier#ordinal()}, or 0.
+     */
+    private static final int[] MODIFIER_BITS;
+    static {
+        int maxTokenType = 0;
+        for (Modifier m : Modifier.values()) {
+            int tt = m.toLocalTokenType().delocalize();
+            if (tt > maxTokenType) maxTokenType = tt;
+        }
+
+        MODIFIER_BITS = new int[maxTokenType + 1];
+        for (Modifier m : Modifier.values()) {
+            NameSpelling.MODIFIER_BITS[m.toLocalTokenType().delocalize()] = 1 << m.ordinal();
+        }
+    }
+
+    private static final NameSpelling[] NO_RULES = new NameSpelling[0];
+    private static final RuleSet        NO_RULE_SET = new RuleSet(NameSpelling.NO_RULES);
+
+    @Override protected void
+    setupChild(Configuration childConf) throws CheckstyleException {
+
+        if (!"rule".equals(childConf.getName())) {
+            throw new CheckstyleException(
+                childConf.getName()
+                + " is not allowed as a child in "
+                + this.getConfiguration().getName()
+                + "; only \"rule\" is"
+            );
+        }
+
+        // Nested rules log through this check, so their own ID, severity and custom messages would have no effect.
+        for (String attributeName : childConf.getAttributeNames()) {
+            if ("id".equals(attributeName) || "severity".equals(attributeName)) {
+                throw new CheckstyleException(
+                    "Property \""
+                    + attributeName
+                    + "\" is not allowed in a nested \"rule\"; configure it on the enclosing "
+                    + this.getConfiguration().getName()
+                );
+            }
+        }
+        if (!childConf.getMessages().isEmpty()) {
+            throw new CheckstyleException(
+                "Custom messages are not allowed in a nested \"rule\"; configure them on the enclosing "
+                + this.getConfiguration().getName()
+            );
+        }
+
+        NameSpelling rule = new NameSpelling();
+        rule.configure(childConf);
+
+        this.nestedRules.add(rule);
+    }
+
+    /**
+     * @return This check (iff it has any elements configured), plus all nested rules
+     */
+    private List<NameSpelling>
+    getRules() {
+
+        List<NameSpelling> result = new ArrayList<NameSpelling>();
+
+        if (!this.elements.isEmpty()) result.add(this);
+        for (NameSpelling nestedRule : this.nestedRules) result.addAll(nestedRule.getRules());
+
+        return result;
+    }
+
     @Override public int[]
     getAcceptableTokens() {
 
+        EnumSet<Elements> elements = EnumSet.noneOf(Elements.class);
+        for (NameSpelling rule : this.getRules()) elements.addAll(rule.elements);
+
         // Calculate the minimal set of tokens required to perform the check.
         List<LocalTokenType> tokens = new ArrayList<LocalTokenType>();
 
-        if (this.elements.contains(Elements.ANNOTATION))       tokens.add(LocalTokenType.ANNOTATION_DEF);
-        if (this.elements.contains(Elements.ANNOTATION_FIELD)) tokens.add(LocalTokenType.ANNOTATION_FIELD_DEF);
-        if (this.elements.contains(Elements.CLASS))            tokens.add(LocalTokenType.CLASS_DEF);
-        if (this.elements.contains(Elements.ENUM))             tokens.add(LocalTokenType.ENUM_DEF);
-        if (this.elements.contains(Elements.ENUM_CONSTANT))    tokens.add(LocalTokenType.ENUM_CONSTANT_DEF);
-        if (this.elements.contains(Elements.INTERFACE))        tokens.add(LocalTokenType.INTERFACE_DEF);
-        if (this.elements.contains(Elements.METHOD))           tokens.add(LocalTokenType.METHOD_DEF);
-        if (this.elements.contains(Elements.PACKAGE))          tokens.add(LocalTokenType.PACKAGE_DEF);
-        if (this.elements.contains(Elements.TYPE_PARAMETER))   tokens.add(LocalTokenType.TYPE_PARAMETER);
+        if (elements.contains(Elements.ANNOTATION))       tokens.add(LocalTokenType.ANNOTATION_DEF);
+        if (elements.contains(Elements.ANNOTATION_FIELD)) tokens.add(LocalTokenType.ANNOTATION_FIELD_DEF);
+        if (elements.contains(Elements.CLASS))            tokens.add(LocalTokenType.CLASS_DEF);
+        if (elements.contains(Elements.ENUM))             tokens.add(LocalTokenType.ENUM_DEF);
+        if (elements.contains(Elements.ENUM_CONSTANT))    tokens.add(LocalTokenType.ENUM_CONSTANT_DEF);
+        if (elements.contains(Elements.INTERFACE))        tokens.add(LocalTokenType.INTERFACE_DEF);
+        if (elements.contains(Elements.METHOD))           tokens.add(LocalTokenType.METHOD_DEF);
+        if (elements.contains(Elements.PACKAGE))          tokens.add(LocalTokenType.PACKAGE_DEF);
+        if (elements.contains(Elements.TYPE_PARAMETER))   tokens.add(LocalTokenType.TYPE_PARAMETER);
 
         if (
-            this.elements.contains(Elements.CATCH_PARAMETER)
-            || this.elements.contains(Elements.FORMAL_PARAMETER)
+            elements.contains(Elements.CATCH_PARAMETER)
+            || elements.contains(Elements.FORMAL_PARAMETER)
         ) tokens.add(LocalTokenType.PARAMETER_DEF);
 
         if (
-            this.elements.contains(Elements.LOCAL_VARIABLE)
-            || this.elements.contains(Elements.FOR_VARIABLE)
-            || this.elements.contains(Elements.FOREACH_VARIABLE)
-            || this.elements.contains(Elements.FIELD)
+            elements.contains(Elements.LOCAL_VARIABLE)
+            || elements.contains(Elements.FOR_VARIABLE)
+            || elements.contains(Elements.FOREACH_VARIABLE)
+            || elements.contains(Elements.FIELD)
         ) tokens.add(LocalTokenType.VARIABLE_DEF);
 
         LocalTokenType[] tokensArray = tokens.toArray(new LocalTokenType[tokens.size()]);
@@ -316,21 +470,27 @@ class NameSpelling extends AbstractCheck {
                 break;
 
             case PARAMETER_DEF:
-                element = (
-                    AstUtil.parentTypeIs(ast, LocalTokenType.PARAMETERS)      ? Elements.FORMAL_PARAMETER
-                    : AstUtil.parentTypeIs(ast, LocalTokenType.LITERAL_CATCH) ? Elements.CATCH_PARAMETER
-                    : null
-                );
+                {
+                    long fingerprint = this.getFingerprint(ast);
+                    element = (
+                        NameSpelling.FORMAL_PARAMETER.matches(fingerprint)  ? Elements.FORMAL_PARAMETER
+                        : NameSpelling.CATCH_PARAMETER.matches(fingerprint) ? Elements.CATCH_PARAMETER
+                        : null
+                    );
+                }
                 break;
 
             case VARIABLE_DEF:
-                element = (
-                    AstUtil.parentTypeIs(ast, LocalTokenType.SLIST)             ? Elements.LOCAL_VARIABLE
-                    : AstUtil.parentTypeIs(ast, LocalTokenType.FOR_INIT)        ? Elements.FOR_VARIABLE
-                    : AstUtil.parentTypeIs(ast, LocalTokenType.FOR_EACH_CLAUSE) ? Elements.FOREACH_VARIABLE
-                    : AstUtil.parentTypeIs(ast, LocalTokenType.OBJBLOCK)        ? Elements.FIELD
-                    : null
-                );
+                {
+                    long fingerprint = this.getFingerprint(ast);
+                    element = (
+                        NameSpelling.LOCAL_VARIABLE.matches(fingerprint)     ? Elements.LOCAL_VARIABLE
+                        : NameSpelling.FOR_VARIABLE.matches(fingerprint)     ? Elements.FOR_VARIABLE
+                        : NameSpelling.FOREACH_VARIABLE.matches(fingerprint) ? Elements.FOREACH_VARIABLE
+                        : NameSpelling.FIELD.matches(fingerprint)            ? Elements.FIELD
+                        : null
+                    );
+                }
                 break;
 
             default:
@@ -338,9 +498,6 @@ class NameSpelling extends AbstractCheck {
             }
             if (element == null) throw new IllegalStateException(Integer.toString(Cs820.getType(ast)));
 
-            // Verify that this element should be checked.
-            if (!this.elements.contains(element)) return;
-
             // Now determine the modifiers and the name.
             DetailAST modifiersAst, nameAst;
             switch (element) {
@@ -372,48 +529,29 @@ class NameSpelling extends AbstractCheck {
                 throw new IllegalStateException(element.toString());
             }
 
-            // Check if the modifiers match the configuration.
-            if (modifiersAst == null) {
-                assert this.requiredModifiers.isEmpty() : "Must not set 'requiredModifiers' for element 'package'";
-                assert this.missingModifiers.isEmpty() : "Must not set 'missingModifiers' for element 'package'";
-            } else {
-                for (LocalTokenType modifier : this.requiredModifiers) {
-                    if (Cs820.findFirstToken(modifiersAst, modifier.delocalize()) == null) return;
-                }
-                for (LocalTokenType modifier : this.missingModifiers) {
-                    if (Cs820.findFirstToken(modifiersAst, modifier.delocalize()) != null) return;
-                }
-            }
-
-            // Eventually check the element name.
-            FullIdent fullName = FullIdent.createFullIdent(nameAst);
-            switch (this.option) {
-
-            case REQUIRE:
-                if (!this.formatPattern.matcher(fullName.getText()).find()) {
-                    this.log(
-                        fullName.getLineNo(),
-                        fullName.getColumnNo(),
-                        NameSpelling.MESSAGE_KEY_DOES_NOT_COMPLY,
-                        element.toString(),
-                        fullName.getText(),
-                        this.formatPattern.toString()
-                    );
-                }
-                break;
-
-            case FORBID:
-                if (this.formatPattern.matcher(fullName.getText()).find()) {
-                    this.log(
-                        fullName.getLineNo(),
-                        fullName.getColumnNo(),
-                        NameSpelling.MESSAGE_KEY_MUST_NOT_MATCH,
-                        element.toString(),
-                        fullName.getText(),
-                        this.formatPattern.toString()
-                    );
-                }
-                break;
+            // Determine the rules that apply to the element and its modifiers.
+            RuleSet ruleSet = this.getRules(
+                element,
+                modifiersAst == null ? -1 : NameSpelling.modifierMask(modifiersAst)
+            );
+            NameSpelling[] rules = ruleSet.rules;
+            if (rules.length == 0) return;
+
+            // Eventually check the element name; match it against all (supported) formats in one go.
+            FullIdent     fullName  = FullIdent.createFullIdent(nameAst);
+            String        text      = fullName.getText();
+            NameAutomaton automaton = ruleSet.automaton;
+            long          matches   = automaton == null ? NameAutomaton.UNKNOWN : automaton.match(text);
+            for (int i = 0; i < rules.length; i++) {
+                NameSpelling rule = rules[i];
+                int          ai   = ruleSet.automatonIndexes[i];
+
+                boolean found = (
+                    ai == -1 || matches == NameAutomaton.UNKNOWN
+                    ? rule.formatPattern.matcher(text).find()
+                    : (matches & (1L << ai)) != 0
+                );
+                this.checkName(rule, element, fullName, found);
             }
         } catch (RuntimeException rte) {
             throw new RuntimeException(
@@ -422,4 +560,136 @@ class NameSpelling extends AbstractCheck {
             );
         }
     }
+
+    /**
+     * @return A mask of the modifiers that the given {@code MODIFIERS} node has, see {@link #MODIFIER_BITS}
+     */
+    private static int
+    modifierMask(DetailAST modifiersAst) {
+
+        int result = 0;
+        for (DetailAST child = Cs820.getFirstChild(modifiersAst); child != null; child = Cs820.getNextSibling(child)) {
+            int tt = Cs820.getType(child);
+            if (tt < NameSpelling.MODIFIER_BITS.length) result |= NameSpelling.MODIFIER_BITS[tt];
+        }
+
+        return result;
+    }
+
+    /**
+     * @param modifierMask -1 for elements that have no modifiers, i.e. packages
+     * @return             The rules that apply to the given element with the given modifiers
+     */
+    private RuleSet
+    getRules(Elements element, int modifierMask) {
+
+        RuleSet[][] rbeam = this.rulesByElementAndModifiers;
+        if (rbeam == null) rbeam = (this.rulesByElementAndModifiers = new RuleSet[Elements.values().length][]);
+
+        RuleSet[] rbm = rbeam[element.ordinal()];
+        if (rbm == null) rbm = (rbeam[element.ordinal()] = new RuleSet[(1 << Modifier.values().length) + 1]);
+
+        // Index 0 is for "no modifiers at all".
+        RuleSet result = rbm[modifierMask + 1];
+        if (result != null) return result;
+
+        List<NameSpelling> tmp = new ArrayList<NameSpelling>();
+        for (NameSpelling rule : this.getRules()) {
+
+            if (!rule.elements.contains(element)) continue;
+
+            // Check if the modifiers match the rule's configuration.
+            if (modifierMask == -1) {
+                assert rule.requiredModifiers.isEmpty() : "Must not set 'requiredModifiers' for element 'package'";
+                assert rule.missingModifiers.isEmpty() : "Must not set 'missingModifiers' for element 'package'";
+            } else {
+                int requiredMask = NameSpelling.modifierMask(rule.requiredModifiers);
+                if ((modifierMask & requiredMask) != requiredMask) continue;
+                if ((modifierMask & NameSpelling.modifierMask(rule.missingModifiers)) != 0) continue;
+            }
+
+            tmp.add(rule);
+        }
+
+        return (rbm[modifierMask + 1] = (
+            tmp.isEmpty()
+            ? NameSpelling.NO_RULE_SET
+            : new RuleSet(tmp.toArray(NameSpelling.NO_RULES))
+        ));
+    }
+
+    private static int
+    modifierMask(Set<LocalTokenType> modifiers) {
+
+        int result = 0;
+        for (LocalTokenType modifier : modifiers) result |= NameSpelling.MODIFIER_BITS[modifier.delocalize()];
+
+        return result;
+    }
+
+    /**
+     * Reports the name of the given element iff it violates the given rule.
+     *
+     * @param rule  This check, or one of its nested rules
+     * @param found Whether the {@link #setFormat(String) format} of the <var>rule</var> is found in the name
+     */
+    private void
+    checkName(NameSpelling rule, Elements element, FullIdent fullName, boolean found) {
+
+        switch (rule.option) {
+
+        case REQUIRE:
+            if (!found) {
+                this.log(
+                    fullName.getLineNo(),
+                    fullName.getColumnNo(),
+                    NameSpelling.MESSAGE_KEY_DOES_NOT_COMPLY,
+                    element.toString(),
+                    fullName.getText(),
+                    rule.formatPattern.toString()
+                );
+            }
+            break;
+
+        case FORBID:
+            if (found) {
+                this.log(
+                    fullName.getLineNo(),
+                    fullName.getColumnNo(),
+                    NameSpelling.MESSAGE_KEY_MUST_NOT_MATCH,
+                    element.toString(),
+                    fullName.getText(),
+                    rule.formatPattern.toString()
+                );
+            }
+            break;
+        }
+    }
+
+    private static final AncestorPattern FORMAL_PARAMETER = AstUtil.ANY_NODE.parent(LocalTokenType.PARAMETERS);
+    private static final AncestorPattern CATCH_PARAMETER  = AstUtil.ANY_NODE.parent(LocalTokenType.LITERAL_CATCH);
+    private static final AncestorPattern LOCAL_VARIABLE   = AstUtil.ANY_NODE.parent(LocalTokenType.SLIST);
+    private static final AncestorPattern FOR_VARIABLE     = AstUtil.ANY_NODE.parent(LocalTokenType.FOR_INIT);
+    private static final AncestorPattern FOREACH_VARIABLE = AstUtil.ANY_NODE.parent(LocalTokenType.FOR_EACH_CLAUSE);
+    private static final AncestorPattern FIELD            = AstUtil.ANY_NODE.parent(LocalTokenType.OBJBLOCK);
+
+    /** The snapshot of the AST of the current file. */
+    private FlatAst flatAst;
+
+    private long
+    getFingerprint(DetailAST ast) {
+        FlatAst fa = this.flatAst;
+        return fa.getFingerprint(fa.indexOf(ast));
+    }
+
+    @Override public void
+    beginTree(DetailAST rootAst) {
+        this.flatAst = FlatAst.of(rootAst);
+    }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        FlatAst.release(rootAst);
+        this.flatAst = null;
+    }
 }
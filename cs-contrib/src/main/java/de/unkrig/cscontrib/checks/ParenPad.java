@@ -27,7 +27,6 @@
 package de.unkrig.cscontrib.checks;
 
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.checks.whitespace.PadOption;
@@ -35,6 +34,7 @@ import com.puppycrawl.tools.checkstyle.checks.whitespace.ParenPadCheck;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.compat.Cs820;
+import de.unkrig.cscontrib.util.LineGeometry;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -62,21 +62,6 @@ class ParenPad extends ParenPadCheck {
     private static final String
     MESSAGE_KEY_NOT_FOLLOWED_BY_WHITESPACE = "ParenPad.notFollowedByWhitespace";
 
-    private static final Pattern NOSPACE_PATTERN = Pattern.compile(
-        "[^\\s].*"   // '(' + non-space
-        + "|"
-        + "\\s*//.*" // '(' + space + end-of-line-comment
-        + "|"
-        + ""         // '(' + line-break
-    );
-    private static final Pattern SPACE_PATTERN = Pattern.compile(
-        "\\s.*"    // '(' + Space
-        + "|"
-        + "\\).*"  // '(' + ')'
-        + "|"
-        + ""       // '(' + line-break
-    );
-
     private PadOption option;
 
     /**
@@ -97,20 +82,33 @@ class ParenPad extends ParenPadCheck {
 
     @Override protected void
     processLeft(DetailAST ast) {
-        final String line  = this.getLines()[Cs820.getLineNo(ast) - 1];
-        final int    after = Cs820.getColumnNo(ast) + 1;
+        final LineGeometry lineGeometry = LineGeometry.of(this.getFileContents());
+        final int          lineNo       = Cs820.getLineNo(ast);
+        final String       line         = lineGeometry.getLine(lineNo);
+        final int          after        = Cs820.getColumnNo(ast) + 1;
 
-        String rest = line.substring(after);
         if (
             this.option == PadOption.NOSPACE
-            && !ParenPad.NOSPACE_PATTERN.matcher(rest).matches()
+            && lineGeometry.isBlankAt(lineNo, after)                            // '(' + space
+            && !(                                                               // but not...
+                lineGeometry.getCommentStart(lineNo) != -1                      // ... '(' + space +
+                && lineGeometry.isBlankOrCommentFrom(lineNo, after)             //     end-of-line-comment
+            )
         ) {
-            this.log(Cs820.getLineNo(ast), after, ParenPad.MESSAGE_KEY_FOLLOWED_BY_WHITESPACE, "(");
+            this.log(lineNo, after, ParenPad.MESSAGE_KEY_FOLLOWED_BY_WHITESPACE, "(");
         } else if (
             this.option == PadOption.SPACE
-            && !ParenPad.SPACE_PATTERN.matcher(rest).matches()
+            && after < line.length()                                            // Not '(' + line-break
+            && !LineGeometry.isBlank(line.charAt(after))                        // Not '(' + space
+            && line.charAt(after) != ')'                                        // Not '(' + ')'
         ) {
-            this.log(Cs820.getLineNo(ast), after, ParenPad.MESSAGE_KEY_NOT_FOLLOWED_BY_WHITESPACE, "(");
+            this.log(lineNo, after, ParenPad.MESSAGE_KEY_NOT_FOLLOWED_BY_WHITESPACE, "(");
         }
     }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        LineGeometry.release(this.getFileContents());
+        super.finishTree(rootAst);
+    }
 }
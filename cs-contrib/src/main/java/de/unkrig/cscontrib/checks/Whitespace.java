@@ -27,6 +27,7 @@
 package de.unkrig.cscontrib.checks;
 
 import java.util.EnumSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
@@ -36,7 +37,9 @@ import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.cscontrib.util.JavaElement;
+import de.unkrig.cscontrib.util.LineGeometry;
 import de.unkrig.csdoclet.annotation.Message;
 import de.unkrig.csdoclet.annotation.MultiCheckRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
@@ -90,7 +93,10 @@ class Whitespace extends AbstractCheck {
      */
     @MultiCheckRuleProperty(optionProvider = JavaElement.class, defaultValue = Whitespace.DEFAULT_WHITESPACE_BEFORE)
     public void
-    setWhitespaceBefore(String[] sa) { this.whitespaceBefore = Whitespace.toEnumSet(sa, JavaElement.class); }
+    setWhitespaceBefore(String[] sa) {
+        this.whitespaceBefore = Whitespace.toEnumSet(sa, JavaElement.class);
+        this.ruleMasks = null;
+    }
 
     private EnumSet<JavaElement>
     whitespaceBefore = Whitespace.toEnumSet(Whitespace.DEFAULT_WHITESPACE_BEFORE.toUpperCase(), JavaElement.class);
@@ -103,7 +109,10 @@ class Whitespace extends AbstractCheck {
      */
     @MultiCheckRuleProperty(optionProvider = JavaElement.class, defaultValue = Whitespace.DEFAULT_NO_WHITESPACE_BEFORE)
     public void
-    setNoWhitespaceBefore(String[] sa) { this.noWhitespaceBefore = Whitespace.toEnumSet(sa, JavaElement.class); }
+    setNoWhitespaceBefore(String[] sa) {
+        this.noWhitespaceBefore = Whitespace.toEnumSet(sa, JavaElement.class);
+        this.ruleMasks = null;
+    }
 
     private EnumSet<JavaElement>
     noWhitespaceBefore = Whitespace.toEnumSet(Whitespace.DEFAULT_NO_WHITESPACE_BEFORE.toUpperCase(), JavaElement.class);
@@ -116,7 +125,10 @@ class Whitespace extends AbstractCheck {
      */
     @MultiCheckRuleProperty(optionProvider = JavaElement.class, defaultValue = Whitespace.DEFAULT_WHITESPACE_AFTER)
     public void
-    setWhitespaceAfter(String[] sa) { this.whitespaceAfter = Whitespace.toEnumSet(sa, JavaElement.class); }
+    setWhitespaceAfter(String[] sa) {
+        this.whitespaceAfter = Whitespace.toEnumSet(sa, JavaElement.class);
+        this.ruleMasks = null;
+    }
 
     private EnumSet<JavaElement>
     whitespaceAfter = Whitespace.toEnumSet(Whitespace.DEFAULT_WHITESPACE_AFTER.toUpperCase(), JavaElement.class);
@@ -129,7 +141,10 @@ class Whitespace extends AbstractCheck {
      */
     @MultiCheckRuleProperty(optionProvider = JavaElement.class, defaultValue = Whitespace.DEFAULT_NO_WHITESPACE_AFTER)
     public void
-    setNoWhitespaceAfter(String[] sa)  { this.noWhitespaceAfter = Whitespace.toEnumSet(sa, JavaElement.class); }
+    setNoWhitespaceAfter(String[] sa) {
+        this.noWhitespaceAfter = Whitespace.toEnumSet(sa, JavaElement.class);
+        this.ruleMasks = null;
+    }
 
     private EnumSet<JavaElement>
     noWhitespaceAfter = Whitespace.toEnumSet(Whitespace.DEFAULT_NO_WHITESPACE_AFTER.toUpperCase(), JavaElement.class);
@@ -166,13 +181,65 @@ class Whitespace extends AbstractCheck {
         return result;
     }
 
+    /**
+     * The four configured sets of Java elements, compiled into one bit mask per {@link JavaElement} (indexed by
+     * {@link JavaElement#ordinal()}).
+     */
+    private byte[] ruleMasks;
+
+    private static final byte WHITESPACE_BEFORE    = 1;
+    private static final byte NO_WHITESPACE_BEFORE = 2;
+    private static final byte WHITESPACE_AFTER     = 4;
+    private static final byte NO_WHITESPACE_AFTER  = 8;
+
+    /**
+     * The snapshot of the AST of the current file.
+     */
+    private FlatAst flatAst;
+
+    /**
+     * The geometry of the lines of the current file.
+     */
+    private LineGeometry lineGeometry;
+
+    @Override public void
+    init() { this.ruleMasks = this.compileRuleMasks(); }
+
+    @Override public void
+    beginTree(DetailAST rootAst) {
+        if (this.ruleMasks == null) this.ruleMasks = this.compileRuleMasks();
+        this.flatAst      = FlatAst.of(rootAst);
+        this.lineGeometry = LineGeometry.of(this.getFileContents());
+    }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        FlatAst.release(rootAst);
+        LineGeometry.release(this.getFileContents());
+        this.flatAst      = null;
+        this.lineGeometry = null;
+    }
+
+    private byte[]
+    compileRuleMasks() {
+
+        byte[] result = new byte[JavaElement.values().length];
+        for (JavaElement je : this.whitespaceBefore)   result[je.ordinal()] |= Whitespace.WHITESPACE_BEFORE;
+        for (JavaElement je : this.noWhitespaceBefore) result[je.ordinal()] |= Whitespace.NO_WHITESPACE_BEFORE;
+        for (JavaElement je : this.whitespaceAfter)    result[je.ordinal()] |= Whitespace.WHITESPACE_AFTER;
+        for (JavaElement je : this.noWhitespaceAfter)  result[je.ordinal()] |= Whitespace.NO_WHITESPACE_AFTER;
+
+        return result;
+    }
+
     @Override public void
     visitToken(final DetailAST ast) {
         assert ast != null;
 
-        @SuppressWarnings("unused") AstDumper dumper = new AstDumper(ast); // For debugging
+        final FlatAst flatAst = this.flatAst;
+        final int     node    = flatAst.indexOf(ast);
 
-        JavaElement javaElement = AstUtil.toJavaElement(ast);
+        JavaElement javaElement = flatAst.getJavaElement(node);
 
         if (javaElement == null) {
             return;
@@ -180,57 +247,80 @@ class Whitespace extends AbstractCheck {
 
 //        log(ast, "CHECK {0}={1} => {2}", ast, ast.getType(), whitespaceable);
 
-        boolean mustBeWhitespaceBefore    = this.whitespaceBefore.contains(javaElement);
-        boolean mustNotBeWhitespaceBefore = this.noWhitespaceBefore.contains(javaElement);
+        // Short-circuit.
+        int mask = this.ruleMasks[javaElement.ordinal()];
+        if (mask == 0) return;
 
-        boolean mustBeWhitespaceAfter    = this.whitespaceAfter.contains(javaElement);
-        boolean mustNotBeWhitespaceAfter = this.noWhitespaceAfter.contains(javaElement);
+        boolean mustBeWhitespaceBefore    = (mask & Whitespace.WHITESPACE_BEFORE) != 0;
+        boolean mustNotBeWhitespaceBefore = (mask & Whitespace.NO_WHITESPACE_BEFORE) != 0;
 
-        // Short-circuit.
-        if (
-            !mustBeWhitespaceBefore
-            && !mustNotBeWhitespaceBefore
-            && !mustBeWhitespaceAfter
-            && !mustNotBeWhitespaceAfter
-        ) return;
+        boolean mustBeWhitespaceAfter    = (mask & Whitespace.WHITESPACE_AFTER) != 0;
+        boolean mustNotBeWhitespaceAfter = (mask & Whitespace.NO_WHITESPACE_AFTER) != 0;
 
-        final String line = this.getLines()[Cs820.getLineNo(ast) - 1];
+        final LineGeometry lineGeometry = this.lineGeometry;
+        final int          lineNo       = flatAst.getLineNo(node);
+        final String       line         = lineGeometry.getLine(lineNo);
 
-        String tokenText = Cs820.getText(ast);
-        if ("STATIC_INIT".contentEquals(tokenText)) tokenText = "static"; // Compensate one hack in the JavaRecognizer...
+        String tokenText = (
+            javaElement == JavaElement.STATIC__STATIC_INIT
+            ? "static" // Compensate one hack in the JavaRecognizer, which sets the text to "STATIC_INIT".
+            : Cs820.getText(ast)
+        );
 
         // Check whitespace BEFORE token.
         if (mustBeWhitespaceBefore || mustNotBeWhitespaceBefore) {
-            int before = Cs820.getColumnNo(ast) - 1;
+            int before = flatAst.getColumnNo(node) - 1;
 
-            if (before > 0 && !Whitespace.LINE_PREFIX.matcher(line).region(0, before).matches()) {
+            if (before > 0 && !lineGeometry.isBlankBefore(lineNo, before)) {
                 boolean isWhitespace = Character.isWhitespace(line.charAt(before));
+                String  messageKey   = null;
                 if (mustBeWhitespaceBefore && !isWhitespace) {
-                    this.log(ast, Whitespace.MESSAGE_KEY_NOT_PRECEDED, tokenText, javaElement);
+                    messageKey = Whitespace.MESSAGE_KEY_NOT_PRECEDED;
                 } else
                 if (mustNotBeWhitespaceBefore && isWhitespace) {
-                    this.log(ast, Whitespace.MESSAGE_KEY_PRECEDED, tokenText, javaElement);
+                    messageKey = Whitespace.MESSAGE_KEY_PRECEDED;
+                }
+                if (messageKey != null) this.log(ast, messageKey, tokenText, javaElement);
+
+                if (DecisionTrace.ENABLED) {
+                    DecisionTrace.record(
+                        this,
+                        ast,
+                        javaElement.toString(),
+                        isWhitespace ? "preceded by whitespace" : "not preceded by whitespace",
+                        messageKey == null ? DecisionTrace.OK : messageKey
+                    );
                 }
             }
         }
 
         // Check whitespace AFTER token.
         if (mustBeWhitespaceAfter || mustNotBeWhitespaceAfter) {
-            int after = Cs820.getColumnNo(ast) + tokenText.length();
+            int after = flatAst.getColumnNo(node) + tokenText.length();
 
-            if (after < line.length() && !Whitespace.LINE_SUFFIX.matcher(line).region(after, line.length()).matches()) {
+            if (after < line.length() && !lineGeometry.isBlankOrCommentFrom(lineNo, after)) {
                 boolean isWhitespace = Character.isWhitespace(line.charAt(after));
+                String  messageKey   = null;
                 if (mustBeWhitespaceAfter && !isWhitespace) {
-                    this.log(Cs820.getLineNo(ast), after, Whitespace.MESSAGE_KEY_NOT_FOLLOWED, tokenText, javaElement);
+                    messageKey = Whitespace.MESSAGE_KEY_NOT_FOLLOWED;
                 } else
                 if (mustNotBeWhitespaceAfter && isWhitespace) {
-                    this.log(Cs820.getLineNo(ast), after, Whitespace.MESSAGE_KEY_FOLLOWED, tokenText, javaElement);
+                    messageKey = Whitespace.MESSAGE_KEY_FOLLOWED;
+                }
+                if (messageKey != null) this.log(lineNo, after, messageKey, tokenText, javaElement);
+
+                if (DecisionTrace.ENABLED) {
+                    DecisionTrace.record(
+                        this,
+                        ast,
+                        javaElement.toString(),
+                        isWhitespace ? "followed by whitespace" : "not followed by whitespace",
+                        messageKey == null ? DecisionTrace.OK : messageKey
+                    );
                 }
             }
         }
     }
-    private static final Pattern LINE_PREFIX = Pattern.compile("\\s*");
-    private static final Pattern LINE_SUFFIX = Pattern.compile("\\s*(?://.*)?");
 
     @Override public int[]
     getAcceptableTokens() {
@@ -402,8 +492,24 @@ class Whitespace extends AbstractCheck {
     }
 
     @Override public int[]
-    getDefaultTokens() { return this.getAcceptableTokens(); }
+    getDefaultTokens() {
+
+        // Calculate the minimal set of tokens required to perform the check, i.e. the tokens that can be classified
+        // as one of the configured Java elements.
+        Set<LocalTokenType> tokens = EnumSet.noneOf(LocalTokenType.class);
+        for (JavaElement je : this.whitespaceBefore)   tokens.addAll(AstUtil.getTokenTypes(je));
+        for (JavaElement je : this.noWhitespaceBefore) tokens.addAll(AstUtil.getTokenTypes(je));
+        for (JavaElement je : this.whitespaceAfter)    tokens.addAll(AstUtil.getTokenTypes(je));
+        for (JavaElement je : this.noWhitespaceAfter)  tokens.addAll(AstUtil.getTokenTypes(je));
+
+        // Never subscribe to tokens beyond the acceptable ones.
+        Set<LocalTokenType> acceptableTokens = EnumSet.noneOf(LocalTokenType.class);
+        for (int t : this.getAcceptableTokens()) acceptableTokens.add(LocalTokenType.localize(t));
+        tokens.retainAll(acceptableTokens);
+
+        return LocalTokenType.delocalize(tokens);
+    }
 
     @Override public int[]
-    getRequiredTokens() { return this.getAcceptableTokens(); }
+    getRequiredTokens() { return this.getDefaultTokens(); }
 }
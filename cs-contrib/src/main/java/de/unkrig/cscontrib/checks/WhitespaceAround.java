@@ -31,8 +31,9 @@ import com.puppycrawl.tools.checkstyle.checks.whitespace.WhitespaceAroundCheck;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
-import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
+import de.unkrig.cscontrib.util.FlatAst;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.MultiCheckRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
@@ -141,23 +142,64 @@ class WhitespaceAround extends WhitespaceAroundCheck {
 
     // END CONFIGURATION SETTERS
 
+    private static final AncestorPattern IN_OBJBLOCK = AstUtil.ANY_NODE.parent(LocalTokenType.OBJBLOCK);
+
+    private static final AncestorPattern[] IN_CLASS_INTERFACE_ANNOTATION_BODY = {
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.CLASS_DEF),
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.INTERFACE_DEF),
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.ANNOTATION_DEF),
+    };
+
+    private static final AncestorPattern[] IN_CLASS_INTERFACE_ANONYMOUS_CLASS_ANNOTATION_BODY = {
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.CLASS_DEF),
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.INTERFACE_DEF),
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.LITERAL_NEW),
+        WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.ANNOTATION_DEF),
+    };
+
+    private static final AncestorPattern
+    IN_ANONYMOUS_CLASS_BODY = WhitespaceAround.IN_OBJBLOCK.grandParent(LocalTokenType.LITERAL_NEW);
+
+    private static final AncestorPattern
+    CATCH_BLOCK = AstUtil.ANY_NODE.parent(LocalTokenType.LITERAL_CATCH);
+
+    private static final AncestorPattern
+    IN_CATCH_BLOCK = AstUtil.ANY_NODE.parent(LocalTokenType.SLIST).grandParent(LocalTokenType.LITERAL_CATCH);
+
+    /** The snapshot of the AST of the current file. */
+    private FlatAst flatAst;
+
+    @Override public void
+    beginTree(DetailAST rootAst) {
+        super.beginTree(rootAst);
+        this.flatAst = FlatAst.of(rootAst);
+    }
+
+    @Override public void
+    finishTree(DetailAST rootAst) {
+        FlatAst.release(rootAst);
+        this.flatAst = null;
+        super.finishTree(rootAst);
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
-        switch (LocalTokenType.localize(Cs820.getType(ast))) {
+
+        FlatAst flatAst     = this.flatAst;
+        int     node        = flatAst.indexOf(ast);
+        long    fingerprint = flatAst.getFingerprint(node);
+
+        switch (flatAst.getLocalType(node)) {
 
         case LCURLY:
 
             // Conditionally allow empty type body.
             if (
                 this.allowEmptyTypes
-                && AstUtil.nextSiblingTypeIs(ast, LocalTokenType.RCURLY)
-                && AstUtil.parentTypeIs(ast, LocalTokenType.OBJBLOCK)
-                && AstUtil.grandParentTypeIs(
-                    ast,
-                    LocalTokenType.CLASS_DEF,
-                    LocalTokenType.INTERFACE_DEF,
-                    LocalTokenType.LITERAL_NEW,
-                    LocalTokenType.ANNOTATION_DEF
+                && flatAst.getLocalTypeOrNull(flatAst.getNextSibling(node)) == LocalTokenType.RCURLY
+                && AncestorPattern.matchesAny(
+                    fingerprint,
+                    WhitespaceAround.IN_CLASS_INTERFACE_ANONYMOUS_CLASS_ANNOTATION_BODY
                 )
             ) return;
             break;
@@ -167,37 +209,24 @@ class WhitespaceAround extends WhitespaceAroundCheck {
             // Conditionally allow empty catch block.
             if (
                 this.allowEmptyCatches
-                && AstUtil.parentTypeIs(ast, LocalTokenType.LITERAL_CATCH)
-                && AstUtil.firstChildTypeIs(ast, LocalTokenType.RCURLY)
+                && WhitespaceAround.CATCH_BLOCK.matches(fingerprint)
+                && flatAst.getLocalTypeOrNull(flatAst.getFirstChild(node)) == LocalTokenType.RCURLY
             ) return;
             break;
 
         case RCURLY:
 
             // Check for anonymous class instantiation; unconditionally allow "}.".
-            if (
-                AstUtil.parentTypeIs(ast, LocalTokenType.OBJBLOCK)
-                && AstUtil.grandParentTypeIs(ast, LocalTokenType.LITERAL_NEW)
-            ) return;
+            if (WhitespaceAround.IN_ANONYMOUS_CLASS_BODY.matches(fingerprint)) return;
 
             // Conditionally allow empty catch block.
-            if (
-                this.allowEmptyCatches
-                && AstUtil.parentTypeIs(ast, LocalTokenType.SLIST)
-                && AstUtil.grandParentTypeIs(ast, LocalTokenType.LITERAL_CATCH)
-            ) return;
+            if (this.allowEmptyCatches && WhitespaceAround.IN_CATCH_BLOCK.matches(fingerprint)) return;
 
             // Conditionally allow empty class or interface body.
             if (
                 this.allowEmptyTypes
-                && AstUtil.parentTypeIs(ast, LocalTokenType.OBJBLOCK)
-                && AstUtil.grandParentTypeIs(
-                    ast,
-                    LocalTokenType.CLASS_DEF,
-                    LocalTokenType.INTERFACE_DEF,
-                    LocalTokenType.ANNOTATION_DEF
-                )
-                && AstUtil.previousSiblingTypeIs(ast, LocalTokenType.LCURLY)
+                && AncestorPattern.matchesAny(fingerprint, WhitespaceAround.IN_CLASS_INTERFACE_ANNOTATION_BODY)
+                && flatAst.getLocalTypeOrNull(flatAst.getPreviousSibling(node)) == LocalTokenType.LCURLY
             ) return;
             break;
 
@@ -35,6 +35,7 @@ import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -185,6 +186,39 @@ class WrapAnnotationCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    private Program annotationDefProgram;
+    private Program annotationProgram;
+    private Program annotationMemberValuePairProgram;
+
+    @Override protected void
+    compilePrograms() {
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.annotationDefProgram = AbstractWrapCheck.compile(
+            MODIFIERS, this.wrapDeclBeforeAt, AT, LITERAL_INTERFACE, IDENT, this.wrapDeclBeforeLCurly, OBJBLOCK, END // SUPPRESS CHECKSTYLE LineLength
+        );
+
+        // SUPPRESS CHECKSTYLE WrapMethod:12
+        this.annotationProgram = AbstractWrapCheck.compile(
+            AT, FORK1, DOT, BRANCH2,
+            LABEL1, IDENT,
+            LABEL2, FORK3, END,
+            LABEL3, LPAREN, BRANCH5,
+            LABEL4, COMMA,
+            LABEL5, FORK6, MAY_INDENT, ANNOTATION_MEMBER_VALUE_PAIR, BRANCH9,
+            LABEL6, FORK7, MAY_INDENT, ANNOTATION, BRANCH9,
+            LABEL7, FORK8, MAY_INDENT, EXPR, BRANCH9,
+            LABEL8, MAY_INDENT, this.wrapElementValueArrayInitializerBeforeLCurly, ANNOTATION_ARRAY_INIT,
+            LABEL9, FORK4, UNINDENT, RPAREN, END
+        );
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.annotationMemberValuePairProgram = AbstractWrapCheck.compile(
+            IDENT, ASSIGN, FORK1, this.wrapElementValueArrayInitializerBeforeLCurly, ANNOTATION_ARRAY_INIT, END,
+            LABEL1, ANY, END
+        );
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
@@ -192,39 +226,17 @@ class WrapAnnotationCheck extends AbstractWrapCheck {
         switch (LocalTokenType.localize(Cs820.getType(ast))) {
 
         case ANNOTATION_DEF:
-            if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
+            if (this.allowOneLineDecl && this.spansSingleLine(ast)) return;
 
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                MODIFIERS, this.wrapDeclBeforeAt, AT, LITERAL_INTERFACE, IDENT, this.wrapDeclBeforeLCurly, OBJBLOCK, END // SUPPRESS CHECKSTYLE LineLength
-            );
+            this.checkChildren(ast, this.annotationDefProgram);
             break;
 
         case ANNOTATION:
-            // SUPPRESS CHECKSTYLE WrapMethod:12
-            this.checkChildren(
-                ast,
-                AT, FORK1, DOT, BRANCH2,
-                LABEL1, IDENT,
-                LABEL2, FORK3, END,
-                LABEL3, LPAREN, BRANCH5,
-                LABEL4, COMMA,
-                LABEL5, FORK6, MAY_INDENT, ANNOTATION_MEMBER_VALUE_PAIR, BRANCH9,
-                LABEL6, FORK7, MAY_INDENT, ANNOTATION, BRANCH9,
-                LABEL7, FORK8, MAY_INDENT, EXPR, BRANCH9,
-                LABEL8, MAY_INDENT, this.wrapElementValueArrayInitializerBeforeLCurly, ANNOTATION_ARRAY_INIT,
-                LABEL9, FORK4, UNINDENT, RPAREN, END
-            );
+            this.checkChildren(ast, this.annotationProgram);
             break;
 
         case ANNOTATION_MEMBER_VALUE_PAIR:
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                IDENT, ASSIGN, FORK1, this.wrapElementValueArrayInitializerBeforeLCurly, ANNOTATION_ARRAY_INIT, END,
-                LABEL1, ANY, END
-            );
+            this.checkChildren(ast, this.annotationMemberValuePairProgram);
             break;
 
         default:
@@ -232,13 +244,21 @@ class WrapAnnotationCheck extends AbstractWrapCheck {
         }
     }
 
+    private static final AncestorPattern
+    ANNOTATION_ELEMENT = AstUtil.ANY_NODE.parent(LocalTokenType.ANNOTATION);
+
+    private static final AncestorPattern
+    ANNOTATION_ARRAY_INIT_ELEMENT = AstUtil.ANY_NODE.parent(LocalTokenType.ANNOTATION_ARRAY_INIT);
+
     @Override protected boolean
     checkMultipleElementsPerLine(DetailAST child) {
 
-        if (AstUtil.parentTypeIs(child, LocalTokenType.ANNOTATION) && !this.allowMultiplePerLine) return false;
+        long fingerprint = this.getFingerprint(child);
+
+        if (WrapAnnotationCheck.ANNOTATION_ELEMENT.matches(fingerprint) && !this.allowMultiplePerLine) return false;
 
         if (
-            AstUtil.parentTypeIs(child, LocalTokenType.ANNOTATION_ARRAY_INIT)
+            WrapAnnotationCheck.ANNOTATION_ARRAY_INIT_ELEMENT.matches(fingerprint)
             && !this.allowMultipleElementValueArrayInitializersPerLine
         ) return false;
 
@@ -97,17 +97,24 @@ class WrapAnonymousClassCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
+
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             ANY, FORK1, TYPE_ARGUMENTS,
             LABEL1, FORK3, ARRAY_DECLARATOR, FORK2, MAY_WRAP, ARRAY_INIT,
             LABEL2, END,
             LABEL3, LPAREN, INDENT_IF_CHILDREN, ELIST, UNINDENT, RPAREN, OPTIONAL, this.wrapDeclBeforeLCurly, OBJBLOCK, END // SUPPRESS CHECKSTYLE LineLength
         );
     }
+
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        this.checkChildren(ast, this.program);
+    }
 }
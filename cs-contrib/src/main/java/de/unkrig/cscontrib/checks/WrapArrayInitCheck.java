@@ -41,6 +41,7 @@ import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -131,6 +132,27 @@ class WrapArrayInitCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    private Program literalNewProgram;
+    private Program assignProgram;
+
+    @Override protected void
+    compilePrograms() {
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.literalNewProgram = AbstractWrapCheck.compile(
+            ANY, FORK1, TYPE_ARGUMENTS,
+            LABEL1, FORK3, ARRAY_DECLARATOR, FORK2, this.wrapBeforeLCurly, ARRAY_INIT,
+            LABEL2, END,
+            LABEL3, LPAREN, INDENT_IF_CHILDREN, ELIST, UNINDENT, RPAREN, OPTIONAL, MAY_WRAP, OBJBLOCK, END // SUPPRESS CHECKSTYLE LineLength
+        );
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.assignProgram = AbstractWrapCheck.compile(
+            FORK1, this.wrapBeforeLCurly, ARRAY_INIT, END,
+            LABEL1, ANY, END
+        );
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
@@ -138,26 +160,14 @@ class WrapArrayInitCheck extends AbstractWrapCheck {
         switch (LocalTokenType.localize(Cs820.getType(ast))) {
 
         case LITERAL_NEW:
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                ANY, FORK1, TYPE_ARGUMENTS,
-                LABEL1, FORK3, ARRAY_DECLARATOR, FORK2, this.wrapBeforeLCurly, ARRAY_INIT,
-                LABEL2, END,
-                LABEL3, LPAREN, INDENT_IF_CHILDREN, ELIST, UNINDENT, RPAREN, OPTIONAL, MAY_WRAP, OBJBLOCK, END // SUPPRESS CHECKSTYLE LineLength
-            );
+            this.checkChildren(ast, this.literalNewProgram);
             break;
 
         case ASSIGN:
             if (Cs820.getChildCount(ast) == 1) {
 
                 // A field or local variable initialization.
-                // SUPPRESS CHECKSTYLE WrapMethod:6
-                this.checkChildren(
-                    ast,
-                    FORK1, this.wrapBeforeLCurly, ARRAY_INIT, END,
-                    LABEL1, ANY, END
-                );
+                this.checkChildren(ast, this.assignProgram);
             }
             break;
 
@@ -166,11 +176,13 @@ class WrapArrayInitCheck extends AbstractWrapCheck {
         }
     }
 
+    private static final AncestorPattern ARRAY_INIT_VALUE = AstUtil.ANY_NODE.parent(LocalTokenType.ARRAY_INIT);
+
     @Override protected boolean
     checkMultipleElementsPerLine(DetailAST child) {
 
         if (
-            AstUtil.parentTypeIs(child, LocalTokenType.ARRAY_INIT)
+            WrapArrayInitCheck.ARRAY_INIT_VALUE.matches(this.getFingerprint(child))
             && !this.allowMultipleValuesPerLine
         ) return false;
 
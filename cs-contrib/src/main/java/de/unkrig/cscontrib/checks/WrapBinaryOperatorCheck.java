@@ -33,6 +33,9 @@ import static de.unkrig.cscontrib.LocalTokenType.RBRACK;
 import static de.unkrig.cscontrib.LocalTokenType.RPAREN;
 import static de.unkrig.cscontrib.LocalTokenType.TYPE_ARGUMENTS;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
@@ -187,8 +190,6 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
             return Cs820.getNextSibling(previous);
         }
 
-        @SuppressWarnings("unused") AstDumper dumper = new AstDumper(previous); // For debugging
-
         DetailAST next = Cs820.getNextSibling(previous);
         for (;;) {
             if (Cs820.getType(next) != LPAREN.delocalize()) {
@@ -199,17 +200,29 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
             next     = Cs820.getNextSibling(next);
         }
 
-        if (Cs820.getLineNo(previous) == Cs820.getLineNo(AbstractWrapCheck.getLeftmostDescendant(next))) {
+        boolean nextInline = Cs820.getLineNo(previous) == Cs820.getLineNo(this.leftmostDescendant(next));
+
+        if (DecisionTrace.ENABLED) {
+            DecisionTrace.record(
+                this,
+                previous,
+                "parenthesized expression",
+                nextInline ? "inline" : "wrapped",
+                DecisionTrace.CONTINUE
+            );
+        }
+
+        if (nextInline) {
             this.checkExpression(next, true);
             previous = next;
             next     = Cs820.getNextSibling(next);
-            this.checkSameLine(AbstractWrapCheck.getRightmostDescendant(previous), next);
+            this.checkSameLine(this.rightmostDescendant(previous), next);
         } else {
-            this.checkIndented(previous, AbstractWrapCheck.getLeftmostDescendant(next));
+            this.checkIndented(previous, this.leftmostDescendant(next));
             this.checkExpression(next, false);
             previous = next;
             next     = Cs820.getNextSibling(next);
-            this.checkUnindented(AbstractWrapCheck.getRightmostDescendant(previous), next);
+            this.checkUnindented(this.rightmostDescendant(previous), next);
         }
 
         previous = next;
@@ -223,6 +236,25 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
     private void
     checkExpression(DetailAST expression, boolean inline) {
 
+        if (WrapBinaryOperatorCheck.isBinaryOperation(expression)) {
+
+            // Left-deep chains of binary operations, e.g. "a + b + c + ...", can have thousands of operands (think of
+            // generated code), so process them iteratively rather than recursively.
+            List<DetailAST> chain = new ArrayList<DetailAST>();
+            do {
+                chain.add(expression);
+                expression = Cs820.getFirstChild(expression);
+            } while (WrapBinaryOperatorCheck.isBinaryOperation(expression));
+
+            DetailAST c = this.checkParenthesizedExpression(expression, inline);
+            for (int i = chain.size() - 1;;) {
+                this.checkBinaryOperation(chain.get(i), c, inline);
+                if (--i < 0) break;
+                c = Cs820.getNextSibling(chain.get(i + 1));
+            }
+            return;
+        }
+
         if (Cs820.getType(expression) == QUESTION.delocalize()) {
             System.currentTimeMillis();
         }
@@ -243,8 +275,8 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
             {
                 DetailAST c = this.checkParenthesizedExpression(Cs820.getFirstChild(expression), inline);
                 assert c != null;
-                this.checkSameLine(AbstractWrapCheck.getRightmostDescendant(Cs820.getFirstChild(expression)), expression);
-                this.checkSameLine(expression, AbstractWrapCheck.getLeftmostDescendant(c));
+                this.checkSameLine(this.rightmostDescendant(Cs820.getFirstChild(expression)), expression);
+                this.checkSameLine(expression, this.leftmostDescendant(c));
                 c = this.checkParenthesizedExpression(c, inline);
                 assert c != null;
                 assert Cs820.getType(c) == RBRACK.delocalize();
@@ -252,150 +284,6 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
             }
             break;
 
-        // Binary operations
-        case ASSIGN:
-        case BAND:
-        case BAND_ASSIGN:
-        case BOR:
-        case BOR_ASSIGN:
-        case BSR:
-        case BSR_ASSIGN:
-        case BXOR:
-        case BXOR_ASSIGN:
-        case DIV:
-        case DIV_ASSIGN:
-        case DOT:
-        case EQUAL:
-        case GE:
-        case GT:
-        case LAND:
-        case LITERAL_INSTANCEOF:
-        case LOR:
-        case LE:
-        case LT:
-        case MINUS:
-        case MINUS_ASSIGN:
-        case MOD:
-        case MOD_ASSIGN:
-        case NOT_EQUAL:
-        case PLUS:
-        case PLUS_ASSIGN:
-        case SL:
-        case SL_ASSIGN:
-        case SR:
-        case SR_ASSIGN:
-        case STAR:
-        case STAR_ASSIGN:
-            {
-                DetailAST c = this.checkParenthesizedExpression(Cs820.getFirstChild(expression), inline);
-                if (c != null && Cs820.getType(c) == TYPE_ARGUMENTS.delocalize()) {
-
-                    // TYPE_ARGUMENTS checked by "visitToken()".
-                    ;
-                    c = Cs820.getNextSibling(c);
-                }
-                assert c != null : (
-                    this.getFileContents().getFileName()
-                    + ":"
-                    + Cs820.getLineNo(expression)
-                    + ": Second operand for '"
-                    + LocalTokenType.localize(Cs820.getType(expression))
-                    + "' missing"
-                );
-
-                // Check wrapping and alignment of LHS and operator.
-                {
-                    DetailAST lhs = AbstractWrapCheck.getRightmostDescendant(Cs820.getPreviousSibling(c));
-                    switch (inline ? Control.NO_WRAP : this.wrapBeforeOperator) {
-
-                    case NO_WRAP:
-                        this.checkSameLine(lhs, expression);
-                        break;
-
-                    case MAY_WRAP:
-                        if (Cs820.getLineNo(lhs) != Cs820.getLineNo(expression)) {
-                            this.checkWrapped(
-                                AbstractWrapCheck.getLeftmostDescendant(Cs820.getFirstChild(expression)),
-                                expression
-                            );
-                        } else {
-                            this.checkSameLine(lhs, expression);
-                        }
-                        break;
-
-                    case MUST_WRAP:
-                        this.checkWrapped(lhs, AbstractWrapCheck.getLeftmostDescendant(Cs820.getFirstChild(expression)));
-                        if (Cs820.getLineNo(lhs) == Cs820.getLineNo(expression)) {
-                            this.log(
-                                expression,
-                                AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
-                                Cs820.getText(lhs),
-                                Cs820.getText(expression)
-                            );
-                        } else {
-                            this.checkWrapped(
-                                AbstractWrapCheck.getLeftmostDescendant(Cs820.getFirstChild(expression)),
-                                expression
-                            );
-                        }
-                        break;
-
-                    default:
-                        throw new IllegalStateException();
-                    }
-                }
-
-                // Check wrapping and alignment of operator and RHS.
-                {
-                    DetailAST rhs = AbstractWrapCheck.getLeftmostDescendant(c);
-                    switch (inline ? Control.NO_WRAP : this.wrapAfterOperator) {
-
-                    case NO_WRAP:
-                        this.checkSameLine(expression, rhs);
-                        break;
-
-                    case MAY_WRAP:
-                        if (Cs820.getLineNo(expression) != Cs820.getLineNo(rhs)) {
-                            this.checkWrapped(AbstractWrapCheck.getLeftmostDescendant(Cs820.getFirstChild(expression)), rhs);
-                        } else {
-                            this.checkSameLine(expression, rhs);
-                        }
-                        break;
-
-                    case MUST_WRAP:
-                        if (Cs820.getLineNo(expression) == Cs820.getLineNo(rhs)) {
-                            this.log(
-                                rhs,
-                                AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
-                                Cs820.getText(expression),
-                                Cs820.getText(rhs)
-                            );
-                        } else {
-                            this.checkWrapped(AbstractWrapCheck.getLeftmostDescendant(Cs820.getFirstChild(expression)), rhs);
-                        }
-                        break;
-
-                    default:
-                        throw new IllegalStateException();
-                    }
-                }
-
-                c = this.checkParenthesizedExpression(c, inline);
-                assert c == null : (
-                    this.getFileContents().getFileName()
-                    + ":"
-                    + Cs820.getLineNo(expression)
-                    + ": Unexpected third operand "
-                    + LocalTokenType.localize(Cs820.getType(c))
-                    + "/'"
-                    + Cs820.getText(c)
-                    + "' for '"
-                    + LocalTokenType.localize(Cs820.getType(expression))
-                    + "'"
-                );
-            }
-            break;
-
         // Unary operations
         case BNOT:
         case DEC:
@@ -465,11 +353,11 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
                 DetailAST firstArgument = Cs820.getFirstChild(arguments);
                 if (
                     firstArgument == null
-                    || Cs820.getLineNo(AbstractWrapCheck.getLeftmostDescendant(firstArgument)) == Cs820.getLineNo(expression)
+                    || Cs820.getLineNo(this.leftmostDescendant(firstArgument)) == Cs820.getLineNo(expression)
                 ) {
-                    this.checkSameLine(AbstractWrapCheck.getRightmostDescendant(arguments), rparen);
+                    this.checkSameLine(this.rightmostDescendant(arguments), rparen);
                 } else {
-                    this.checkWrapped(AbstractWrapCheck.getLeftmostDescendant(expression), rparen);
+                    this.checkWrapped(this.leftmostDescendant(expression), rparen);
                 }
             }
             break;
@@ -489,4 +377,166 @@ class WrapBinaryOperatorCheck extends AbstractWrapCheck {
             );
         }
     }
+
+    /**
+     * Checks the given binary operation, except for its first operand.
+     *
+     * @param c      The node after the first operand, as returned by {@link #checkParenthesizedExpression(DetailAST,
+     *               boolean)}
+     * @param inline Iff {@code true}, then the entire expression must appear on one line.
+     */
+    private void
+    checkBinaryOperation(DetailAST expression, DetailAST c, boolean inline) {
+
+        if (c != null && Cs820.getType(c) == TYPE_ARGUMENTS.delocalize()) {
+
+            // TYPE_ARGUMENTS checked by "visitToken()".
+            ;
+            c = Cs820.getNextSibling(c);
+        }
+        assert c != null : (
+            this.getFileContents().getFileName()
+            + ":"
+            + Cs820.getLineNo(expression)
+            + ": Second operand for '"
+            + LocalTokenType.localize(Cs820.getType(expression))
+            + "' missing"
+        );
+
+        // Check wrapping and alignment of LHS and operator.
+        {
+            DetailAST lhs = this.rightmostDescendant(Cs820.getPreviousSibling(c));
+            switch (inline ? Control.NO_WRAP : this.wrapBeforeOperator) {
+
+            case NO_WRAP:
+                this.checkSameLine(lhs, expression);
+                break;
+
+            case MAY_WRAP:
+                if (Cs820.getLineNo(lhs) != Cs820.getLineNo(expression)) {
+                    this.checkWrapped(
+                        this.leftmostDescendant(Cs820.getFirstChild(expression)),
+                        expression
+                    );
+                } else {
+                    this.checkSameLine(lhs, expression);
+                }
+                break;
+
+            case MUST_WRAP:
+                this.checkWrapped(lhs, this.leftmostDescendant(Cs820.getFirstChild(expression)));
+                if (Cs820.getLineNo(lhs) == Cs820.getLineNo(expression)) {
+                    this.log(
+                        expression,
+                        AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
+                        Cs820.getText(lhs),
+                        Cs820.getText(expression)
+                    );
+                } else {
+                    this.checkWrapped(
+                        this.leftmostDescendant(Cs820.getFirstChild(expression)),
+                        expression
+                    );
+                }
+                break;
+
+            default:
+                throw new IllegalStateException();
+            }
+        }
+
+        // Check wrapping and alignment of operator and RHS.
+        {
+            DetailAST rhs = this.leftmostDescendant(c);
+            switch (inline ? Control.NO_WRAP : this.wrapAfterOperator) {
+
+            case NO_WRAP:
+                this.checkSameLine(expression, rhs);
+                break;
+
+            case MAY_WRAP:
+                if (Cs820.getLineNo(expression) != Cs820.getLineNo(rhs)) {
+                    this.checkWrapped(this.leftmostDescendant(Cs820.getFirstChild(expression)), rhs);
+                } else {
+                    this.checkSameLine(expression, rhs);
+                }
+                break;
+
+            case MUST_WRAP:
+                if (Cs820.getLineNo(expression) == Cs820.getLineNo(rhs)) {
+                    this.log(
+                        rhs,
+                        AbstractWrapCheck.MESSAGE_KEY_MUST_WRAP,
+                        Cs820.getText(expression),
+                        Cs820.getText(rhs)
+                    );
+                } else {
+                    this.checkWrapped(this.leftmostDescendant(Cs820.getFirstChild(expression)), rhs);
+                }
+                break;
+
+            default:
+                throw new IllegalStateException();
+            }
+        }
+
+        c = this.checkParenthesizedExpression(c, inline);
+        assert c == null : (
+            this.getFileContents().getFileName()
+            + ":"
+            + Cs820.getLineNo(expression)
+            + ": Unexpected third operand "
+            + LocalTokenType.localize(Cs820.getType(c))
+            + "/'"
+            + Cs820.getText(c)
+            + "' for '"
+            + LocalTokenType.localize(Cs820.getType(expression))
+            + "'"
+        );
+    }
+
+    private static boolean
+    isBinaryOperation(DetailAST ast) {
+
+        switch (LocalTokenType.localize(Cs820.getType(ast))) {
+
+        case ASSIGN:
+        case BAND:
+        case BAND_ASSIGN:
+        case BOR:
+        case BOR_ASSIGN:
+        case BSR:
+        case BSR_ASSIGN:
+        case BXOR:
+        case BXOR_ASSIGN:
+        case DIV:
+        case DIV_ASSIGN:
+        case DOT:
+        case EQUAL:
+        case GE:
+        case GT:
+        case LAND:
+        case LITERAL_INSTANCEOF:
+        case LOR:
+        case LE:
+        case LT:
+        case MINUS:
+        case MINUS_ASSIGN:
+        case MOD:
+        case MOD_ASSIGN:
+        case NOT_EQUAL:
+        case PLUS:
+        case PLUS_ASSIGN:
+        case SL:
+        case SL_ASSIGN:
+        case SR:
+        case SR_ASSIGN:
+        case STAR:
+        case STAR_ASSIGN:
+            return true;
+
+        default:
+            return false;
+        }
+    }
 }
@@ -141,19 +141,26 @@ class WrapClassCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
 
-        if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             MODIFIERS, this.wrapDeclBeforeClass, LITERAL_CLASS, IDENT, FORK1, TYPE_PARAMETERS,
             LABEL1, FORK2, MAY_WRAP, EXTENDS_CLAUSE,
             LABEL2, FORK3, MAY_WRAP, IMPLEMENTS_CLAUSE,
             LABEL3, this.wrapDeclBeforeLCurly, OBJBLOCK, END
         );
     }
+
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        if (this.allowOneLineDecl && this.spansSingleLine(ast)) return;
+
+        this.checkChildren(ast, this.program);
+    }
 }
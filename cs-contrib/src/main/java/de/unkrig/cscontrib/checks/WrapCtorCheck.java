@@ -48,6 +48,7 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -168,32 +169,48 @@ class WrapCtorCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
 
-        if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             MODIFIERS, FORK1, TYPE_PARAMETERS,
             LABEL1, this.wrapDeclBeforeName, IDENT, LPAREN, INDENT_IF_CHILDREN, PARAMETERS, UNINDENT, RPAREN, FORK2, MAY_WRAP, LITERAL_THROWS, // SUPPRESS CHECKSTYLE LineLength
             LABEL2, this.wrapDeclBeforeLCurly, SLIST, END
         );
     }
 
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        if (this.allowOneLineDecl && this.spansSingleLine(ast)) return;
+
+        this.checkChildren(ast, this.program);
+    }
+
+    private static final AncestorPattern[] ARGUMENT = {
+        AstUtil.ANY_NODE.grandParent(LocalTokenType.CTOR_CALL),
+        AstUtil.ANY_NODE.grandParent(LocalTokenType.SUPER_CTOR_CALL),
+    };
+
+    private static final AncestorPattern
+    PARAMETER = AstUtil.ANY_NODE.parent(LocalTokenType.PARAMETERS).grandParent(LocalTokenType.CTOR_DEF);
+
     @Override protected boolean
     checkMultipleElementsPerLine(DetailAST child) {
 
+        long fingerprint = this.getFingerprint(child);
+
         if (
-            AstUtil.grandParentTypeIs(child, LocalTokenType.CTOR_CALL, LocalTokenType.SUPER_CTOR_CALL) // SUPPRESS CHECKSTYLE LineLength
+            AncestorPattern.matchesAny(fingerprint, WrapCtorCheck.ARGUMENT)
             && !this.allowMultipleArgsPerLine
         ) return false;
 
         if (
-            AstUtil.parentTypeIs(child, LocalTokenType.PARAMETERS)
-            && AstUtil.grandParentTypeIs(child, LocalTokenType.CTOR_DEF)
+            WrapCtorCheck.PARAMETER.matches(fingerprint)
             && !this.allowMultipleParametersPerLine
         ) return false;
 
@@ -98,14 +98,21 @@ class WrapDoCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
+
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             this.wrapBeforeLCurly, SLIST, DO_WHILE, LPAREN, MAY_INDENT, EXPR, UNINDENT, RPAREN, SEMI, END
         );
     }
+
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        this.checkChildren(ast, this.program);
+    }
 }
@@ -37,6 +37,7 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -145,22 +146,34 @@ class WrapEnumCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
 
-        if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             MODIFIERS, this.wrapDeclBeforeEnum, ENUM, IDENT, this.wrapDeclBeforeLCurly, OBJBLOCK, END
         );
     }
 
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        if (this.allowOneLineDecl && this.spansSingleLine(ast)) return;
+
+        this.checkChildren(ast, this.program);
+    }
+
+    private static final AncestorPattern ENUM_CONSTANT = AstUtil.ANY_NODE.grandParent(LocalTokenType.ENUM_DEF);
+
     @Override protected boolean
     checkMultipleElementsPerLine(DetailAST child) {
 
-        return this.allowMultipleConstantsPerLine || !AstUtil.grandParentTypeIs(child, LocalTokenType.ENUM_DEF);
+        return (
+            this.allowMultipleConstantsPerLine
+            || !WrapEnumCheck.ENUM_CONSTANT.matches(this.getFingerprint(child))
+        );
     }
 }
@@ -101,20 +101,27 @@ class WrapFieldCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    private Program program;
+
+    @Override protected void
+    compilePrograms() {
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.program = AbstractWrapCheck.compile(
+            MODIFIERS, TYPE, this.wrapDeclBeforeName, IDENT, FORK1, ASSIGN,
+            // Field declarations DO have a SEMI, local variable declarations DON'T!?
+            LABEL1, FORK2, SEMI,
+            LABEL2, END
+        );
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
 
         if (Cs820.getType(Cs820.getParent(ast)) == OBJBLOCK.delocalize()) {
 
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                MODIFIERS, TYPE, this.wrapDeclBeforeName, IDENT, FORK1, ASSIGN,
-                // Field declarations DO have a SEMI, local variable declarations DON'T!?
-                LABEL1, FORK2, SEMI,
-                LABEL2, END
-            );
+            this.checkChildren(ast, this.program);
         }
     }
 }
@@ -140,18 +140,25 @@ class WrapInterfaceCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
 
-        if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:6
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             MODIFIERS, this.wrapDeclBeforeInterface, LITERAL_INTERFACE, IDENT, FORK1, TYPE_PARAMETERS,
             LABEL1, FORK2, MAY_WRAP, EXTENDS_CLAUSE,
             LABEL2, this.wrapDeclBeforeLCurly, OBJBLOCK, END
         );
     }
+
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        if (this.allowOneLineDecl && this.spansSingleLine(ast)) return;
+
+        this.checkChildren(ast, this.program);
+    }
 }
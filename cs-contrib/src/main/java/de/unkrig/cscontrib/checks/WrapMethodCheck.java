@@ -35,6 +35,7 @@ import de.unkrig.commons.nullanalysis.NotNullByDefault;
 import de.unkrig.cscontrib.LocalTokenType;
 import de.unkrig.cscontrib.compat.Cs820;
 import de.unkrig.cscontrib.util.AstUtil;
+import de.unkrig.cscontrib.util.AstUtil.AncestorPattern;
 import de.unkrig.csdoclet.annotation.BooleanRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.SingleSelectRuleProperty;
@@ -157,50 +158,64 @@ class WrapMethodCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    private Program methodDefProgram;
+    private Program parametersProgram;
+    private Program elistProgram;
+
+    @Override protected void
+    compilePrograms() {
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.methodDefProgram = AbstractWrapCheck.compile(
+            MODIFIERS, FORK1, TYPE_PARAMETERS,
+            LABEL1, TYPE, this.wrapDeclBeforeName, IDENT, LPAREN, INDENT_IF_CHILDREN, PARAMETERS, UNINDENT, RPAREN, FORK2, MAY_WRAP, LITERAL_THROWS, // SUPPRESS CHECKSTYLE LineLength
+            LABEL2, FORK3, this.wrapDeclBeforeLCurly, SLIST, END,
+            LABEL3, SEMI, END
+        );
+
+        // SUPPRESS CHECKSTYLE WrapMethod:6
+        this.parametersProgram = AbstractWrapCheck.compile(
+            FORK2, MAY_INDENT, PARAMETER_DEF, FORK2,
+            LABEL1, LocalTokenType.COMMA, MAY_INDENT, PARAMETER_DEF, FORK1,
+            LABEL2, END
+        );
+
+        // SUPPRESS CHECKSTYLE WrapMethod:8
+        this.elistProgram = AbstractWrapCheck.compile(
+            FORK4,
+            FORK1, MAY_INDENT, EXPR, FORK4, BRANCH2,
+            LABEL1, MAY_INDENT, LAMBDA, FORK4,
+            LABEL2, COMMA, FORK3, MAY_INDENT, EXPR, FORK2, END,
+            LABEL3, MAY_INDENT, LAMBDA, FORK2,
+            LABEL4, END
+        );
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
 
-        @SuppressWarnings("unused") AstDumper astDumper = new AstDumper(ast);
-
         switch (LocalTokenType.localize(Cs820.getType(ast))) {
 
         case METHOD_DEF:
-            if (this.allowOneLineDecl && AbstractWrapCheck.isSingleLine(ast)) return;
-
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                MODIFIERS, FORK1, TYPE_PARAMETERS,
-                LABEL1, TYPE, this.wrapDeclBeforeName, IDENT, LPAREN, INDENT_IF_CHILDREN, PARAMETERS, UNINDENT, RPAREN, FORK2, MAY_WRAP, LITERAL_THROWS, // SUPPRESS CHECKSTYLE LineLength
-                LABEL2, FORK3, this.wrapDeclBeforeLCurly, SLIST, END,
-                LABEL3, SEMI, END
-            );
+            if (this.allowOneLineDecl && this.spansSingleLine(ast)) {
+                if (DecisionTrace.ENABLED) {
+                    DecisionTrace.record(this, ast, "allowOneLineDecl", "single-line declaration", DecisionTrace.OK);
+                }
+                return;
+            }
+
+            this.checkChildren(ast, this.methodDefProgram);
             break;
 
         case PARAMETERS:
 
-            // SUPPRESS CHECKSTYLE WrapMethod:6
-            this.checkChildren(
-                ast,
-                FORK2, MAY_INDENT, PARAMETER_DEF, FORK2,
-                LABEL1, LocalTokenType.COMMA, MAY_INDENT, PARAMETER_DEF, FORK1,
-                LABEL2, END
-            );
+            this.checkChildren(ast, this.parametersProgram);
             break;
 
         case ELIST:
 
-            // SUPPRESS CHECKSTYLE WrapMethod:8
-            this.checkChildren(
-                ast,
-                FORK4,
-                FORK1, MAY_INDENT, EXPR, FORK4, BRANCH2,
-                LABEL1, MAY_INDENT, LAMBDA, FORK4,
-                LABEL2, COMMA, FORK3, MAY_INDENT, EXPR, FORK2, END,
-                LABEL3, MAY_INDENT, LAMBDA, FORK2,
-                LABEL4, END
-            );
+            this.checkChildren(ast, this.elistProgram);
             break;
 
         default:
@@ -208,17 +223,24 @@ class WrapMethodCheck extends AbstractWrapCheck {
         }
     }
 
+    private static final AncestorPattern
+    ARGUMENT = AstUtil.ANY_NODE.grandParent(LocalTokenType.METHOD_CALL);
+
+    private static final AncestorPattern
+    PARAMETER = AstUtil.ANY_NODE.parent(LocalTokenType.PARAMETERS).grandParent(LocalTokenType.METHOD_DEF);
+
     @Override protected boolean
     checkMultipleElementsPerLine(DetailAST child) {
 
+        long fingerprint = this.getFingerprint(child);
+
         if (
-            AstUtil.grandParentTypeIs(child, LocalTokenType.METHOD_CALL)
+            WrapMethodCheck.ARGUMENT.matches(fingerprint)
             && !this.allowMultipleArgsPerLine
         ) return false;
 
         if (
-            AstUtil.parentTypeIs(child, LocalTokenType.PARAMETERS)
-            && AstUtil.grandParentTypeIs(child, LocalTokenType.METHOD_DEF)
+            WrapMethodCheck.PARAMETER.matches(fingerprint)
             && !this.allowMultipleParametersPerLine
         ) return false;
 
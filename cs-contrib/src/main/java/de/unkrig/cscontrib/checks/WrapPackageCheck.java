@@ -116,7 +116,7 @@ class WrapPackageCheck extends AbstractWrapCheck {
         //        ;                      [1x22]  [3x22]
         //    import                     [3x0]   [5x0]
 
-        this.checkSameLine(ast, AbstractWrapCheck.getLeftmostDescendant(Cs820.getNextSibling(Cs820.getFirstChild(ast))));
+        this.checkSameLine(ast, this.leftmostDescendant(Cs820.getNextSibling(Cs820.getFirstChild(ast))));
 
         if (Cs820.getFirstChild(Cs820.getFirstChild(ast)) == null) return; // No annotation(s)
 
@@ -125,7 +125,7 @@ class WrapPackageCheck extends AbstractWrapCheck {
             return;
         }
 
-        if (this.wrapDeclBeforePackage == MAY_WRAP && AbstractWrapCheck.isSingleLine(ast)) return;
+        if (this.wrapDeclBeforePackage == MAY_WRAP && this.spansSingleLine(ast)) return;
 
         // Check that "@" is vertically aligned with the "package" keyword.
         this.checkWrapped(Cs820.getFirstChild(Cs820.getFirstChild(Cs820.getFirstChild(ast))), ast);
@@ -90,22 +90,13 @@ class WrapSwitchBlockStmtGroupCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
-    @Override public void
-    visitToken(DetailAST ast) {
-        assert ast != null;
+    private Program program;
 
-        if (Cs820.getType(Cs820.getParent(ast)) != CASE_GROUP.delocalize()) return;
-
-        // Single-line case group?
-        if (
-            this.allowOneLineSwitchBlockStmtGroup
-            && AbstractWrapCheck.isSingleLine(ast)
-            && Cs820.getLineNo(Cs820.getParent(ast)) == Cs820.getLineNo(ast)
-        ) return;
+    @Override protected void
+    compilePrograms() {
 
         // SUPPRESS CHECKSTYLE WrapMethod:10
-        this.checkChildren(
-            ast,
+        this.program = AbstractWrapCheck.compile(
             LABEL1, FORK2, MAY_INDENT, EXPR, SEMI, BRANCH1,
             LABEL2, FORK5, MAY_INDENT, VARIABLE_DEF,
             LABEL3, FORK4, COMMA, VARIABLE_DEF, BRANCH3,
@@ -116,4 +107,20 @@ class WrapSwitchBlockStmtGroupCheck extends AbstractWrapCheck {
             LABEL7, MAY_INDENT, ANY, BRANCH1
         );
     }
+
+    @Override public void
+    visitToken(DetailAST ast) {
+        assert ast != null;
+
+        if (Cs820.getType(Cs820.getParent(ast)) != CASE_GROUP.delocalize()) return;
+
+        // Single-line case group?
+        if (
+            this.allowOneLineSwitchBlockStmtGroup
+            && this.spansSingleLine(ast)
+            && Cs820.getLineNo(Cs820.getParent(ast)) == Cs820.getLineNo(ast)
+        ) return;
+
+        this.checkChildren(ast, this.program);
+    }
 }
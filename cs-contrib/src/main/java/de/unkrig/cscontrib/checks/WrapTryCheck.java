@@ -170,6 +170,28 @@ class WrapTryCheck extends AbstractWrapCheck {
     @Override public int[]
     getRequiredTokens() { return this.getAcceptableTokens(); }
 
+    private Program literalTryProgram;
+    private Program resourceSpecificationProgram;
+
+    @Override protected void
+    compilePrograms() {
+
+        // SUPPRESS CHECKSTYLE WrapMethod:8
+        this.literalTryProgram = AbstractWrapCheck.compile(
+            FORK1,
+            this.wrapBeforeResourceSpecification, LocalTokenType.RESOURCE_SPECIFICATION,
+            LABEL1, this.wrapBeforeBody, SLIST, FORK3, FORK4,
+            LABEL2, this.wrapBeforeCatch, LITERAL_CATCH, FORK2, FORK4,
+            LABEL3, this.wrapBeforeFinally, LITERAL_FINALLY,
+            LABEL4, END
+        );
+
+        this.resourceSpecificationProgram = AbstractWrapCheck.compile(
+            LPAREN, RESOURCES, RPAREN, // SUPPRESS CHECKSTYLE WrapMethod
+            END
+        );
+    }
+
     @Override public void
     visitToken(DetailAST ast) {
         assert ast != null;
@@ -180,24 +202,11 @@ class WrapTryCheck extends AbstractWrapCheck {
         //   v
         //  [ RESOURCE_SPECIFICATION -> ] SLIST -> { LITERAL_CATCH -> } [ LITERAL_FINALLY -> ] END
         case LITERAL_TRY:
-            // SUPPRESS CHECKSTYLE WrapMethod:8
-            this.checkChildren(
-                ast,
-                FORK1,
-                this.wrapBeforeResourceSpecification, LocalTokenType.RESOURCE_SPECIFICATION,
-                LABEL1, this.wrapBeforeBody, SLIST, FORK3, FORK4,
-                LABEL2, this.wrapBeforeCatch, LITERAL_CATCH, FORK2, FORK4,
-                LABEL3, this.wrapBeforeFinally, LITERAL_FINALLY,
-                LABEL4, END
-            );
+            this.checkChildren(ast, this.literalTryProgram);
             break;
 
         case RESOURCE_SPECIFICATION:
-            this.checkChildren(
-                ast,
-                LPAREN, RESOURCES, RPAREN, // SUPPRESS CHECKSTYLE WrapMethod
-                END
-            );
+            this.checkChildren(ast, this.resourceSpecificationProgram);
             break;
 
         default:
@@ -71,8 +71,6 @@ class ZeroParameterSuperconstructorInvocation extends AbstractCheck {
     visitToken(DetailAST ast) {
         assert ast != null;
 
-        @SuppressWarnings("unused") AstDumper dumper = new AstDumper(ast);
-
         // Find the constructor body.
         DetailAST statementList = Cs820.findFirstToken(ast, LocalTokenType.SLIST.delocalize());
 
@@ -94,5 +92,15 @@ class ZeroParameterSuperconstructorInvocation extends AbstractCheck {
         if (argumentCount == 0) {
             this.log(superconstructorCall, ZeroParameterSuperconstructorInvocation.MESSAGE_KEY_INVOCATION);
         }
+
+        if (DecisionTrace.ENABLED) {
+            DecisionTrace.record(
+                this,
+                superconstructorCall,
+                "superconstructor invocation",
+                argumentCount + " argument(s)",
+                argumentCount == 0 ? ZeroParameterSuperconstructorInvocation.MESSAGE_KEY_INVOCATION : DecisionTrace.OK
+            );
+        }
     }
 }
@@ -44,12 +44,22 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
  *   <b>class</b> method must be referenced with a MethodRef.
  * </p>
  * <p>
- *   The most painless workaround is to execute these invocations though reflection instead, which is what this class
- *   does.
+ *   The workaround is to route all these invocations through an {@link Adapter}, which is chosen once, when this
+ *   class is initialized:
  * </p>
+ * <ul>
+ *   <li>
+ *     With CS 8.21+, {@link DetailAST} is an interface, and the {@link InterfaceAdapter} invokes its methods
+ *     directly (which is possible because cs-contrib is compiled against CS 8.21).
+ *   </li>
+ *   <li>
+ *     With CS 8.20-, {@link DetailAST} is a class, and the {@link ReflectiveAdapter} invokes its methods through
+ *     reflection.
+ *   </li>
+ * </ul>
  * <p>
- *   In order to check whether any of the CheckStyle extension's classes still invokes {@link DetailAST}'s methods
- *   directly, execute this shell command:
+ *   In order to check whether any of the CheckStyle extension's classes (other than the {@link InterfaceAdapter})
+ *   still invokes {@link DetailAST}'s methods directly, execute this shell command:
  * </p>
  * <pre>
  * $ zzfind target/classes -name '**.class' -echo '*** ${path}' -disassemble |
@@ -61,72 +71,178 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 public
 class Cs820 {
 
-	private static final Method addPreviousSibling_DetailAST_ = meth("addPreviousSibling", DetailAST.class);
-	private static final Method addNextSibling_DetailAST_     = meth("addNextSibling",     DetailAST.class);
-	private static final Method getChildCount_                = meth("getChildCount");
-	private static final Method getChildCount_int_            = meth("getChildCount",      int.class);
-	private static final Method getParent_                    = meth("getParent");
-	private static final Method getText_                      = meth("getText");
-	private static final Method setText_String_               = meth("setText",            String.class);
-	private static final Method getType_                      = meth("getType");
-	private static final Method setType_int_                  = meth("setType",            int.class);
-	private static final Method getLineNo_                    = meth("getLineNo");
-	private static final Method setLineNo_int_                = meth("setLineNo",          int.class);
-	private static final Method getColumnNo_                  = meth("getColumnNo");
-	private static final Method setColumnNo_int_              = meth("setColumnNo",        int.class);
-	private static final Method getLine_                      = meth("getLine");
-	private static final Method getColumn_                    = meth("getColumn");
-	private static final Method getLastChild_                 = meth("getLastChild");
-	private static final Method branchContains_int_           = meth("branchContains",     int.class);
-	private static final Method getPreviousSibling_           = meth("getPreviousSibling");
-	private static final Method findFirstToken_int_           = meth("findFirstToken",     int.class);
-	private static final Method getNextSibling_               = meth("getNextSibling");
-	private static final Method getFirstChild_                = meth("getFirstChild");
-	private static final Method getNumberOfChildren_          = meth("getNumberOfChildren");
-	private static final Method removeChildren_               = meth("removeChildren");
-    
-	public static void      addPreviousSibling(DetailAST that, DetailAST ast) { ;                  inv(addPreviousSibling_DetailAST_, that, ast); }
-	public static void      addNextSibling(DetailAST that, DetailAST ast)     { ;                  inv(addNextSibling_DetailAST_, that, ast);     }
-    public static int       getChildCount(DetailAST that)                     { return (Integer)   inv(getChildCount_, that);                     }
-    public static int       getChildCount(DetailAST that, int type)           { return (Integer)   inv(getChildCount_int_, that, type);           }
-    public static DetailAST getParent(DetailAST that)                         { return (DetailAST) inv(getParent_, that);                         }
-    public static String    getText(DetailAST that)                           { return (String)    inv(getText_, that);                           }
-    public static void      setText(DetailAST that, String text)              { ;                  inv(setText_String_, that, text);              }
-    public static int       getType(DetailAST that)                           { return (Integer)   inv(getType_, that);                           }
-    public static void      setType(DetailAST that, int type)                 { ;                  inv(setType_int_, that, type);                 }
-    public static int       getLineNo(DetailAST that)                         { return (Integer)   inv(getLineNo_, that);                         }
-    public static void      setLineNo(DetailAST that, int lineNo)             { ;                  inv(setLineNo_int_, that, lineNo);             }
-    public static int       getColumnNo(DetailAST that)                       { return (Integer)   inv(getColumnNo_, that);                       }
-    public static void      setColumnNo(DetailAST that, int columnNo)         { ;                  inv(setColumnNo_int_, that, columnNo);         }
-    public static int       getLine(DetailAST that)                           { return (Integer)   inv(getLine_, that);                           }
-    public static int       getColumn(DetailAST that)                         { return (Integer)   inv(getColumn_, that);                         }
-    public static DetailAST getLastChild(DetailAST that)                      { return (DetailAST) inv(getLastChild_, that);                      }
-    public static boolean   branchContains(DetailAST that, int type)          { return (Boolean)   inv(branchContains_int_, that, type);          }
-    public static DetailAST getPreviousSibling(DetailAST that)                { return (DetailAST) inv(getPreviousSibling_, that);                }
-    public static DetailAST findFirstToken(DetailAST that, int type)          { return (DetailAST) inv(findFirstToken_int_, that, type);          }
-    public static DetailAST getNextSibling(DetailAST that)                    { return (DetailAST) inv(getNextSibling_, that);                    }
-    public static DetailAST getFirstChild(DetailAST that)                     { return (DetailAST) inv(getFirstChild_, that);                     }
-    public static int       getNumberOfChildren(DetailAST that)               { return (Integer)   inv(getNumberOfChildren_, that);               }
-    public static void      removeChildren(DetailAST that)                    { ;                  inv(removeChildren_, that);                    }
-
-	private static Method
-	meth(String methodName, Class<?>... parameterTypes) {
-		try {
-			return DetailAST.class.getDeclaredMethod(methodName, parameterTypes);
-		} catch (NoSuchMethodException e) {
-			return null; // Method not declared, e.g. "getText()" and "setText(String)" in CS 8.20
-		} catch (Exception e) {
-			throw new AssertionError(e);
-		}
-	}
-
-	private static Object
-    inv(Method method, Object target, Object... arguments) {
-		assert method != null : "Method missing in that CheckStyle version";
-		try {
-			return method.invoke(target, arguments);
-		} catch (Exception e) {
-			throw new AssertionError(e);
-		}
-	}
+    private
+    Cs820() {}
+
+    private static final Adapter
+    ADAPTER = DetailAST.class.isInterface() ? new InterfaceAdapter() : new ReflectiveAdapter();
+
+    // SUPPRESS CHECKSTYLE LineLength|Alignment:23
+    public static void      addPreviousSibling(DetailAST that, DetailAST ast) { Cs820.ADAPTER.addPreviousSibling(that, ast);    }
+    public static void      addNextSibling(DetailAST that, DetailAST ast)     { Cs820.ADAPTER.addNextSibling(that, ast);        }
+    public static int       getChildCount(DetailAST that)                     { return Cs820.ADAPTER.getChildCount(that);       }
+    public static int       getChildCount(DetailAST that, int type)           { return Cs820.ADAPTER.getChildCount(that, type); }
+    public static DetailAST getParent(DetailAST that)                         { return Cs820.ADAPTER.getParent(that);           }
+    public static String    getText(DetailAST that)                           { return Cs820.ADAPTER.getText(that);             }
+    public static void      setText(DetailAST that, String text)              { Cs820.ADAPTER.setText(that, text);              }
+    public static int       getType(DetailAST that)                           { return Cs820.ADAPTER.getType(that);             }
+    public static void      setType(DetailAST that, int type)                 { Cs820.ADAPTER.setType(that, type);              }
+    public static int       getLineNo(DetailAST that)                         { return Cs820.ADAPTER.getLineNo(that);           }
+    public static void      setLineNo(DetailAST that, int lineNo)             { Cs820.ADAPTER.setLineNo(that, lineNo);          }
+    public static int       getColumnNo(DetailAST that)                       { return Cs820.ADAPTER.getColumnNo(that);         }
+    public static void      setColumnNo(DetailAST that, int columnNo)         { Cs820.ADAPTER.setColumnNo(that, columnNo);      }
+    public static int       getLine(DetailAST that)                           { return Cs820.ADAPTER.getLine(that);             }
+    public static int       getColumn(DetailAST that)                         { return Cs820.ADAPTER.getColumn(that);           }
+    public static DetailAST getLastChild(DetailAST that)                      { return Cs820.ADAPTER.getLastChild(that);        }
+    public static boolean   branchContains(DetailAST that, int type)          { return Cs820.ADAPTER.branchContains(that, type); }
+    public static DetailAST getPreviousSibling(DetailAST that)                { return Cs820.ADAPTER.getPreviousSibling(that);  }
+    public static DetailAST findFirstToken(DetailAST that, int type)          { return Cs820.ADAPTER.findFirstToken(that, type); }
+    public static DetailAST getNextSibling(DetailAST that)                    { return Cs820.ADAPTER.getNextSibling(that);      }
+    public static DetailAST getFirstChild(DetailAST that)                     { return Cs820.ADAPTER.getFirstChild(that);       }
+    public static int       getNumberOfChildren(DetailAST that)               { return Cs820.ADAPTER.getNumberOfChildren(that); }
+    public static void      removeChildren(DetailAST that)                    { Cs820.ADAPTER.removeChildren(that);             }
+
+    /**
+     * Executes the invocations of {@link DetailAST}'s methods in a way that is binary-compatible with the CheckStyle
+     * version that is currently running.
+     */
+    abstract static
+    class Adapter {
+
+        // SUPPRESS CHECKSTYLE JavadocMethod|LineLength:23
+        abstract void      addPreviousSibling(DetailAST that, DetailAST ast);
+        abstract void      addNextSibling(DetailAST that, DetailAST ast);
+        abstract int       getChildCount(DetailAST that);
+        abstract int       getChildCount(DetailAST that, int type);
+        abstract DetailAST getParent(DetailAST that);
+        abstract String    getText(DetailAST that);
+        abstract void      setText(DetailAST that, String text);
+        abstract int       getType(DetailAST that);
+        abstract void      setType(DetailAST that, int type);
+        abstract int       getLineNo(DetailAST that);
+        abstract void      setLineNo(DetailAST that, int lineNo);
+        abstract int       getColumnNo(DetailAST that);
+        abstract void      setColumnNo(DetailAST that, int columnNo);
+        abstract int       getLine(DetailAST that);
+        abstract int       getColumn(DetailAST that);
+        abstract DetailAST getLastChild(DetailAST that);
+        abstract boolean   branchContains(DetailAST that, int type);
+        abstract DetailAST getPreviousSibling(DetailAST that);
+        abstract DetailAST findFirstToken(DetailAST that, int type);
+        abstract DetailAST getNextSibling(DetailAST that);
+        abstract DetailAST getFirstChild(DetailAST that);
+        abstract int       getNumberOfChildren(DetailAST that);
+        abstract void      removeChildren(DetailAST that);
+    }
+
+    /**
+     * For CS 8.21+, where {@link DetailAST} is an interface: Invokes the methods directly (through
+     * "invokeinterface"). This class is only loaded if that is the case, so it cannot cause an {@link
+     * IncompatibleClassChangeError} with older CS versions.
+     */
+    @SuppressWarnings("deprecation") static final
+    class InterfaceAdapter extends Adapter {
+
+        // SUPPRESS CHECKSTYLE LineLength|Alignment:23
+        @Override void      addPreviousSibling(DetailAST that, DetailAST ast) { that.addPreviousSibling(ast);       }
+        @Override void      addNextSibling(DetailAST that, DetailAST ast)     { that.addNextSibling(ast);           }
+        @Override int       getChildCount(DetailAST that)                     { return that.getChildCount();        }
+        @Override int       getChildCount(DetailAST that, int type)           { return that.getChildCount(type);    }
+        @Override DetailAST getParent(DetailAST that)                         { return that.getParent();            }
+        @Override String    getText(DetailAST that)                           { return that.getText();              }
+        @Override void      setText(DetailAST that, String text)              { that.setText(text);                 }
+        @Override int       getType(DetailAST that)                           { return that.getType();              }
+        @Override void      setType(DetailAST that, int type)                 { that.setType(type);                 }
+        @Override int       getLineNo(DetailAST that)                         { return that.getLineNo();            }
+        @Override void      setLineNo(DetailAST that, int lineNo)             { that.setLineNo(lineNo);             }
+        @Override int       getColumnNo(DetailAST that)                       { return that.getColumnNo();          }
+        @Override void      setColumnNo(DetailAST that, int columnNo)         { that.setColumnNo(columnNo);         }
+        @Override int       getLine(DetailAST that)                           { return that.getLine();              }
+        @Override int       getColumn(DetailAST that)                         { return that.getColumn();            }
+        @Override DetailAST getLastChild(DetailAST that)                      { return that.getLastChild();         }
+        @Override boolean   branchContains(DetailAST that, int type)          { return that.branchContains(type);   }
+        @Override DetailAST getPreviousSibling(DetailAST that)                { return that.getPreviousSibling();   }
+        @Override DetailAST findFirstToken(DetailAST that, int type)          { return that.findFirstToken(type);   }
+        @Override DetailAST getNextSibling(DetailAST that)                    { return that.getNextSibling();       }
+        @Override DetailAST getFirstChild(DetailAST that)                     { return that.getFirstChild();        }
+        @Override int       getNumberOfChildren(DetailAST that)               { return that.getNumberOfChildren();  }
+        @Override void      removeChildren(DetailAST that)                    { that.removeChildren();              }
+    }
+
+    /**
+     * For CS 8.20-, where {@link DetailAST} is a class: Invokes the methods through reflection.
+     */
+    static final
+    class ReflectiveAdapter extends Adapter {
+
+        private static final Method addPreviousSibling_DetailAST_ = meth("addPreviousSibling", DetailAST.class);
+        private static final Method addNextSibling_DetailAST_     = meth("addNextSibling",     DetailAST.class);
+        private static final Method getChildCount_                = meth("getChildCount");
+        private static final Method getChildCount_int_            = meth("getChildCount",      int.class);
+        private static final Method getParent_                    = meth("getParent");
+        private static final Method getText_                      = meth("getText");
+        private static final Method setText_String_               = meth("setText",            String.class);
+        private static final Method getType_                      = meth("getType");
+        private static final Method setType_int_                  = meth("setType",            int.class);
+        private static final Method getLineNo_                    = meth("getLineNo");
+        private static final Method setLineNo_int_                = meth("setLineNo",          int.class);
+        private static final Method getColumnNo_                  = meth("getColumnNo");
+        private static final Method setColumnNo_int_              = meth("setColumnNo",        int.class);
+        private static final Method getLine_                      = meth("getLine");
+        private static final Method getColumn_                    = meth("getColumn");
+        private static final Method getLastChild_                 = meth("getLastChild");
+        private static final Method branchContains_int_           = meth("branchContains",     int.class);
+        private static final Method getPreviousSibling_           = meth("getPreviousSibling");
+        private static final Method findFirstToken_int_           = meth("findFirstToken",     int.class);
+        private static final Method getNextSibling_               = meth("getNextSibling");
+        private static final Method getFirstChild_                = meth("getFirstChild");
+        private static final Method getNumberOfChildren_          = meth("getNumberOfChildren");
+        private static final Method removeChildren_               = meth("removeChildren");
+
+        // SUPPRESS CHECKSTYLE LineLength|Alignment:23
+        @Override void      addPreviousSibling(DetailAST that, DetailAST ast) { ;                  inv(addPreviousSibling_DetailAST_, that, ast); }
+        @Override void      addNextSibling(DetailAST that, DetailAST ast)     { ;                  inv(addNextSibling_DetailAST_, that, ast);     }
+        @Override int       getChildCount(DetailAST that)                     { return (Integer)   inv(getChildCount_, that);                     }
+        @Override int       getChildCount(DetailAST that, int type)           { return (Integer)   inv(getChildCount_int_, that, type);           }
+        @Override DetailAST getParent(DetailAST that)                         { return (DetailAST) inv(getParent_, that);                         }
+        @Override String    getText(DetailAST that)                           { return (String)    inv(getText_, that);                           }
+        @Override void      setText(DetailAST that, String text)              { ;                  inv(setText_String_, that, text);              }
+        @Override int       getType(DetailAST that)                           { return (Integer)   inv(getType_, that);                           }
+        @Override void      setType(DetailAST that, int type)                 { ;                  inv(setType_int_, that, type);                 }
+        @Override int       getLineNo(DetailAST that)                         { return (Integer)   inv(getLineNo_, that);                         }
+        @Override void      setLineNo(DetailAST that, int lineNo)             { ;                  inv(setLineNo_int_, that, lineNo);             }
+        @Override int       getColumnNo(DetailAST that)                       { return (Integer)   inv(getColumnNo_, that);                       }
+        @Override void      setColumnNo(DetailAST that, int columnNo)         { ;                  inv(setColumnNo_int_, that, columnNo);         }
+        @Override int       getLine(DetailAST that)                           { return (Integer)   inv(getLine_, that);                           }
+        @Override int       getColumn(DetailAST that)                         { return (Integer)   inv(getColumn_, that);                         }
+        @Override DetailAST getLastChild(DetailAST that)                      { return (DetailAST) inv(getLastChild_, that);                      }
+        @Override boolean   branchContains(DetailAST that, int type)          { return (Boolean)   inv(branchContains_int_, that, type);          }
+        @Override DetailAST getPreviousSibling(DetailAST that)                { return (DetailAST) inv(getPreviousSibling_, that);                }
+        @Override DetailAST findFirstToken(DetailAST that, int type)          { return (DetailAST) inv(findFirstToken_int_, that, type);          }
+        @Override DetailAST getNextSibling(DetailAST that)                    { return (DetailAST) inv(getNextSibling_, that);                    }
+        @Override DetailAST getFirstChild(DetailAST that)                     { return (DetailAST) inv(getFirstChild_, that);                     }
+        @Override int       getNumberOfChildren(DetailAST that)               { return (Integer)   inv(getNumberOfChildren_, that);               }
+        @Override void      removeChildren(DetailAST that)                    { ;                  inv(removeChildren_, that);                    }
+
+        private static Method
+        meth(String methodName, Class<?>... parameterTypes) {
+            try {
+                return DetailAST.class.getDeclaredMethod(methodName, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                return null; // Method not declared, e.g. "getText()" and "setText(String)" in CS 8.20
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private static Object
+        inv(Method method, Object target, Object... arguments) {
+            assert method != null : "Method missing in that CheckStyle version";
+            try {
+                return method.invoke(target, arguments);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
 }
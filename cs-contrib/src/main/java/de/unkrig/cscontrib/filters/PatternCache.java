@@ -0,0 +1,92 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.cscontrib.filters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A bounded cache of compiled {@link Pattern}s, shared by the filters of this package.
+ * <p>
+ *   The filters expand "{@code $1}"-style references in their regexes with the text of each magic line, and thus
+ *   compile one or more patterns per magic line. Typically, however, many of these are identical (think of thousands
+ *   of "{@code CHECKSTYLE Foo:OFF}" comments), so each of them is compiled only once.
+ * </p>
+ * <p>
+ *   The class is public so that the {@link #getHitCount() hit} and {@link #getMissCount() miss} counters can be
+ *   read, e.g. to tell how effective the cache is for a given code base.
+ * </p>
+ */
+public final
+class PatternCache {
+
+    private PatternCache() {}
+
+    /** The maximum number of patterns kept; when exceeded, the least recently used pattern is evicted. */
+    private static final int MAX_SIZE = 1000;
+
+    private static final Map<String, Pattern>
+    CACHE = new LinkedHashMap<String, Pattern>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override protected boolean
+        removeEldestEntry(Map.Entry<String, Pattern> eldest) { return this.size() > PatternCache.MAX_SIZE; }
+    };
+
+    private static long hitCount, missCount;
+
+    /**
+     * Equivalent with {@link Pattern#compile(String)}, but returns a cached pattern iff the same {@code regex} was
+     * compiled recently.
+     *
+     * @throws PatternSyntaxException
+     */
+    public static synchronized Pattern
+    compile(String regex) {
+
+        Pattern result = PatternCache.CACHE.get(regex);
+        if (result != null) {
+            PatternCache.hitCount++;
+            return result;
+        }
+
+        PatternCache.missCount++;
+        PatternCache.CACHE.put(regex, (result = Pattern.compile(regex)));
+        return result;
+    }
+
+    /** @return How many times {@link #compile(String)} returned a cached pattern */
+    public static synchronized long
+    getHitCount() { return PatternCache.hitCount; }
+
+    /** @return How many times {@link #compile(String)} had to compile a pattern */
+    public static synchronized long
+    getMissCount() { return PatternCache.missCount; }
+}
@@ -29,7 +29,10 @@ package de.unkrig.cscontrib.filters;
 import java.lang.ref.WeakReference;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -41,6 +44,7 @@ import com.puppycrawl.tools.checkstyle.api.AutomaticBean;
 import com.puppycrawl.tools.checkstyle.api.FileContents;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
+import de.unkrig.cscontrib.filters.SuppressionRegistry.Hits;
 import de.unkrig.csdoclet.annotation.RegexRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 
@@ -104,21 +108,21 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
             this.on     = on;
 
             // Expand regex for check and message
-            // Does not intern Patterns with Utils.getPattern()
+            // Many magic lines are identical, so use the PatternCache.
             try {
                 Pattern regex = on ? SuppressionLine.this.onRegex : SuppressionLine.this.offRegex;
                 if (SuppressionLine.this.checkNameFormat != null) {
-                    this.checkNameRegex = Pattern.compile(
+                    this.checkNameRegex = PatternCache.compile(
                         this.expandFromLine(text, SuppressionLine.this.checkNameFormat, regex)
                     );
                 }
                 if (SuppressionLine.this.messageFormat != null) {
-                    this.messageRegex = Pattern.compile(
+                    this.messageRegex = PatternCache.compile(
                         this.expandFromLine(text, SuppressionLine.this.messageFormat, regex)
                     );
                 }
                 if (SuppressionLine.this.moduleIdFormat != null) {
-                    this.moduleIdRegex = Pattern.compile(
+                    this.moduleIdRegex = PatternCache.compile(
                         this.expandFromLine(text, SuppressionLine.this.moduleIdFormat, regex)
                     );
                 }
@@ -156,36 +160,45 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
         compareTo(Tag that) { return this.lineNo - that.lineNo; }
 
         /**
-         * Determines whether the audit event matches this tag.
+         * Determines whether the source name or the module ID of an audit event match this tag.
          *
-         * @param event The {@link AuditEvent} to check
-         * @return      Whether the source of the {@code event} matches this tag
+         * @return Whether the {@code sourceName} or the {@code moduleId} match this tag
          */
         private boolean
-        isMatch(TreeWalkerAuditEvent event) {
+        isSourceMatch(String sourceName, String moduleId) {
 
             // Match event's 'source name' against 'checkNameRegex'.
             if (
                 this.checkNameRegex != null
-                && this.checkNameRegex.matcher(event.getSourceName()).find()
-            ) return true;
-
-            // Match event's message against 'checkMessageRegex'.
-            if (
-                this.messageRegex != null
-                && this.messageRegex.matcher(SuppressionLine.getEventMessage(event)).find()
+                && this.checkNameRegex.matcher(sourceName).find()
             ) return true;
 
             // Match event's 'module ID' against 'moduleIdRegex'.
             if (
                 this.moduleIdRegex != null
-                && event.getModuleId() != null
-                && this.moduleIdRegex.matcher(event.getModuleId()).find()
+                && moduleId != null
+                && this.moduleIdRegex.matcher(moduleId).find()
             ) return true;
 
             return false;
         }
 
+        /**
+         * Determines whether the message of an audit event matches this tag.
+         *
+         * @param event The {@link AuditEvent} to check
+         * @return      Whether the message of the {@code event} matches this tag
+         */
+        private boolean
+        isMessageMatch(TreeWalkerAuditEvent event) {
+
+            // Match event's message against 'checkMessageRegex'.
+            return (
+                this.messageRegex != null
+                && this.messageRegex.matcher(SuppressionLine.getEventMessage(event)).find()
+            );
+        }
+
         /**
          * Expand based on a matching line.
          *
@@ -196,6 +209,10 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
          */
         private String
         expandFromLine(String line, String replacement, Pattern regex) {
+
+            // Notice: Without any "$", there is nothing to expand.
+            if (replacement.indexOf('$') == -1) return replacement;
+
             final Matcher matcher = regex.matcher(line);
 
             if (!matcher.find()) return replacement;
@@ -203,7 +220,7 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
             String result = replacement;
             for (int i = 0; i <= matcher.groupCount(); i++) {
                 // $n expands line match like in Pattern.subst().
-                result = result.replaceAll("\\$" + i, matcher.group(i));
+                result = SuppressionLine.groupReference(i).matcher(result).replaceAll(matcher.group(i));
             }
             return result;
         }
@@ -212,6 +229,26 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
         toString() { return "Tag[line=" + this.getLine() + "; on=" + this.isOn() + "; text='" + this.getText() + "']"; }
     }
 
+    private static final Pattern[] GROUP_REFERENCES = new Pattern[10];
+    static {
+        for (int i = 0; i < SuppressionLine.GROUP_REFERENCES.length; i++) {
+            SuppressionLine.GROUP_REFERENCES[i] = Pattern.compile("\\$" + i);
+        }
+    }
+
+    /**
+     * @return The pattern that matches the reference to the <var>groupNumber</var>th captured subsequence, e.g.
+     *         "{@code $2}"
+     */
+    private static Pattern
+    groupReference(int groupNumber) {
+        return (
+            groupNumber < SuppressionLine.GROUP_REFERENCES.length
+            ? SuppressionLine.GROUP_REFERENCES[groupNumber]
+            : Pattern.compile("\\$" + groupNumber)
+        );
+    }
+
     /**
      * {@link AuditEvent#getMessage()} eventually invokes {@link MessageFormat#format(String, Object...)}, and does
      * not catch {@link IllegalArgumentException}. This method wraps {@link IllegalArgumentException} so that the
@@ -251,7 +288,20 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
 
     private String moduleIdFormat;
 
-    private final List<Tag> magicLines = new ArrayList<Tag>();
+    /** The {@link #offRegex} and the {@link #onRegex} (if set), as passed to the {@link SuppressionRegistry}. */
+    private Pattern[] patterns;
+
+    /** The indexes of the {@link #offRegex} and the {@link #onRegex} within the {@link #patterns}, or -1. */
+    private int     offRegexId = -1, onRegexId = -1;
+    private boolean registered;
+
+    /** Creates the {@link MagicLines} of a file. */
+    private final SuppressionRegistry.ViewFactory
+    magicLinesFactory = new SuppressionRegistry.ViewFactory() {
+
+        @Override public Object
+        create(Hits[] hits) { return new MagicLines(hits); }
+    };
 
     /**
      * References the current FileContents for this filter.
@@ -278,6 +328,7 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
         } catch (final PatternSyntaxException e) {
             throw new IllegalArgumentException("unable to parse " + offFormat, e);
         }
+        this.registered = false;
     }
 
     /**
@@ -291,6 +342,7 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
         } catch (final PatternSyntaxException e) {
             throw new IllegalArgumentException("unable to parse " + onFormat, e);
         }
+        this.registered = false;
     }
 
     /**
@@ -360,19 +412,23 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
 
         if (event.getLocalizedMessage() == null) return true;        // A special event.
 
-        // Lazy update. If the first event for the current file, update file
-        // contents and tag suppressions
+        // Lazy update. If the first event for the current file, then the registry scans the file contents, and we
+        // tag the suppressions.
         final FileContents currentContents = event.getFileContents();
         if (currentContents == null) {
             // we have no contents, so we can not filter.
             // TODO: perhaps we should notify user somehow?
             return true;
         }
-        if (this.getFileContents() != currentContents) {
-            this.setFileContents(currentContents);
-            this.processMagicLines();
-        }
-        final Tag matchTag = this.findNearestMatch(event);
+        if (this.getFileContents() != currentContents) this.setFileContents(currentContents);
+        if (!this.registered) this.finishLocalSetup();
+        MagicLines magicLines = (MagicLines) SuppressionRegistry.forCurrentThread().getView(
+            currentContents,
+            this.magicLinesFactory,
+            this.patterns
+        );
+
+        final Tag matchTag = magicLines.findNearestMatch(event);
         if ((matchTag != null) && !matchTag.isOn()) {
             return false;
         }
@@ -380,71 +436,149 @@ class SuppressionLine extends AutomaticBean implements TreeWalkerFilter {
     }
 
     /**
-     * Finds the nearest tag that matches an audit event. The nearest tag is before the line and column of the event.
-     *
-     * @param event The {@code AuditEvent} to match.
-     * @return      The {@code Tag} nearest {@code event}.
+     * The magic lines of one file.
      */
-    private Tag
-    findNearestMatch(TreeWalkerAuditEvent event) {
-        Tag result = null;
-        // TODO: try binary search if sequential search becomes a performance
-        // problem.
-        for (Tag tag : this.magicLines) {
-            if (tag.getLine() + 1 > event.getLine()) break;
-            if (tag.isMatch(event)) result = tag;
+    private
+    class MagicLines {
+
+        /** The tags for all magic lines, in ascending line number order. */
+        private final List<Tag> tags = new ArrayList<Tag>();
+
+        /** The line numbers of the {@link #tags}, in ascending order. */
+        private final int[] lineNumbers;
+
+        /** Whether any of the {@link #tags} has a message regex. */
+        private boolean haveMessageRegexes;
+
+        /**
+         * For each check name and module ID, the indexes of the {@link #tags} whose check name regex or module ID
+         * regex match; computed lazily.
+         */
+        private final Map<String /*sourceName*/, Map<String /*moduleId*/, int[]>>
+        matchingMagicLines = new HashMap<String, Map<String, int[]>>();
+
+        /**
+         * Creates the tags for the magic lines that the {@link SuppressionRegistry} found.
+         */
+        MagicLines(Hits[] hits) {
+
+            // Merge the "off" and the "on" lines; iff a line matches both, then the "off" tag comes first.
+            Hits off = SuppressionLine.this.offRegexId == -1 ? null : hits[SuppressionLine.this.offRegexId];
+            Hits on  = SuppressionLine.this.onRegexId == -1 ? null : hits[SuppressionLine.this.onRegexId];
+            for (int i = 0, j = 0;;) {
+                int offLineNo = off != null && i < off.lineNumbers.length ? off.lineNumbers[i] : Integer.MAX_VALUE;
+                int onLineNo  = on != null && j < on.lineNumbers.length ? on.lineNumbers[j] : Integer.MAX_VALUE;
+                if (offLineNo == Integer.MAX_VALUE && onLineNo == Integer.MAX_VALUE) break;
+
+                if (offLineNo <= onLineNo) {
+                    this.tags.add(new Tag(offLineNo, off.matches[i++].group(), false));
+                } else {
+                    this.tags.add(new Tag(onLineNo, on.matches[j++].group(), true));
+                }
+            }
+
+            int n = this.tags.size();
+            this.lineNumbers = new int[n];
+            for (int i = 0; i < n; i++) {
+                Tag tag = this.tags.get(i);
+                this.lineNumbers[i] = tag.getLine();
+                if (tag.messageRegex != null) this.haveMessageRegexes = true;
+            }
         }
-        return result;
-    }
 
-    /**
-     * Collects all the suppression tags for all magic lines into a list and sorts the list.
-     */
-    private void
-    processMagicLines() {
-        this.magicLines.clear();
-        String[] lines = this.getFileContents().getLines();
-        for (int lineNo = 0; lineNo < lines.length; ++lineNo) {
-            this.checkMagicness(lines[lineNo], lineNo);
+        /**
+         * Finds the nearest tag that matches an audit event. The nearest tag is before the line and column of the
+         * event.
+         *
+         * @param event The {@code AuditEvent} to match.
+         * @return      The {@code Tag} nearest {@code event}.
+         */
+        private Tag
+        findNearestMatch(TreeWalkerAuditEvent event) {
+
+            // Find the tags in or before the event line. (Notice: Tag line numbers count from zero.)
+            int[] lineNumbers = this.lineNumbers;
+            int   limit;
+            {
+                int lo = 0, hi = lineNumbers.length;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (lineNumbers[mid] + 1 > event.getLine()) {
+                        hi = mid;
+                    } else {
+                        lo = mid + 1;
+                    }
+                }
+                limit = lo;
+            }
+
+            // Find the nearest of these tags that matches the event's check name or module ID.
+            int   nearest;
+            {
+                int[] indexes = this.getMatchingMagicLines(event.getSourceName(), event.getModuleId());
+                int   i       = Arrays.binarySearch(indexes, limit);
+                i       = i < 0 ? -i - 2 : i - 1;
+                nearest = i < 0 ? -1 : indexes[i];
+            }
+
+            // Any tags after that could still match the event's message.
+            if (this.haveMessageRegexes) {
+                for (int i = limit - 1; i > nearest; i--) {
+                    Tag tag = this.tags.get(i);
+                    if (tag.isMessageMatch(event)) return tag;
+                }
+            }
+
+            return nearest == -1 ? null : this.tags.get(nearest);
+        }
+
+        /**
+         * @return The indexes of the {@link #tags} whose check name regex matches the {@code sourceName}, or whose
+         *         module ID regex matches the {@code moduleId}, in ascending order
+         */
+        private int[]
+        getMatchingMagicLines(String sourceName, String moduleId) {
+
+            Map<String, int[]> m = this.matchingMagicLines.get(sourceName);
+            if (m == null) this.matchingMagicLines.put(sourceName, (m = new HashMap<String, int[]>()));
+
+            int[] result = m.get(moduleId);
+            if (result == null) {
+
+                int[] tmp = new int[this.tags.size()];
+                int   n   = 0;
+                for (int i = 0; i < tmp.length; i++) {
+                    if (this.tags.get(i).isSourceMatch(sourceName, moduleId)) tmp[n++] = i;
+                }
+
+                m.put(moduleId, (result = Arrays.copyOf(tmp, n)));
+            }
+
+            return result;
         }
     }
 
     /**
-     * Tags a string if it matches the format for turning
-     * checkstyle reporting on or the format for turning reporting off.
-     *
-     * @param text the string to tag.
-     * @param line the line number of {@code text}.
+     * Collects the {@link #offRegex} and the {@link #onRegex} for the {@link SuppressionRegistry}.
      */
-    private void
-    checkMagicness(String text, int line) {
+    @Override protected void
+    finishLocalSetup() {
+
+        List<Pattern> patterns = new ArrayList<Pattern>();
+
+        this.offRegexId = -1;
         if (this.offRegex != null) {
-            final Matcher offMatcher = this.offRegex.matcher(text);
-            if (offMatcher.find()) {
-                this.addTag(offMatcher.group(0), line, false);
-            }
+            this.offRegexId = patterns.size();
+            patterns.add(this.offRegex);
         }
+
+        this.onRegexId = -1;
         if (this.onRegex != null) {
-            final Matcher onMatcher = this.onRegex.matcher(text);
-            if (onMatcher.find()) {
-                this.addTag(onMatcher.group(0), line, true);
-            }
+            this.onRegexId = patterns.size();
+            patterns.add(this.onRegex);
         }
-    }
 
-    /**
-     * Adds a <code>Tag</code> to the list of all tags.
-     *
-     * @param text the text of the tag.
-     * @param line the line number of the tag.
-     * @param on   {@code true} if the tag turns checkstyle reporting on.
-     */
-    private void
-    addTag(String text, int line, boolean on) {
-        final Tag tag = new Tag(line, text, on);
-        this.magicLines.add(tag);
+        this.patterns   = patterns.toArray(new Pattern[patterns.size()]);
+        this.registered = true;
     }
-
-    @Override protected void
-    finishLocalSetup() {}
 }
@@ -26,9 +26,11 @@
 
 package de.unkrig.cscontrib.filters;
 
-import java.io.File;
-import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -39,6 +41,7 @@ import com.puppycrawl.tools.checkstyle.api.FileText;
 import com.puppycrawl.tools.checkstyle.api.Filter;
 
 import de.unkrig.commons.nullanalysis.NotNullByDefault;
+import de.unkrig.cscontrib.filters.SuppressionRegistry.Hits;
 import de.unkrig.csdoclet.annotation.RegexRuleProperty;
 import de.unkrig.csdoclet.annotation.Rule;
 import de.unkrig.csdoclet.annotation.StringRuleProperty;
@@ -71,6 +74,18 @@ class SuppressionRegex extends AutomaticBean implements Filter {
     /** The number of lines below for which the filter is also effective. */
     private String influence = "0";
 
+    /** The {@link #lineRegex}, as passed to the {@link SuppressionRegistry}. */
+    private Pattern[] patterns;
+    private boolean   registered;
+
+    /** Creates the {@link SuppressionIndex} of a file. */
+    private final SuppressionRegistry.ViewFactory
+    suppressionIndexFactory = new SuppressionRegistry.ViewFactory() {
+
+        @Override public Object
+        create(Hits[] hits) { return new SuppressionIndex(SuppressionRegex.this.index(hits[0])); }
+    };
+
     /**
      * References the current FileContents for this filter. Since this is a weak reference to the FileContents, the
      * FileContents can be reclaimed as soon as the strong references in TreeWalker and FileContentsHolder are
@@ -94,6 +109,7 @@ class SuppressionRegex extends AutomaticBean implements Filter {
         } catch (final PatternSyntaxException e) {
             throw new IllegalArgumentException("unable to parse " + lineRegex, e);
         }
+        this.registered = false;
     }
 
     /**
@@ -162,83 +178,153 @@ class SuppressionRegex extends AutomaticBean implements Filter {
         this.fileContentsReference = new WeakReference<FileText>(fileContents);
     }
 
-    private static FileText
-    getFileText(String fileName) {
-
-       File file = new File(fileName);
-       if (file.isDirectory()) return null;
-
-      try {
-         return new FileText(file, "UTF-8");
-      } catch (IOException var4) {
-         throw new IllegalStateException("Cannot read source file: " + fileName, var4);
-      }
-    }
-
     @Override public boolean
     accept(AuditEvent event) {
 
         if (event.getLocalizedMessage() == null) return true;        // A special event.
 
-        // Lazy update. If the first event for the current file, update file
-        // contents and tag suppressions
-        FileText currentContents = SuppressionRegex.getFileText(event.getFileName());
-
-        if (currentContents == null) {
+        // Lazy update. If the first event for the current file (or the file was modified since it was indexed), then
+        // the registry scans the file, and we index its suppressions.
+        if (!this.registered) this.finishLocalSetup();
+        SuppressionRegistry registry = SuppressionRegistry.forCurrentThread();
+        SuppressionIndex    si       = (SuppressionIndex) registry.getView(
+            event.getFileName(),
+            this.suppressionIndexFactory,
+            this.patterns
+        );
+        if (si == null) {
             // we have no contents, so we can not filter.
             // TODO: perhaps we should notify user somehow?
             return true;
         }
-        if (this.getFileContents() != currentContents) {
-            this.setFileContents(currentContents);
-        }
-
-        for (int lineNumber = event.getLine(); lineNumber >= 1 && lineNumber >= event.getLine() - 100; lineNumber--) {
-            String line = currentContents.get(lineNumber - 1);
-            Matcher m = this.lineRegex.matcher(line);
+        FileText fileText = registry.getFileText();
+        if (this.getFileContents() != fileText) this.setFileContents(fileText);
 
-            if (m.find()) {
+        // Iterate over the suppressions that precede the event line (in descending order), until none of them can
+        // reach the event line.
+        int eventLine = event.getLine();
+        int i         = Arrays.binarySearch(si.lineNumbers, eventLine);
+        for (i = i < 0 ? -i - 2 : i; i >= 0 && si.maxLastLineNumbers[i] >= eventLine; i--) {
 
-                // "this.influence" can be an integer string (e.g. "11"), or comprise replacement variables (e.g.
-                // "$2").
-                int inf;
-                try {
-                    inf = Integer.parseInt(expandSubsequenceReferences(this.influence, m));
-                } catch (NumberFormatException nfe) {
-                    inf = 0;
-                }
+            // Check that the event line is in the "influence range" of the suppression line.
+            if (eventLine > si.lastLineNumbers[i]) continue;
 
-                // Check that the event line is in the "influence range" of the suppression line.
-                if (event.getLine() > lineNumber + inf) continue;
+            MatchResult m = si.matches[i];
 
-                if (this.checkNameRegex != null && matcher(this.checkNameRegex, m, event.getSourceName()).find()) {
-                    return false;
-                }
+            if (this.checkNameRegex != null && matcher(this.checkNameRegex, m, event.getSourceName()).find()) {
+                return false;
+            }
 
-                if (this.messageRegex != null && matcher(this.messageRegex, m, event.getMessage()).find()) {
-                    return false;
-                }
+            if (this.messageRegex != null && matcher(this.messageRegex, m, event.getMessage()).find()) {
+                return false;
+            }
 
-                if (this.moduleIdRegex != null && matcher(this.moduleIdRegex, m, event.getModuleId()).find()) {
-                    return false;
-                }
+            if (this.moduleIdRegex != null && matcher(this.moduleIdRegex, m, event.getModuleId()).find()) {
+                return false;
             }
         }
 
         return true;
     }
 
+    /**
+     * Computes the "influence ranges" of the lines that match the {@link #lineRegex}.
+     *
+     * @return The suppressions, in ascending line number order
+     */
+    private List<Suppression>
+    index(Hits lines) {
+
+        List<Suppression> result = new ArrayList<Suppression>();
+        for (int i = 0; i < lines.lineNumbers.length; i++) {
+            int         lineNumber = lines.lineNumbers[i] + 1;
+            MatchResult m          = lines.matches[i];
+
+            // "this.influence" can be an integer string (e.g. "11"), or comprise replacement variables (e.g.
+            // "$2").
+            int inf;
+            try {
+                inf = Integer.parseInt(expandSubsequenceReferences(this.influence, m));
+            } catch (NumberFormatException nfe) {
+                inf = 0;
+            }
+
+            // Notice: Suppression lines are effective for at most 100 lines.
+            if (inf < 0) continue;
+            if (inf > 100) inf = 100;
+
+            result.add(new Suppression(lineNumber, lineNumber + inf, m));
+        }
+
+        return result;
+    }
+
+    /**
+     * A line that matches the {@link SuppressionRegex#lineRegex}.
+     */
+    private static
+    class Suppression {
+
+        final int         lineNumber;
+        final int         lastLineNumber;
+        final MatchResult match;
+
+        Suppression(int lineNumber, int lastLineNumber, MatchResult match) {
+            this.lineNumber     = lineNumber;
+            this.lastLineNumber = lastLineNumber;
+            this.match          = match;
+        }
+    }
+
+    /**
+     * The {@link Suppression}s of one file, organized such that the suppressions that influence a given line can be
+     * found in logarithmic time.
+     */
+    private static
+    class SuppressionIndex {
+
+        /** The line numbers of the suppressions, in ascending order. */
+        final int[] lineNumbers;
+
+        /** The last line that each suppression influences. */
+        final int[] lastLineNumbers;
+
+        /** The maximum of the {@link #lastLineNumbers} of each suppression and all preceding suppressions. */
+        final int[] maxLastLineNumbers;
+
+        final MatchResult[] matches;
+
+        SuppressionIndex(List<Suppression> suppressions) {
+
+            int n = suppressions.size();
+            this.lineNumbers        = new int[n];
+            this.lastLineNumbers    = new int[n];
+            this.maxLastLineNumbers = new int[n];
+            this.matches            = new MatchResult[n];
+
+            int maxLastLineNumber = 0;
+            for (int i = 0; i < n; i++) {
+                Suppression s = suppressions.get(i);
+
+                this.lineNumbers[i]        = s.lineNumber;
+                this.lastLineNumbers[i]    = s.lastLineNumber;
+                this.maxLastLineNumbers[i] = (maxLastLineNumber = Math.max(maxLastLineNumber, s.lastLineNumber));
+                this.matches[i]            = s.match;
+            }
+        }
+    }
+
     /**
      * Same as {pattern.matcher(subject)}, except that iff the <var>pattern</var> contains  captured subsequence
      * references, then these are first expanded from the <var>capturedSubsequences</var> and then the
-     * <var>pattern</var> is re-compiled before it is applied.
+     * <var>pattern</var> is re-compiled (or taken from the {@link PatternCache}) before it is applied.
      */
     private Matcher
-    matcher(Pattern pattern, Matcher capturedSubsequences, String subject) {
+    matcher(Pattern pattern, MatchResult capturedSubsequences, String subject) {
         String regex = pattern.pattern();
         String regex2 = expandSubsequenceReferences(regex, capturedSubsequences);
         if (!regex2.equals(regex)) {
-            pattern = Pattern.compile(regex2);
+            pattern = PatternCache.compile(regex2);
         }
         Matcher m2 = pattern.matcher(subject);
         return m2;
@@ -253,7 +339,7 @@ class SuppressionRegex extends AutomaticBean implements Filter {
      * (including zero backslashes).
      */
     private static String
-    expandSubsequenceReferences(String subject, Matcher capturedSubsequences) {
+    expandSubsequenceReferences(String subject, MatchResult capturedSubsequences) {
 
         int state = 0;
         for (int i = 0; i < subject.length(); i++) {
@@ -291,6 +377,12 @@ class SuppressionRegex extends AutomaticBean implements Filter {
         return subject;
     }
 
+    /**
+     * Prepares the {@link #lineRegex} for the {@link SuppressionRegistry}.
+     */
     @Override protected void
-    finishLocalSetup() {}
+    finishLocalSetup() {
+        this.patterns   = new Pattern[] { this.lineRegex };
+        this.registered = true;
+    }
 }
@@ -0,0 +1,525 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.unkrig.cscontrib.filters;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * Finds the "magic lines" of the current file for all filter instances in one single pass, and holds the
+ * suppressions that the filter instances derive from them.
+ * <p>
+ *   Each filter instance passes its line patterns with each request. The first filter instance that needs the magic
+ *   lines of a file triggers the scan of the file for the patterns of <em>all</em> filter instances that use the
+ *   registry. Then each filter instance derives its "view" from the scan result (once per file), e.g. a list of
+ *   suppression ranges.
+ * </p>
+ * <p>
+ *   Because most lines are no magic lines, each line is first checked for the literal substrings that the patterns
+ *   require (e.g. "{@code CHECKSTYLE}"), and only the candidate lines are matched against the patterns.
+ * </p>
+ * <p>
+ *   Each thread has its own registry, so that concurrent audits (e.g. two {@code Checker}s in one JVM) do not evict
+ *   each other's scan results. A registry references its filter instances only weakly, so the patterns of filter
+ *   instances that are no longer configured are dropped. It holds the scan result and the views of only one file,
+ *   but not the text of that file.
+ * </p>
+ */
+final
+class SuppressionRegistry {
+
+    private SuppressionRegistry() {}
+
+    /**
+     * Derives the suppressions of one filter instance from the magic lines of a file.
+     */
+    interface ViewFactory {
+
+        /**
+         * @param hits The hits of the patterns that the filter instance passed to {@link
+         *             SuppressionRegistry#getView(FileContents, ViewFactory, Pattern[])} resp. {@link
+         *             SuppressionRegistry#getView(String, ViewFactory, Pattern[])}, in the same order
+         */
+        Object create(Hits[] hits);
+    }
+
+    /**
+     * The lines where one pattern was found.
+     */
+    public static final
+    class Hits {
+
+        /** The numbers (counting from zero) of the lines where the pattern was found, in ascending order. */
+        public final int[] lineNumbers;
+
+        /** The first match of the pattern in each of these lines. */
+        public final MatchResult[] matches;
+
+        Hits(int[] lineNumbers, MatchResult[] matches) {
+            this.lineNumbers = lineNumbers;
+            this.matches     = matches;
+        }
+    }
+
+    private static final ThreadLocal<SuppressionRegistry>
+    REGISTRIES = new ThreadLocal<SuppressionRegistry>() {
+
+        @Override protected SuppressionRegistry
+        initialValue() { return new SuppressionRegistry(); }
+    };
+
+    /**
+     * @return The registry of the current thread
+     */
+    public static SuppressionRegistry
+    forCurrentThread() { return SuppressionRegistry.REGISTRIES.get(); }
+
+    /**
+     * The patterns of each filter instance, keyed by its {@link ViewFactory}. The keys are weak, so that the patterns
+     * of filter instances that are no longer used are dropped.
+     */
+    private final Map<ViewFactory, Registration>
+    registrations = new WeakHashMap<ViewFactory, Registration>();
+
+    /** The scanner for the patterns of all {@link #registrations}; {@code null} iff a registration was added. */
+    @Nullable private Scanner scanner;
+
+    /** The file that was filtered most recently in this thread. */
+    @Nullable private Entry current;
+
+    private static final
+    class Registration {
+
+        final Pattern[] patterns;
+
+        /** The index of each of the {@link #patterns} within the patterns of the current {@link Scanner}. */
+        int[] indexes = new int[0];
+
+        Registration(Pattern[] patterns) { this.patterns = patterns; }
+    }
+
+    private static final
+    class Entry {
+
+        final String fileName;
+
+        /** The time stamp and the size of the file when it was scanned. */
+        final long lastModified, length;
+
+        /** The {@link FileContents} that were scanned; references {@code null} iff the file was read. */
+        final WeakReference<FileContents> fileContents;
+
+        /** The text that was scanned. */
+        final WeakReference<FileText> fileText;
+
+        /** The scanner that produced the {@link #hits}. */
+        final Scanner scanner;
+
+        /** The hits of the patterns of the {@link #scanner}. */
+        final Hits[] hits;
+
+        /** The views of the filter instances, keyed by their {@link ViewFactory}. */
+        final Map<ViewFactory, Object> views = new IdentityHashMap<ViewFactory, Object>();
+
+        Entry(
+            String                 fileName,
+            File                   file,
+            @Nullable FileContents fileContents,
+            FileText               fileText,
+            Scanner                scanner,
+            Hits[]                 hits
+        ) {
+            this.fileName     = fileName;
+            this.lastModified = file.lastModified();
+            this.length       = file.length();
+            this.fileContents = new WeakReference<FileContents>(fileContents);
+            this.fileText     = new WeakReference<FileText>(fileText);
+            this.scanner      = scanner;
+            this.hits         = hits;
+        }
+
+        Object
+        getView(ViewFactory viewFactory, Registration registration) {
+
+            Object result = this.views.get(viewFactory);
+            if (result == null) {
+                int[]  indexes = registration.indexes;
+                Hits[] hits    = new Hits[indexes.length];
+                for (int i = 0; i < indexes.length; i++) hits[i] = this.hits[indexes[i]];
+
+                this.views.put(viewFactory, (result = viewFactory.create(hits)));
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Returns the view of the given {@link FileContents}; scans the {@code fileContents} and creates the view only iff
+     * necessary.
+     *
+     * @param patterns The line patterns of the filter instance; should be the same array on each invocation
+     */
+    public Object
+    getView(FileContents fileContents, ViewFactory viewFactory, Pattern[] patterns) {
+
+        Registration registration = this.register(viewFactory, patterns);
+        Scanner      scanner      = this.getScanner();
+
+        Entry e = this.current;
+        if (e == null || e.scanner != scanner || e.fileContents.get() != fileContents) {
+
+            // Notice: "FileContents.getLines()" returns a COPY of the lines array, so call it only once.
+            String fileName = fileContents.getFileName();
+            this.current = (e = new Entry(
+                fileName,
+                new File(fileName),
+                fileContents,
+                fileContents.getText(),
+                scanner,
+                scanner.scan(fileContents.getLines())
+            ));
+        }
+
+        return e.getView(viewFactory, registration);
+    }
+
+    /**
+     * Returns the view of the named file; reads and scans the file (UTF-8-encoded) and creates the view only iff
+     * necessary. The file is re-scanned iff it was modified since the last scan.
+     *
+     * @param patterns The line patterns of the filter instance; should be the same array on each invocation
+     * @return         {@code null} iff the file is a directory
+     */
+    @Nullable public Object
+    getView(String fileName, ViewFactory viewFactory, Pattern[] patterns) {
+
+        Registration registration = this.register(viewFactory, patterns);
+        Scanner      scanner      = this.getScanner();
+
+        File  file = new File(fileName);
+        Entry e    = this.current;
+        if (
+            e == null
+            || e.scanner != scanner
+            || !fileName.equals(e.fileName)
+            || file.lastModified() != e.lastModified
+            || file.length() != e.length
+        ) {
+            if (file.isDirectory()) return null;
+
+            FileText fileText;
+            try {
+                fileText = new FileText(file, "UTF-8");
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Cannot read source file: " + fileName, ioe);
+            }
+
+            this.current = (e = new Entry(
+                fileName,
+                file,
+                null,
+                fileText,
+                scanner,
+                scanner.scan(fileText.toLinesArray())
+            ));
+        }
+
+        return e.getView(viewFactory, registration);
+    }
+
+    /**
+     * @return The text of the file that was filtered most recently in this thread, or {@code null} iff it was
+     *         garbage-collected
+     */
+    @Nullable public FileText
+    getFileText() {
+        Entry e = this.current;
+        return e == null ? null : e.fileText.get();
+    }
+
+    private Registration
+    register(ViewFactory viewFactory, Pattern[] patterns) {
+
+        Registration result = this.registrations.get(viewFactory);
+        if (result == null || !Arrays.equals(result.patterns, patterns)) {
+            this.registrations.put(viewFactory, (result = new Registration(patterns)));
+
+            // The current scanner lacks the new patterns.
+            this.scanner = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return A scanner for the patterns of all {@link #registrations}
+     */
+    private Scanner
+    getScanner() {
+
+        // Notice: "WeakHashMap.size()" also drops the registrations of filter instances that were garbage-collected.
+        Scanner result = this.scanner;
+        if (result != null && result.registrationCount == this.registrations.size()) return result;
+
+        List<Pattern> patterns       = new ArrayList<Pattern>();
+        List<String>  literals       = new ArrayList<String>();
+        List<Integer> literalIndexes = new ArrayList<Integer>();
+        for (Registration registration : this.registrations.values()) {
+
+            registration.indexes = new int[registration.patterns.length];
+            for (int i = 0; i < registration.patterns.length; i++) {
+                Pattern pattern = registration.patterns[i];
+
+                // Registering the same regex more than once is harmless.
+                int index = -1;
+                for (int j = 0; j < patterns.size(); j++) {
+                    Pattern p = patterns.get(j);
+                    if (p.pattern().equals(pattern.pattern()) && p.flags() == pattern.flags()) {
+                        index = j;
+                        break;
+                    }
+                }
+
+                if (index == -1) {
+                    String literal = (
+                        pattern.flags() == 0
+                        ? SuppressionRegistry.requiredLiteral(pattern.pattern())
+                        : null
+                    );
+                    int literalIndex;
+                    if (literal == null) {
+                        literalIndex = -1;
+                    } else {
+                        literalIndex = literals.indexOf(literal);
+                        if (literalIndex == -1) {
+                            literalIndex = literals.size();
+                            literals.add(literal);
+                        }
+                    }
+
+                    index = patterns.size();
+                    patterns.add(pattern);
+                    literalIndexes.add(literalIndex);
+                }
+
+                registration.indexes[i] = index;
+            }
+        }
+
+        return (this.scanner = new Scanner(patterns, literals, literalIndexes, this.registrations.size()));
+    }
+
+    /**
+     * Finds the first match of each of a set of patterns in each line of a file.
+     */
+    private static final
+    class Scanner {
+
+        private final Pattern[] patterns;
+
+        /** The distinct literals that the {@link #patterns} require. */
+        private final String[] literals;
+
+        /** For each of the {@link #patterns}, the index of its required literal in {@link #literals}, or -1. */
+        private final int[] literalIndexes;
+
+        /** The number of registrations that this scanner was created for. */
+        final int registrationCount;
+
+        Scanner(List<Pattern> patterns, List<String> literals, List<Integer> literalIndexes, int registrationCount) {
+
+            this.patterns          = patterns.toArray(new Pattern[patterns.size()]);
+            this.literals          = literals.toArray(new String[literals.size()]);
+            this.literalIndexes    = new int[literalIndexes.size()];
+            this.registrationCount = registrationCount;
+
+            for (int i = 0; i < this.literalIndexes.length; i++) this.literalIndexes[i] = literalIndexes.get(i);
+        }
+
+        /**
+         * @return The hits of each of the {@link #patterns}
+         */
+        Hits[]
+        scan(String[] lines) {
+
+            int       patternCount   = this.patterns.length;
+            Matcher[] matchers       = new Matcher[patternCount];
+            int[]     literalIndexes = this.literalIndexes;
+            for (int i = 0; i < patternCount; i++) matchers[i] = this.patterns[i].matcher("");
+
+            String[]  literals       = this.literals;
+            boolean[] literalPresent = new boolean[literals.length];
+
+            List<List<Integer>>     lineNumbers = new ArrayList<List<Integer>>();
+            List<List<MatchResult>> matches     = new ArrayList<List<MatchResult>>();
+            for (int i = 0; i < patternCount; i++) {
+                lineNumbers.add(new ArrayList<Integer>());
+                matches.add(new ArrayList<MatchResult>());
+            }
+
+            for (int lineNo = 0; lineNo < lines.length; lineNo++) {
+                String line = lines[lineNo];
+
+                // Check for each literal only once, although multiple patterns may require it.
+                boolean anyLiteralPresent = false;
+                for (int i = 0; i < literals.length; i++) {
+                    anyLiteralPresent |= (literalPresent[i] = line.indexOf(literals[i]) != -1);
+                }
+
+                for (int i = 0; i < patternCount; i++) {
+
+                    int li = literalIndexes[i];
+                    if (li != -1 && (!anyLiteralPresent || !literalPresent[li])) continue;
+
+                    Matcher m = matchers[i].reset(line);
+                    if (m.find()) {
+                        lineNumbers.get(i).add(lineNo);
+                        matches.get(i).add(m.toMatchResult());
+                    }
+                }
+            }
+
+            Hits[] result = new Hits[patternCount];
+            for (int i = 0; i < patternCount; i++) {
+                List<Integer> lns = lineNumbers.get(i);
+
+                int[] lna = new int[lns.size()];
+                for (int j = 0; j < lna.length; j++) lna[j] = lns.get(j);
+
+                List<MatchResult> ms = matches.get(i);
+                result[i] = new Hits(lna, ms.toArray(new MatchResult[ms.size()]));
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Determines a string that appears in every subject that the {@code regex} matches. The analysis is conservative,
+     * i.e. it gives up on all constructs that it does not fully understand (alternatives, inline flags, quotations,
+     * ...).
+     *
+     * @return The longest literal that the {@code regex} requires, or {@code null}
+     */
+    @Nullable static String
+    requiredLiteral(String regex) {
+
+        String        longest = "";
+        StringBuilder run     = new StringBuilder();
+        int           depth   = 0;
+
+        for (int i = 0, n = regex.length(); i < n;) {
+            char c = regex.charAt(i++);
+
+            // A quantifier makes the preceding character optional (except "+"), and ends the literal run.
+            if (c == '?' || c == '*' || c == '{' || c == '+') {
+                if (c != '+' && run.length() > 0) run.setLength(run.length() - 1);
+                if (run.length() > longest.length()) longest = run.toString();
+                run.setLength(0);
+
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    if (end == -1) return null;
+                    i = end + 1;
+                }
+
+                // Reluctant and possessive quantifiers.
+                if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) i++;
+                continue;
+            }
+
+            // Literal characters extend the run.
+            if (Character.isLetterOrDigit(c) || " !\"#%&',-/:;<=>@_`~".indexOf(c) != -1) {
+                if (depth == 0) run.append(c);
+                continue;
+            }
+
+            if (c == '\\') {
+                if (i == n) return null;
+                char c2 = regex.charAt(i++);
+
+                // Give up on escapes that are followed by more characters, e.g. "\x41", "\p{Lu}", "\Q...\E".
+                if ("0123456789cEkNpPQux".indexOf(c2) != -1) return null;
+
+                // Escaped punctuation is literal; "\d", "\b" etc. are not.
+                if (!Character.isLetterOrDigit(c2)) {
+                    if (depth == 0) run.append(c2);
+                    continue;
+                }
+            } else
+            if (c == '[') {
+
+                // Skip the character class, which may contain nested classes and escapes.
+                for (int classDepth = 1; classDepth > 0;) {
+                    if (i == n) return null;
+                    char c2 = regex.charAt(i++);
+                    if (c2 == '\\') {
+                        i++;
+                    } else
+                    if (c2 == '[') {
+                        classDepth++;
+                    } else
+                    if (c2 == ']') {
+                        classDepth--;
+                    }
+                }
+            } else
+            if (c == '(') {
+                if (i < n && regex.charAt(i) == '?') return null; // Inline flags, lookaround, ...
+                depth++;
+            } else
+            if (c == ')') {
+                depth--;
+            } else
+            if (c == '|') {
+                if (depth == 0) return null;
+            }
+
+            // Anything else ends the literal run.
+            if (run.length() > longest.length()) longest = run.toString();
+            run.setLength(0);
+        }
+        if (run.length() > longest.length()) longest = run.toString();
+
+        return longest.length() == 0 ? null : longest;
+    }
+}
@@ -28,6 +28,12 @@ package de.unkrig.cscontrib.util;
 
 import static de.unkrig.cscontrib.util.JavaElement.*;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 
 import de.unkrig.commons.nullanalysis.Nullable;
@@ -43,6 +49,99 @@ class AstUtil {
     private
     AstUtil() {}
 
+    /**
+     * A predicate on the types of a node, its parent, grandparent, great-grandparent and previous uncle (the previous
+     * sibling of its parent), which is evaluated with one single mask-and-compare on the node's {@link
+     * FlatAst#getFingerprint(int) fingerprint}. This is much faster than the equivalent {@link
+     * #parentTypeIs(DetailAST, LocalTokenType)}, {@link #grandParentTypeIs(DetailAST, LocalTokenType...)}, ... calls.
+     * <p>
+     *   Example:
+     * </p>
+     * <pre>
+     * private static final AncestorPattern
+     * ASSIGNMENT_STATEMENT = AstUtil.ANY_NODE.parent(LocalTokenType.EXPR).grandParent(LocalTokenType.SLIST);
+     *
+     * ...
+     *
+     * if (InnerAssignment.ASSIGNMENT_STATEMENT.matches(flatAst, node)) ...
+     * </pre>
+     */
+    public static final
+    class AncestorPattern {
+
+        private final long mask, value;
+
+        /**
+         * A value bit outside of all fingerprint slots. Fingerprints never have this bit set, so a pattern with this
+         * bit in its value never matches.
+         */
+        private static final long NEVER = 1L << 63;
+
+        AncestorPattern(long mask, long value) {
+            this.mask  = mask;
+            this.value = value;
+        }
+
+        /** @return A pattern that additionally requires that the node has the given type */
+        public AncestorPattern
+        type(LocalTokenType type) { return this.with(FlatAst.FINGERPRINT_SELF, type); }
+
+        /** @return A pattern that additionally requires that the node's parent has the given type */
+        public AncestorPattern
+        parent(LocalTokenType type) { return this.with(FlatAst.FINGERPRINT_PARENT, type); }
+
+        /** @return A pattern that additionally requires that the node's grandparent has the given type */
+        public AncestorPattern
+        grandParent(LocalTokenType type) { return this.with(FlatAst.FINGERPRINT_GRANDPARENT, type); }
+
+        /** @return A pattern that additionally requires that the node's great-grandparent has the given type */
+        public AncestorPattern
+        grandGrandParent(LocalTokenType type) { return this.with(FlatAst.FINGERPRINT_GREAT_GRANDPARENT, type); }
+
+        /**
+         * @return A pattern that additionally requires that the previous sibling of the node's parent has the given
+         *         type
+         */
+        public AncestorPattern
+        previousUncle(LocalTokenType type) { return this.with(FlatAst.FINGERPRINT_PREVIOUS_UNCLE, type); }
+
+        private AncestorPattern
+        with(int slot, LocalTokenType type) {
+
+            long slotMask = ((1L << FlatAst.FINGERPRINT_SLOT_BITS) - 1) << (slot * FlatAst.FINGERPRINT_SLOT_BITS);
+            assert (this.mask & slotMask) == 0 : "Slot " + slot + " is already constrained";
+
+            // The running CS version may not have the token type (e.g. RECORD_DEF before CS 8.35); then no node can
+            // match. (Encoding it as slot value 0 would match "no such node" instead.)
+            int tokenType = type.delocalize();
+            if (tokenType == -1) return new AncestorPattern(this.mask | slotMask, this.value | AncestorPattern.NEVER);
+
+            return new AncestorPattern(this.mask | slotMask, this.value | FlatAst.fingerprintSlot(slot, tokenType));
+        }
+
+        /** @return Whether a node with the given {@link FlatAst#getFingerprint(int) fingerprint} matches */
+        public boolean
+        matches(long fingerprint) { return (fingerprint & this.mask) == this.value; }
+
+        /** @return Whether the given node matches */
+        public boolean
+        matches(FlatAst flatAst, int node) { return this.matches(flatAst.getFingerprint(node)); }
+
+        /** @return Whether a node with the given {@link FlatAst#getFingerprint(int) fingerprint} matches any */
+        public static boolean
+        matchesAny(long fingerprint, AncestorPattern... patterns) {
+            for (AncestorPattern pattern : patterns) {
+                if (pattern.matches(fingerprint)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The {@link AncestorPattern} that matches any node; the starting point for building patterns.
+     */
+    public static final AncestorPattern ANY_NODE = new AncestorPattern(0, 0);
+
     /**
      * @return Whether the {@code ast}'s grandparent's type is one of {@code types}
      */
@@ -100,244 +199,141 @@ class AstUtil {
      * but in others one {@link DetailAST} can represent one of <i>several</i> {@link JavaElement}s. E.g. the
      * colon can appear in a SWITCH-CASE, a SWITCH-DEFAULT, in an enhanced FOR statement and in a ternary
      * expression ({@code a ? b : c}).
+     * <p>
+     *   Notice that each invocation creates a snapshot of the entire compilation unit; checks that classify many
+     *   nodes should use {@link #toJavaElement(FlatAst, int)} instead.
+     * </p>
      */
     @Nullable public static JavaElement
     toJavaElement(final DetailAST ast) {
 
-        final LocalTokenType type, parentType, grandParentType, previousSiblingType, nextSiblingType, firstChildType;
+        // Find the first top-level node of the compilation unit, and snapshot the compilation unit. Notice: The shared
+        // snapshot ("FlatAst.of()") is not used, because only checks release it (in their "finishTree()" methods).
+        DetailAST rootAst = ast;
+        for (DetailAST a = Cs820.getParent(rootAst); a != null; a = Cs820.getParent(a)) rootAst = a;
+        for (DetailAST a = Cs820.getPreviousSibling(rootAst); a != null; a = Cs820.getPreviousSibling(a)) rootAst = a;
+
+        FlatAst flatAst = FlatAst.uncached(rootAst);
+
+        return AstUtil.toJavaElement(flatAst, flatAst.indexOf(ast));
+    }
+
+    /**
+     * Same as {@link #toJavaElement(DetailAST)}, but operates on a node of a {@link FlatAst}, which is much faster.
+     */
+    @Nullable public static JavaElement
+    toJavaElement(final FlatAst flatAst, final int node) {
+
+        JavaElement result = AstUtil.classify(flatAst, node);
+
+        assert result == null || AstUtil.getTokenTypes(result).contains(flatAst.getLocalType(node)) : (
+            "'"
+            + flatAst.getAst(node)
+            + "' was classified as '"
+            + result
+            + "', but type '"
+            + flatAst.getLocalType(node)
+            + "' is not declared for that element"
+        );
+
+        return result;
+    }
+
+    /**
+     * The inverse of {@link #toJavaElement(FlatAst, int)}: Useful for checks that want to subscribe only to the
+     * tokens that are relevant for a set of Java elements.
+     *
+     * @return The types of the tokens that can be classified as the given {@code javaElement}
+     */
+    public static Set<LocalTokenType>
+    getTokenTypes(JavaElement javaElement) { return AstUtil.CLASSIFICATION.getTokenTypes(javaElement); }
+
+    @Nullable private static JavaElement
+    classify(final FlatAst flatAst, final int node) {
+
+        final LocalTokenType type, parentType, grandParentType;
         {
-            type = LocalTokenType.localize(Cs820.getType(ast));
-            DetailAST parent = Cs820.getParent(ast);
-            if (parent == null) {
+            type = flatAst.getLocalType(node);
+            int parent = flatAst.getParent(node);
+            if (parent == FlatAst.NONE) {
                 parentType      = LocalTokenType.UNKNOWN_TOKEN;
                 grandParentType = LocalTokenType.UNKNOWN_TOKEN;
             } else {
-                parentType = LocalTokenType.localize(Cs820.getType(parent));
-                DetailAST grandparent = Cs820.getParent(parent);
-                grandParentType = grandparent == null ? LocalTokenType.UNKNOWN_TOKEN : LocalTokenType.localize(Cs820.getType(grandparent));
+                parentType = flatAst.getLocalType(parent);
+                int grandparent = flatAst.getParent(parent);
+                grandParentType = (
+                    grandparent == FlatAst.NONE
+                    ? LocalTokenType.UNKNOWN_TOKEN
+                    : flatAst.getLocalType(grandparent)
+                );
             }
+        }
 
-            DetailAST previousSibling = Cs820.getPreviousSibling(ast);
-            previousSiblingType = previousSibling == null ? null : LocalTokenType.localize(Cs820.getType(previousSibling));
-
-            DetailAST nextSibling = Cs820.getNextSibling(ast);
-            nextSiblingType = nextSibling == null ? null : LocalTokenType.localize(Cs820.getType(nextSibling));
-
-            DetailAST firstChild = Cs820.getFirstChild(ast);
-            firstChildType = firstChild == null ? null : LocalTokenType.localize(Cs820.getType(firstChild));
+        // Most tokens can be classified by their type and the types of their parent and grandparent.
+        {
+            JavaElement result = AstUtil.CLASSIFICATION.get(type, parentType, grandParentType);
+            if (result != null) return result;
         }
 
-        // Find out how this token is to be checked.
-        switch (type) {
+        // The remaining tokens require more context.
+        final LocalTokenType previousSiblingType, nextSiblingType, firstChildType;
+        previousSiblingType = flatAst.getLocalTypeOrNull(flatAst.getPreviousSibling(node));
+        nextSiblingType     = flatAst.getLocalTypeOrNull(flatAst.getNextSibling(node));
+        firstChildType      = flatAst.getLocalTypeOrNull(flatAst.getFirstChild(node));
 
-        // Tokens that appear in only one context, and thus map one-to-one to a Java element.
-        case ABSTRACT:           return ABSTRACT;
-        case ARRAY_DECLARATOR:   return L_BRACK__ARRAY_DECL;
-        case BAND:               return AND__EXPR;
-        case BAND_ASSIGN:        return AND_ASSIGN;
-        case BNOT:               return BITWISE_COMPLEMENT;
-        case BOR:                return OR;
-        case BOR_ASSIGN:         return OR_ASSIGN;
-        case BSR:                return UNSIGNED_RIGHT_SHIFT;
-        case BSR_ASSIGN:         return UNSIGNED_RIGHT_SHIFT_ASSIGN;
-        case BXOR:               return XOR;
-        case BXOR_ASSIGN:        return XOR_ASSIGN;
-        case CHAR_LITERAL:       return CHAR_LITERAL;
-        case COMMA:              return COMMA;
-        case CTOR_CALL:          return THIS__CTOR_CALL;
-        case DEC:                return PRE_DECR;
-        case DIV:                return DIVIDE;
-        case DIV_ASSIGN:         return DIVIDE_ASSIGN;
-        case DO_WHILE:           return WHILE__DO;
-        case ELLIPSIS:           return ELLIPSIS;
-        case EMPTY_STAT:         return SEMI__EMPTY_STAT;
-        case ENUM:               return ENUM;
-        case EQUAL:              return EQUAL;
-        case EXTENDS_CLAUSE:     return EXTENDS__TYPE;
-        case FINAL:              return FINAL;
-        case GE:                 return GREATER_EQUAL;
-        case GT:                 return GREATER;
-        case IMPLEMENTS_CLAUSE:  return IMPLEMENTS;
-        case IMPORT:             return IMPORT;
-        case INC:                return PRE_INCR;
-        case INDEX_OP:           return L_BRACK__INDEX;
-        case LABELED_STAT:       return COLON__LABELED_STAT;
-        case LAMBDA:             return L_PAREN__LAMBDA_PARAMS;
-        case LAND:               return CONDITIONAL_AND;
-        case LE:                 return LESS_EQUAL;
-        case LITERAL_ASSERT:     return ASSERT;
-        case LITERAL_BOOLEAN:    return BOOLEAN;
-        case LITERAL_BREAK:      return BREAK;
-        case LITERAL_BYTE:       return BYTE;
-        case LITERAL_CASE:       return CASE;
-        case LITERAL_CATCH:      return CATCH;
-        case LITERAL_CONTINUE:   return CONTINUE;
-        case LITERAL_CHAR:       return CHAR;
-        case LITERAL_DO:         return DO;
-        case LITERAL_DOUBLE:     return DOUBLE;
-        case LITERAL_ELSE:       return ELSE;
-        case LITERAL_FALSE:      return FALSE;
-        case LITERAL_FINALLY:    return FINALLY;
-        case LITERAL_FLOAT:      return FLOAT;
-        case LITERAL_FOR:        return FOR;
-        case LITERAL_IF:         return IF;
-        case LITERAL_INSTANCEOF: return INSTANCEOF;
-        case LITERAL_INT:        return INT;
-        case LITERAL_INTERFACE:  return INTERFACE;
-        case LITERAL_LONG:       return LONG;
-        case LITERAL_NATIVE:     return NATIVE;
-        case LITERAL_NULL:       return NULL;
-        case LITERAL_PRIVATE:    return PRIVATE;
-        case LITERAL_PROTECTED:  return PROTECTED;
-        case LITERAL_PUBLIC:     return PUBLIC;
-        case LITERAL_SHORT:      return SHORT;
-        case LITERAL_SUPER:      return SUPER__EXPR;
-        case LITERAL_SWITCH:     return SWITCH;
-        case LITERAL_THIS:       return THIS__EXPR;
-        case LITERAL_THROW:      return THROW;
-        case LITERAL_THROWS:     return THROWS;
-        case LITERAL_TRANSIENT:  return TRANSIENT;
-        case LITERAL_TRUE:       return TRUE;
-        case LITERAL_TRY:        return TRY;
-        case LITERAL_VOID:       return VOID;
-        case LITERAL_VOLATILE:   return VOLATILE;
-        case LITERAL_WHILE:      return WHILE__WHILE;
-        case LNOT:               return LOGICAL_COMPLEMENT;
-        case LOR:                return CONDITIONAL_OR;
-        case LT:                 return LESS;
-        case METHOD_CALL:        return L_PAREN__METH_INVOCATION;
-        case METHOD_REF:         return METH_REF;
-        case MINUS:              return MINUS__ADDITIVE;
-        case MINUS_ASSIGN:       return MINUS_ASSIGN;
-        case MOD:                return MODULO;
-        case MOD_ASSIGN:         return MODULO_ASSIGN;
-        case NOT_EQUAL:          return NOT_EQUAL;
-        case NUM_DOUBLE:         return DOUBLE_LITERAL;
-        case NUM_FLOAT:          return FLOAT_LITERAL;
-        case NUM_INT:            return INT_LITERAL;
-        case NUM_LONG:           return LONG_LITERAL;
-        case PACKAGE_DEF:        return PACKAGE;
-        case PLUS:               return PLUS__ADDITIVE;
-        case PLUS_ASSIGN:        return PLUS_ASSIGN;
-        case POST_DEC:           return POST_DECR;
-        case POST_INC:           return POST_INCR;
-        case QUESTION:           return QUESTION__TERNARY;
-        case SL:                 return LEFT_SHIFT;
-        case SL_ASSIGN:          return LEFT_SHIFT_ASSIGN;
-        case SR:                 return RIGHT_SHIFT;
-        case SR_ASSIGN:          return RIGHT_SHIFT_ASSIGN;
-        case STAR_ASSIGN:        return MULTIPLY_ASSIGN;
-        case STATIC_IMPORT:      return IMPORT__STATIC_IMPORT;
-        case STRING_LITERAL:     return STRING_LITERAL;
-        case SUPER_CTOR_CALL:    return SUPER__CTOR_CALL;
-        case TYPE_EXTENSION_AND: return AND__TYPE_BOUND;
-        case TYPE_LOWER_BOUNDS:  return SUPER__TYPE_BOUND;
-        case TYPE_UPPER_BOUNDS:  return EXTENDS__TYPE_BOUND;
-        case TYPECAST:           return L_PAREN__CAST;
-        case UNARY_PLUS:         return PLUS__UNARY;
-        case UNARY_MINUS:        return MINUS__UNARY;
-        case WILDCARD_TYPE:      return QUESTION__WILDCARD_TYPE;
+        switch (type) {
 
         case ARRAY_INIT:
             return firstChildType == LocalTokenType.RCURLY ? L_CURLY__EMPTY_ARRAY_INIT : L_CURLY__ARRAY_INIT;
 
-        case ASSIGN:
-            return parentType == LocalTokenType.VARIABLE_DEF ? ASSIGN__VAR_DECL : ASSIGN__ASSIGNMENT;
-
-        case AT:
-            switch (parentType) {
-
-            case ANNOTATION:     return AT__ANNO;
-            case ANNOTATION_DEF: return AT__ANNO_DECL;
-            default:             break;
-            }
-            break;
-
-        case COLON:
-            switch (parentType) {
-
-            case LITERAL_DEFAULT: return COLON__DEFAULT;
-            case LITERAL_CASE:    return COLON__CASE;
-            case FOR_EACH_CLAUSE: return COLON__ENHANCED_FOR;
-            default:              return COLON__TERNARY;
-            }
+        case ANNOTATION_ARRAY_INIT:
+            return (
+                firstChildType == LocalTokenType.RCURLY
+                ? L_CURLY__EMPTY_ANNO_ARRAY_INIT
+                : L_CURLY__ANNO_ARRAY_INIT
+            );
 
-        case STAR: return parentType == LocalTokenType.DOT ? STAR__TYPE_IMPORT_ON_DEMAND : MULTIPLY;
+        case LITERAL_RETURN:
+            return firstChildType == LocalTokenType.SEMI ? RETURN__NO_EXPR : RETURN__EXPR;
 
         case DOT:
-            if (AstUtil.getAncestorWithTypeNot(ast, LocalTokenType.DOT) == LocalTokenType.PACKAGE_DEF) {
+            if (AstUtil.getAncestorWithTypeNot(flatAst, node, LocalTokenType.DOT) == LocalTokenType.PACKAGE_DEF) {
                 return DOT__PACKAGE_DECL;
             }
-            if (AstUtil.getAncestorWithTypeNot(ast, LocalTokenType.DOT) == LocalTokenType.IMPORT) {
+            if (AstUtil.getAncestorWithTypeNot(flatAst, node, LocalTokenType.DOT) == LocalTokenType.IMPORT) {
                 return DOT__IMPORT;
             }
             if (AstUtil.getAncestorWithTypeNot(
-                ast,
+                flatAst,
+                node,
                 LocalTokenType.ARRAY_DECLARATOR,
                 LocalTokenType.DOT
             ) == LocalTokenType.TYPE) return DOT__QUALIFIED_TYPE;
             return DOT__SELECTOR;
 
         case GENERIC_END:
-            switch (parentType) {
-
-            case TYPE_PARAMETERS:
-                switch (grandParentType) {
-
-                case METHOD_DEF:
-                case CTOR_DEF:
-                    return R_ANGLE__METH_DECL_TYPE_PARAMS;
-
-                case CLASS_DEF:
-                case INTERFACE_DEF:
-                    return R_ANGLE__TYPE_PARAMS;
-
-                default:
-                    break;
-                }
-
-            case TYPE_ARGUMENTS:
-                {
-                    LocalTokenType tt = AstUtil.getAncestorWithTypeNot(
-                        ast,
-                        LocalTokenType.TYPE_ARGUMENTS,
-                        LocalTokenType.DOT
-                    );
-                    return (
-                        tt == LocalTokenType.TYPE
-                        || tt == LocalTokenType.LITERAL_NEW
-                        || tt == LocalTokenType.EXTENDS_CLAUSE
-                        || tt == LocalTokenType.IMPLEMENTS_CLAUSE
-                    ) ? R_ANGLE__TYPE_ARGS : R_ANGLE__METH_INVOCATION_TYPE_ARGS;
-                }
-
-            default:
-                break;
+            if (parentType == LocalTokenType.TYPE_PARAMETERS || parentType == LocalTokenType.TYPE_ARGUMENTS) {
+                LocalTokenType tt = AstUtil.getAncestorWithTypeNot(
+                    flatAst,
+                    node,
+                    LocalTokenType.TYPE_ARGUMENTS,
+                    LocalTokenType.DOT
+                );
+                return (
+                    tt == LocalTokenType.TYPE
+                    || tt == LocalTokenType.LITERAL_NEW
+                    || tt == LocalTokenType.EXTENDS_CLAUSE
+                    || tt == LocalTokenType.IMPLEMENTS_CLAUSE
+                ) ? R_ANGLE__TYPE_ARGS : R_ANGLE__METH_INVOCATION_TYPE_ARGS;
             }
             break;
 
         case GENERIC_START:
-            switch (parentType) {
-
-            case TYPE_PARAMETERS:
-                switch (grandParentType) {
-
-                case METHOD_DEF:
-                case CTOR_DEF:
-                    return L_ANGLE__METH_DECL_TYPE_PARAMS;
-
-                case CLASS_DEF:
-                case INTERFACE_DEF:
-                    return L_ANGLE__TYPE_PARAMS;
-
-                default:
-                    break;
-                }
-
-            case TYPE_ARGUMENTS:
+            if (parentType == LocalTokenType.TYPE_PARAMETERS || parentType == LocalTokenType.TYPE_ARGUMENTS) {
                 return (
                     AstUtil.getAncestorWithTypeNot(
-                        ast,
+                        flatAst,
+                        node,
                         LocalTokenType.TYPE_ARGUMENTS,
                         LocalTokenType.DOT
                     ) == LocalTokenType.TYPE
@@ -345,64 +341,46 @@ class AstUtil {
                     || grandParentType == LocalTokenType.EXTENDS_CLAUSE
                     || grandParentType == LocalTokenType.IMPLEMENTS_CLAUSE
                 ) ? L_ANGLE__TYPE_ARGS : L_ANGLE__METH_INVOCATION_TYPE_ARGS;
-
-            default:
-                break;
             }
             break;
 
         case IDENT:
-            switch (parentType) {
-
-            case ANNOTATION:                   return NAME__ANNO;
-            case ANNOTATION_FIELD_DEF:         return NAME__ANNO_ELEM_DECL;
-            case VARIABLE_DEF:                 return NAME__LOCAL_VAR_DECL;
-            case CTOR_DEF:                     return NAME__CTOR_DECL;
-            case METHOD_DEF:                   return NAME__METH_DECL;
-            case ANNOTATION_MEMBER_VALUE_PAIR: return NAME__ANNO_MEMBER;
-
-            case PARAMETER_DEF:
-                return Cs820.getChildCount(Cs820.getPreviousSibling(ast)) == 0 ? NAME__INFERRED_PARAM : NAME__PARAM;
-
-            case CLASS_DEF:
-            case INTERFACE_DEF:
-            case ANNOTATION_DEF:
-            case ENUM_DEF:
-                return NAME__TYPE_DECL;
+            if (parentType == LocalTokenType.PARAMETER_DEF) {
+                return (
+                    flatAst.getFirstChild(flatAst.getPreviousSibling(node)) == FlatAst.NONE
+                    ? NAME__INFERRED_PARAM
+                    : NAME__PARAM
+                );
+            }
 
-            default:
-                if (AstUtil.getAncestorWithTypeNot(ast, LocalTokenType.DOT) == LocalTokenType.PACKAGE_DEF) {
-                    return NAME__PACKAGE_DECL;
-                }
+            if (AstUtil.getAncestorWithTypeNot(flatAst, node, LocalTokenType.DOT) == LocalTokenType.PACKAGE_DEF) {
+                return NAME__PACKAGE_DECL;
+            }
 
-                if (AstUtil.getAncestorWithTypeNot(ast, LocalTokenType.DOT) == LocalTokenType.IMPORT) {
-                    return Cs820.getNextSibling(ast) == null ? NAME__IMPORT_TYPE : NAME__IMPORT_COMPONENT;
-                }
+            if (AstUtil.getAncestorWithTypeNot(flatAst, node, LocalTokenType.DOT) == LocalTokenType.IMPORT) {
+                return flatAst.getNextSibling(node) == FlatAst.NONE ? NAME__IMPORT_TYPE : NAME__IMPORT_COMPONENT;
+            }
 
-                {
-                    LocalTokenType a = AstUtil.getAncestorWithTypeNot(ast, LocalTokenType.ARRAY_DECLARATOR);
-                    if (a == LocalTokenType.TYPE || a == LocalTokenType.LITERAL_NEW) return NAME__SIMPLE_TYPE;
-                }
+            {
+                LocalTokenType a = AstUtil.getAncestorWithTypeNot(flatAst, node, LocalTokenType.ARRAY_DECLARATOR);
+                if (a == LocalTokenType.TYPE || a == LocalTokenType.LITERAL_NEW) return NAME__SIMPLE_TYPE;
+            }
 
-                if (AstUtil.getAncestorWithTypeNot(
-                    ast,
-                    LocalTokenType.ARRAY_DECLARATOR,
-                    LocalTokenType.DOT
-                ) == LocalTokenType.TYPE) return NAME__QUALIFIED_TYPE;
+            if (AstUtil.getAncestorWithTypeNot(
+                flatAst,
+                node,
+                LocalTokenType.ARRAY_DECLARATOR,
+                LocalTokenType.DOT
+            ) == LocalTokenType.TYPE) return NAME__QUALIFIED_TYPE;
 
-                return NAME__AMBIGUOUS;
-            }
+            return NAME__AMBIGUOUS;
 
         case LCURLY:
             switch (parentType) {
 
-            case LITERAL_SWITCH: return L_CURLY__SWITCH;
-
             case OBJBLOCK:
                 switch (grandParentType) {
 
-                case ENUM_CONSTANT_DEF: return L_CURLY__ENUM_CONST;
-
                 case CLASS_DEF:
                 case INTERFACE_DEF:
                 case ANNOTATION_DEF:
@@ -426,97 +404,39 @@ class AstUtil {
             }
             break;
 
-        case ANNOTATION_ARRAY_INIT:
-            return (
-                firstChildType == LocalTokenType.RCURLY
-                ? L_CURLY__EMPTY_ANNO_ARRAY_INIT
-                : L_CURLY__ANNO_ARRAY_INIT
-            );
-
-        case LITERAL_RETURN:
-            return firstChildType == LocalTokenType.SEMI ? RETURN__NO_EXPR : RETURN__EXPR;
-
-        case LITERAL_CLASS:
-            return parentType == LocalTokenType.CLASS_DEF ? CLASS__CLASS_DECL : CLASS__CLASS_LITERAL;
-
-        case LITERAL_DEFAULT:
-            switch (parentType) {
-
-            case ANNOTATION_MEMBER_VALUE_PAIR:
-            case ANNOTATION_FIELD_DEF:
-                return DEFAULT__ANNO_ELEM;
-
-            case MODIFIERS:
-                return DEFAULT__MOD;
-
-            default:
-                return DEFAULT__SWITCH;
-            }
-
-        case LITERAL_NEW:
-            return parentType == LocalTokenType.METHOD_REF ? NEW__METH_REF : NEW;
-
-        case LITERAL_STATIC:
-            return parentType == LocalTokenType.STATIC_IMPORT ? STATIC__STATIC_IMPORT : STATIC__MOD;
-
-        case LITERAL_SYNCHRONIZED:
-            return parentType == LocalTokenType.SLIST ? SYNCHRONIZED__SYNCHRONIZED : SYNCHRONIZED__MOD;
-
-        case STATIC_INIT:
-//            ast.setText("static");
-            return STATIC__STATIC_INIT;
-
         case LPAREN:
-            switch (parentType) {
-
-            case ANNOTATION:           return L_PAREN__ANNO;
-            case ANNOTATION_FIELD_DEF: return L_PAREN__ANNO_ELEM_DECL;
-            case LITERAL_DO:           return L_PAREN__DO_WHILE;
-            case LITERAL_IF:           return L_PAREN__IF;
-            case LITERAL_CATCH:        return L_PAREN__CATCH;
-
-            case SUPER_CTOR_CALL:
-            case LITERAL_NEW:
-                return L_PAREN__METH_INVOCATION;
-
-            case LITERAL_FOR:
-                return Cs820.getFirstChild(Cs820.getNextSibling(ast)) == null ? L_PAREN__FOR_NO_INIT : L_PAREN__FOR;
-
-            case RESOURCE_SPECIFICATION:
-                return L_PAREN__RESOURCES;
-
-            default:
-                if (nextSiblingType == LocalTokenType.PARAMETERS) {
-                    return parentType == LocalTokenType.LAMBDA ? L_PAREN__LAMBDA_PARAMS : L_PAREN__PARAMS;
-                }
-                return L_PAREN__PARENTHESIZED;
+            if (parentType == LocalTokenType.LITERAL_FOR) {
+                return (
+                    flatAst.getFirstChild(flatAst.getNextSibling(node)) == FlatAst.NONE
+                    ? L_PAREN__FOR_NO_INIT
+                    : L_PAREN__FOR
+                );
             }
-
-        case RBRACK:
-            switch (parentType) {
-
-            case ARRAY_DECLARATOR: return R_BRACK__ARRAY_DECL;
-            case INDEX_OP:         return R_BRACK__INDEX;
-            default:               break;
+            if (nextSiblingType == LocalTokenType.PARAMETERS) {
+                return parentType == LocalTokenType.LAMBDA ? L_PAREN__LAMBDA_PARAMS : L_PAREN__PARAMS;
             }
-            break;
+            return L_PAREN__PARENTHESIZED;
 
         case RCURLY:
             switch (parentType) {
 
-            case LITERAL_SWITCH: return R_CURLY__SWITCH;
-
             case ANNOTATION_ARRAY_INIT:
-                return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_ANNO_ARRAY_INIT : R_CURLY__ANNO_ARRAY_INIT;
+                return (
+                    flatAst.getPreviousSibling(node) == FlatAst.NONE
+                    ? R_CURLY__EMPTY_ANNO_ARRAY_INIT
+                    : R_CURLY__ANNO_ARRAY_INIT
+                );
 
             case ARRAY_INIT:
-                return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_ARRAY_INIT : R_CURLY__ARRAY_INIT;
+                return (
+                    flatAst.getPreviousSibling(node) == FlatAst.NONE
+                    ? R_CURLY__EMPTY_ARRAY_INIT
+                    : R_CURLY__ARRAY_INIT
+                );
 
             case OBJBLOCK:
                 switch (grandParentType) {
 
-                case ENUM_CONSTANT_DEF: return R_CURLY__ENUM_CONST_DECL;
-
                 case CLASS_DEF:
                 case INTERFACE_DEF:
                 case ANNOTATION_DEF:
@@ -539,34 +459,26 @@ class AstUtil {
             case SLIST:
                 switch (grandParentType) {
 
-                case INSTANCE_INIT:        return R_CURLY__INSTANCE_INIT;
-                case LABELED_STAT:         return R_CURLY__LABELED_STAT;
-                case LITERAL_DO:           return R_CURLY__DO;
-                case LITERAL_ELSE:         return R_CURLY__IF;
-                case LITERAL_FINALLY:      return R_CURLY__FINALLY;
-                case LITERAL_FOR:          return R_CURLY__FOR;
-                case LITERAL_IF:           return R_CURLY__IF;
-                case LITERAL_SYNCHRONIZED: return R_CURLY__SYNCHRONIZED;
-                case LITERAL_TRY:          return R_CURLY__TRY;
-                case LITERAL_WHILE:        return R_CURLY__WHILE;
-                case SLIST:                return R_CURLY__BLOCK;
-                case STATIC_INIT:          return R_CURLY__STATIC_INIT;
-
                 case CTOR_DEF:
                 case METHOD_DEF:
-                    return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_METH_DECL : R_CURLY__METH_DECL;
+                    return (
+                        flatAst.getPreviousSibling(node) == FlatAst.NONE
+                        ? R_CURLY__EMPTY_METH_DECL
+                        : R_CURLY__METH_DECL
+                    );
 
                 case ARRAY_INIT:
-                    return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_ARRAY_INIT : R_CURLY__ARRAY_INIT;
+                    return (
+                        flatAst.getPreviousSibling(node) == FlatAst.NONE
+                        ? R_CURLY__EMPTY_ARRAY_INIT
+                        : R_CURLY__ARRAY_INIT
+                    );
 
                 case LITERAL_CATCH:
-                    return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_CATCH : R_CURLY__CATCH;
+                    return flatAst.getPreviousSibling(node) == FlatAst.NONE ? R_CURLY__EMPTY_CATCH : R_CURLY__CATCH;
 
                 case LAMBDA:
-                    return Cs820.getPreviousSibling(ast) == null ? R_CURLY__EMPTY_LAMBDA : R_CURLY__LAMBDA;
-                    
-                case SWITCH_RULE:
-                    return R_CURLY__SWITCH;
+                    return flatAst.getPreviousSibling(node) == FlatAst.NONE ? R_CURLY__EMPTY_LAMBDA : R_CURLY__LAMBDA;
 
                 default:
                     break;
@@ -579,97 +491,48 @@ class AstUtil {
             break;
 
         case RPAREN:
-            switch (parentType) {
-
-            case ANNOTATION:           return R_PAREN__ANNO;
-            case ANNOTATION_FIELD_DEF: return R_PAREN__ANNO_ELEM_DECL;
-            case LITERAL_CATCH:        return R_PAREN__CATCH;
-            case LITERAL_DO:           return R_PAREN__DO_WHILE;
-            case LITERAL_IF:           return R_PAREN__IF;
-
-            case CTOR_DEF:
-            case METHOD_DEF:
-            case LAMBDA:
-                return R_PAREN__PARAMS;
-
-            case SUPER_CTOR_CALL:
-            case LITERAL_NEW:
-            case METHOD_CALL:
-                return R_PAREN__METH_INVOCATION;
-
-            case LITERAL_FOR:
-                return Cs820.getFirstChild(Cs820.getPreviousSibling(ast)) == null ? R_PAREN__FOR_NO_UPDATE : R_PAREN__FOR;
-
-            case RESOURCE_SPECIFICATION:
-                return R_PAREN__RESOURCES;
-
-            default:
-                if (previousSiblingType == LocalTokenType.TYPE) return R_PAREN__CAST;
-                return R_PAREN__PARENTHESIZED;
+            if (parentType == LocalTokenType.LITERAL_FOR) {
+                return (
+                    flatAst.getFirstChild(flatAst.getPreviousSibling(node)) == FlatAst.NONE
+                    ? R_PAREN__FOR_NO_UPDATE
+                    : R_PAREN__FOR
+                );
             }
+            if (previousSiblingType == LocalTokenType.TYPE) return R_PAREN__CAST;
+            return R_PAREN__PARENTHESIZED;
 
         case SEMI:
             switch (parentType) {
 
-            case PACKAGE_DEF:          return SEMI__PACKAGE_DECL;
-            case IMPORT:               return SEMI__IMPORT;
-            case STATIC_IMPORT:        return SEMI__STATIC_IMPORT;
-            case METHOD_DEF:           return SEMI__ABSTRACT_METH_DECL;
-            case ANNOTATION_FIELD_DEF: return SEMI__ANNO_ELEM_DECL;
-
             case OBJBLOCK:
                 return previousSiblingType == LocalTokenType.ENUM_CONSTANT_DEF ? SEMI__ENUM_DECL :  SEMI__TYPE_DECL;
 
-            case SLIST:
-            case SUPER_CTOR_CALL:
-            case CTOR_CALL:
-            case LITERAL_DO:
-            case LITERAL_RETURN:
-            case LITERAL_BREAK:
-            case LITERAL_CONTINUE:
-            case LITERAL_IF:
-            case LITERAL_WHILE:
-            case LITERAL_ASSERT:
-            case LITERAL_THROW:
-            case LITERAL_YIELD:
-                return SEMI__STATEMENT;
-
             case LITERAL_FOR:
                 if (nextSiblingType == null) return SEMI__STATEMENT;
                 if (previousSiblingType == LocalTokenType.FOR_INIT) {
-                    return Cs820.getFirstChild(Cs820.getPreviousSibling(ast)) == null ? (
-                    		Cs820.getFirstChild(Cs820.getNextSibling(ast)) == null
+                    return flatAst.getFirstChild(flatAst.getPreviousSibling(node)) == FlatAst.NONE ? (
+                        flatAst.getFirstChild(flatAst.getNextSibling(node)) == FlatAst.NONE
                         ? SEMI__FOR_NO_INIT_NO_CONDITION
                         : SEMI__FOR_NO_INIT_CONDITION
                     ) : (
-                    		Cs820.getFirstChild(Cs820.getNextSibling(ast)) == null
+                        flatAst.getFirstChild(flatAst.getNextSibling(node)) == FlatAst.NONE
                         ? SEMI__FOR_INIT_NO_CONDITION
                         : SEMI__FOR_INIT_CONDITION
                     );
                 }
                 if (previousSiblingType == LocalTokenType.FOR_CONDITION) {
-                    return Cs820.getFirstChild(Cs820.getPreviousSibling(ast)) == null ? (
-                		Cs820.getFirstChild(Cs820.getNextSibling(ast)) == null
+                    return flatAst.getFirstChild(flatAst.getPreviousSibling(node)) == FlatAst.NONE ? (
+                        flatAst.getFirstChild(flatAst.getNextSibling(node)) == FlatAst.NONE
                         ? SEMI__FOR_NO_CONDITION_NO_UPDATE
                         : SEMI__FOR_NO_CONDITION_UPDATE
                     ) : (
-                		Cs820.getFirstChild(Cs820.getNextSibling(ast)) == null
+                        flatAst.getFirstChild(flatAst.getNextSibling(node)) == FlatAst.NONE
                         ? SEMI__FOR_CONDITION_NO_UPDATE
                         : SEMI__FOR_CONDITION_UPDATE
                     );
                 }
                 break;
 
-            case VARIABLE_DEF:
-                if (grandParentType == LocalTokenType.OBJBLOCK) return SEMI__FIELD_DECL;
-                break;
-
-            case RESOURCES:
-                return SEMI__RESOURCES;
-
-            case SWITCH_RULE:
-                return SEMI__SWITCH_RULE;
-
             default:
                 break;
             }
@@ -678,19 +541,6 @@ class AstUtil {
         case SLIST:
             switch (parentType) {
 
-            case STATIC_INIT:          return L_CURLY__STATIC_INIT;
-            case INSTANCE_INIT:        return L_CURLY__INSTANCE_INIT;
-            case LITERAL_IF:           return L_CURLY__IF;
-            case LITERAL_ELSE:         return R_CURLY__ELSE;
-            case LITERAL_DO:           return L_CURLY__DO;
-            case LITERAL_WHILE:        return L_CURLY__WHILE;
-            case LITERAL_FOR:          return L_CURLY__FOR;
-            case LITERAL_TRY:          return L_CURLY__TRY;
-            case LITERAL_FINALLY:      return L_CURLY__FINALLY;
-            case LITERAL_SYNCHRONIZED: return L_CURLY__SYNCHRONIZED;
-            case LABELED_STAT:         return L_CURLY__LABELED_STAT;
-            case SLIST:                return L_CURLY__BLOCK;
-
             case LITERAL_CATCH:
                 return firstChildType == LocalTokenType.RCURLY ? L_CURLY__EMPTY_CATCH : L_CURLY__CATCH;
 
@@ -771,7 +621,7 @@ class AstUtil {
 
         assert false : (
             "'"
-            + ast
+            + flatAst.getAst(node)
             + "' (type '"
             + type
             + "') has unexpected parent type '"
@@ -785,28 +635,473 @@ class AstUtil {
     }
 
     /**
-     * @return The type of the closest ancestor who's type is no the given {@code tokenType}, or -1
+     * Classifies tokens by their type, and the types of their parent and grandparent; see {@link
+     * ClassificationTable}. Tokens for which the table yields no result are classified by {@link
+     * #toJavaElement(FlatAst, int)}.
+     */
+    private static final ClassificationTable CLASSIFICATION = new ClassificationTable();
+    static {
+        ClassificationTable t = AstUtil.CLASSIFICATION;
+
+        // Tokens that appear in only one context, and thus map one-to-one to a Java element.
+        t.put(LocalTokenType.ABSTRACT,           ABSTRACT);
+        t.put(LocalTokenType.ARRAY_DECLARATOR,   L_BRACK__ARRAY_DECL);
+        t.put(LocalTokenType.BAND,               AND__EXPR);
+        t.put(LocalTokenType.BAND_ASSIGN,        AND_ASSIGN);
+        t.put(LocalTokenType.BNOT,               BITWISE_COMPLEMENT);
+        t.put(LocalTokenType.BOR,                OR);
+        t.put(LocalTokenType.BOR_ASSIGN,         OR_ASSIGN);
+        t.put(LocalTokenType.BSR,                UNSIGNED_RIGHT_SHIFT);
+        t.put(LocalTokenType.BSR_ASSIGN,         UNSIGNED_RIGHT_SHIFT_ASSIGN);
+        t.put(LocalTokenType.BXOR,               XOR);
+        t.put(LocalTokenType.BXOR_ASSIGN,        XOR_ASSIGN);
+        t.put(LocalTokenType.CHAR_LITERAL,       CHAR_LITERAL);
+        t.put(LocalTokenType.COMMA,              COMMA);
+        t.put(LocalTokenType.CTOR_CALL,          THIS__CTOR_CALL);
+        t.put(LocalTokenType.DEC,                PRE_DECR);
+        t.put(LocalTokenType.DIV,                DIVIDE);
+        t.put(LocalTokenType.DIV_ASSIGN,         DIVIDE_ASSIGN);
+        t.put(LocalTokenType.DO_WHILE,           WHILE__DO);
+        t.put(LocalTokenType.ELLIPSIS,           ELLIPSIS);
+        t.put(LocalTokenType.EMPTY_STAT,         SEMI__EMPTY_STAT);
+        t.put(LocalTokenType.ENUM,               ENUM);
+        t.put(LocalTokenType.EQUAL,              EQUAL);
+        t.put(LocalTokenType.EXTENDS_CLAUSE,     EXTENDS__TYPE);
+        t.put(LocalTokenType.FINAL,              FINAL);
+        t.put(LocalTokenType.GE,                 GREATER_EQUAL);
+        t.put(LocalTokenType.GT,                 GREATER);
+        t.put(LocalTokenType.IMPLEMENTS_CLAUSE,  IMPLEMENTS);
+        t.put(LocalTokenType.IMPORT,             IMPORT);
+        t.put(LocalTokenType.INC,                PRE_INCR);
+        t.put(LocalTokenType.INDEX_OP,           L_BRACK__INDEX);
+        t.put(LocalTokenType.LABELED_STAT,       COLON__LABELED_STAT);
+        t.put(LocalTokenType.LAMBDA,             L_PAREN__LAMBDA_PARAMS);
+        t.put(LocalTokenType.LAND,               CONDITIONAL_AND);
+        t.put(LocalTokenType.LE,                 LESS_EQUAL);
+        t.put(LocalTokenType.LITERAL_ASSERT,     ASSERT);
+        t.put(LocalTokenType.LITERAL_BOOLEAN,    BOOLEAN);
+        t.put(LocalTokenType.LITERAL_BREAK,      BREAK);
+        t.put(LocalTokenType.LITERAL_BYTE,       BYTE);
+        t.put(LocalTokenType.LITERAL_CASE,       CASE);
+        t.put(LocalTokenType.LITERAL_CATCH,      CATCH);
+        t.put(LocalTokenType.LITERAL_CONTINUE,   CONTINUE);
+        t.put(LocalTokenType.LITERAL_CHAR,       CHAR);
+        t.put(LocalTokenType.LITERAL_DO,         DO);
+        t.put(LocalTokenType.LITERAL_DOUBLE,     DOUBLE);
+        t.put(LocalTokenType.LITERAL_ELSE,       ELSE);
+        t.put(LocalTokenType.LITERAL_FALSE,      FALSE);
+        t.put(LocalTokenType.LITERAL_FINALLY,    FINALLY);
+        t.put(LocalTokenType.LITERAL_FLOAT,      FLOAT);
+        t.put(LocalTokenType.LITERAL_FOR,        FOR);
+        t.put(LocalTokenType.LITERAL_IF,         IF);
+        t.put(LocalTokenType.LITERAL_INSTANCEOF, INSTANCEOF);
+        t.put(LocalTokenType.LITERAL_INT,        INT);
+        t.put(LocalTokenType.LITERAL_INTERFACE,  INTERFACE);
+        t.put(LocalTokenType.LITERAL_LONG,       LONG);
+        t.put(LocalTokenType.LITERAL_NATIVE,     NATIVE);
+        t.put(LocalTokenType.LITERAL_NULL,       NULL);
+        t.put(LocalTokenType.LITERAL_PRIVATE,    PRIVATE);
+        t.put(LocalTokenType.LITERAL_PROTECTED,  PROTECTED);
+        t.put(LocalTokenType.LITERAL_PUBLIC,     PUBLIC);
+        t.put(LocalTokenType.LITERAL_SHORT,      SHORT);
+        t.put(LocalTokenType.LITERAL_SUPER,      SUPER__EXPR);
+        t.put(LocalTokenType.LITERAL_SWITCH,     SWITCH);
+        t.put(LocalTokenType.LITERAL_THIS,       THIS__EXPR);
+        t.put(LocalTokenType.LITERAL_THROW,      THROW);
+        t.put(LocalTokenType.LITERAL_THROWS,     THROWS);
+        t.put(LocalTokenType.LITERAL_TRANSIENT,  TRANSIENT);
+        t.put(LocalTokenType.LITERAL_TRUE,       TRUE);
+        t.put(LocalTokenType.LITERAL_TRY,        TRY);
+        t.put(LocalTokenType.LITERAL_VOID,       VOID);
+        t.put(LocalTokenType.LITERAL_VOLATILE,   VOLATILE);
+        t.put(LocalTokenType.LITERAL_WHILE,      WHILE__WHILE);
+        t.put(LocalTokenType.LNOT,               LOGICAL_COMPLEMENT);
+        t.put(LocalTokenType.LOR,                CONDITIONAL_OR);
+        t.put(LocalTokenType.LT,                 LESS);
+        t.put(LocalTokenType.METHOD_CALL,        L_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.METHOD_REF,         METH_REF);
+        t.put(LocalTokenType.MINUS,              MINUS__ADDITIVE);
+        t.put(LocalTokenType.MINUS_ASSIGN,       MINUS_ASSIGN);
+        t.put(LocalTokenType.MOD,                MODULO);
+        t.put(LocalTokenType.MOD_ASSIGN,         MODULO_ASSIGN);
+        t.put(LocalTokenType.NOT_EQUAL,          NOT_EQUAL);
+        t.put(LocalTokenType.NUM_DOUBLE,         DOUBLE_LITERAL);
+        t.put(LocalTokenType.NUM_FLOAT,          FLOAT_LITERAL);
+        t.put(LocalTokenType.NUM_INT,            INT_LITERAL);
+        t.put(LocalTokenType.NUM_LONG,           LONG_LITERAL);
+        t.put(LocalTokenType.PACKAGE_DEF,        PACKAGE);
+        t.put(LocalTokenType.PLUS,               PLUS__ADDITIVE);
+        t.put(LocalTokenType.PLUS_ASSIGN,        PLUS_ASSIGN);
+        t.put(LocalTokenType.POST_DEC,           POST_DECR);
+        t.put(LocalTokenType.POST_INC,           POST_INCR);
+        t.put(LocalTokenType.QUESTION,           QUESTION__TERNARY);
+        t.put(LocalTokenType.SL,                 LEFT_SHIFT);
+        t.put(LocalTokenType.SL_ASSIGN,          LEFT_SHIFT_ASSIGN);
+        t.put(LocalTokenType.SR,                 RIGHT_SHIFT);
+        t.put(LocalTokenType.SR_ASSIGN,          RIGHT_SHIFT_ASSIGN);
+        t.put(LocalTokenType.STAR_ASSIGN,        MULTIPLY_ASSIGN);
+        t.put(LocalTokenType.STATIC_IMPORT,      IMPORT__STATIC_IMPORT);
+        t.put(LocalTokenType.STATIC_INIT,        STATIC__STATIC_INIT);
+        t.put(LocalTokenType.STRING_LITERAL,     STRING_LITERAL);
+        t.put(LocalTokenType.SUPER_CTOR_CALL,    SUPER__CTOR_CALL);
+        t.put(LocalTokenType.TYPE_EXTENSION_AND, AND__TYPE_BOUND);
+        t.put(LocalTokenType.TYPE_LOWER_BOUNDS,  SUPER__TYPE_BOUND);
+        t.put(LocalTokenType.TYPE_UPPER_BOUNDS,  EXTENDS__TYPE_BOUND);
+        t.put(LocalTokenType.TYPECAST,           L_PAREN__CAST);
+        t.put(LocalTokenType.UNARY_PLUS,         PLUS__UNARY);
+        t.put(LocalTokenType.UNARY_MINUS,        MINUS__UNARY);
+        t.put(LocalTokenType.WILDCARD_TYPE,      QUESTION__WILDCARD_TYPE);
+
+        // Tokens that depend on the type of their parent.
+        t.put(LocalTokenType.ASSIGN,                                              ASSIGN__ASSIGNMENT);
+        t.put(LocalTokenType.ASSIGN,               LocalTokenType.VARIABLE_DEF,   ASSIGN__VAR_DECL);
+        t.put(LocalTokenType.AT,                   LocalTokenType.ANNOTATION,     AT__ANNO);
+        t.put(LocalTokenType.AT,                   LocalTokenType.ANNOTATION_DEF, AT__ANNO_DECL);
+        t.put(LocalTokenType.LITERAL_CLASS,                                       CLASS__CLASS_LITERAL);
+        t.put(LocalTokenType.LITERAL_CLASS,        LocalTokenType.CLASS_DEF,      CLASS__CLASS_DECL);
+        t.put(LocalTokenType.LITERAL_NEW,                                         NEW);
+        t.put(LocalTokenType.LITERAL_NEW,          LocalTokenType.METHOD_REF,     NEW__METH_REF);
+        t.put(LocalTokenType.LITERAL_STATIC,                                      STATIC__MOD);
+        t.put(LocalTokenType.LITERAL_STATIC,       LocalTokenType.STATIC_IMPORT,  STATIC__STATIC_IMPORT);
+        t.put(LocalTokenType.LITERAL_SYNCHRONIZED,                                SYNCHRONIZED__MOD);
+        t.put(LocalTokenType.LITERAL_SYNCHRONIZED, LocalTokenType.SLIST,          SYNCHRONIZED__SYNCHRONIZED);
+        t.put(LocalTokenType.RBRACK,               LocalTokenType.ARRAY_DECLARATOR, R_BRACK__ARRAY_DECL);
+        t.put(LocalTokenType.RBRACK,               LocalTokenType.INDEX_OP,         R_BRACK__INDEX);
+        t.put(LocalTokenType.STAR,                                                MULTIPLY);
+        t.put(LocalTokenType.STAR,                 LocalTokenType.DOT,            STAR__TYPE_IMPORT_ON_DEMAND);
+
+        t.put(LocalTokenType.COLON,                                  COLON__TERNARY);
+        t.put(LocalTokenType.COLON, LocalTokenType.LITERAL_DEFAULT,  COLON__DEFAULT);
+        t.put(LocalTokenType.COLON, LocalTokenType.LITERAL_CASE,     COLON__CASE);
+        t.put(LocalTokenType.COLON, LocalTokenType.FOR_EACH_CLAUSE,  COLON__ENHANCED_FOR);
+
+        t.put(LocalTokenType.IDENT, LocalTokenType.ANNOTATION,                   NAME__ANNO);
+        t.put(LocalTokenType.IDENT, LocalTokenType.ANNOTATION_FIELD_DEF,         NAME__ANNO_ELEM_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.VARIABLE_DEF,                 NAME__LOCAL_VAR_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.CTOR_DEF,                     NAME__CTOR_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.METHOD_DEF,                   NAME__METH_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.ANNOTATION_MEMBER_VALUE_PAIR, NAME__ANNO_MEMBER);
+        t.put(LocalTokenType.IDENT, LocalTokenType.CLASS_DEF,                    NAME__TYPE_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.INTERFACE_DEF,                NAME__TYPE_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.ANNOTATION_DEF,               NAME__TYPE_DECL);
+        t.put(LocalTokenType.IDENT, LocalTokenType.ENUM_DEF,                     NAME__TYPE_DECL);
+
+        t.put(LocalTokenType.LITERAL_DEFAULT,                                              DEFAULT__SWITCH);
+        t.put(LocalTokenType.LITERAL_DEFAULT, LocalTokenType.ANNOTATION_MEMBER_VALUE_PAIR, DEFAULT__ANNO_ELEM);
+        t.put(LocalTokenType.LITERAL_DEFAULT, LocalTokenType.ANNOTATION_FIELD_DEF,         DEFAULT__ANNO_ELEM);
+        t.put(LocalTokenType.LITERAL_DEFAULT, LocalTokenType.MODIFIERS,                    DEFAULT__MOD);
+
+        t.put(LocalTokenType.LPAREN, LocalTokenType.ANNOTATION,             L_PAREN__ANNO);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.ANNOTATION_FIELD_DEF,   L_PAREN__ANNO_ELEM_DECL);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.LITERAL_DO,             L_PAREN__DO_WHILE);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.LITERAL_IF,             L_PAREN__IF);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.LITERAL_CATCH,          L_PAREN__CATCH);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.SUPER_CTOR_CALL,        L_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.LITERAL_NEW,            L_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.LPAREN, LocalTokenType.RESOURCE_SPECIFICATION, L_PAREN__RESOURCES);
+
+        t.put(LocalTokenType.RPAREN, LocalTokenType.ANNOTATION,             R_PAREN__ANNO);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.ANNOTATION_FIELD_DEF,   R_PAREN__ANNO_ELEM_DECL);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.LITERAL_CATCH,          R_PAREN__CATCH);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.LITERAL_DO,             R_PAREN__DO_WHILE);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.LITERAL_IF,             R_PAREN__IF);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.CTOR_DEF,               R_PAREN__PARAMS);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.METHOD_DEF,             R_PAREN__PARAMS);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.LAMBDA,                 R_PAREN__PARAMS);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.SUPER_CTOR_CALL,        R_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.LITERAL_NEW,            R_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.METHOD_CALL,            R_PAREN__METH_INVOCATION);
+        t.put(LocalTokenType.RPAREN, LocalTokenType.RESOURCE_SPECIFICATION, R_PAREN__RESOURCES);
+
+        t.put(LocalTokenType.SEMI, LocalTokenType.PACKAGE_DEF,          SEMI__PACKAGE_DECL);
+        t.put(LocalTokenType.SEMI, LocalTokenType.IMPORT,               SEMI__IMPORT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.STATIC_IMPORT,        SEMI__STATIC_IMPORT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.METHOD_DEF,           SEMI__ABSTRACT_METH_DECL);
+        t.put(LocalTokenType.SEMI, LocalTokenType.ANNOTATION_FIELD_DEF, SEMI__ANNO_ELEM_DECL);
+        t.put(LocalTokenType.SEMI, LocalTokenType.SLIST,                SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.SUPER_CTOR_CALL,      SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.CTOR_CALL,            SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_DO,           SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_RETURN,       SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_BREAK,        SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_CONTINUE,     SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_IF,           SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_WHILE,        SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_ASSERT,       SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_THROW,        SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.LITERAL_YIELD,        SEMI__STATEMENT);
+        t.put(LocalTokenType.SEMI, LocalTokenType.RESOURCES,            SEMI__RESOURCES);
+        t.put(LocalTokenType.SEMI, LocalTokenType.SWITCH_RULE,          SEMI__SWITCH_RULE);
+
+        t.put(LocalTokenType.SLIST, LocalTokenType.STATIC_INIT,          L_CURLY__STATIC_INIT);
+        t.put(LocalTokenType.SLIST, LocalTokenType.INSTANCE_INIT,        L_CURLY__INSTANCE_INIT);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_IF,           L_CURLY__IF);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_ELSE,         R_CURLY__ELSE);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_DO,           L_CURLY__DO);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_WHILE,        L_CURLY__WHILE);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_FOR,          L_CURLY__FOR);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_TRY,          L_CURLY__TRY);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_FINALLY,      L_CURLY__FINALLY);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LITERAL_SYNCHRONIZED, L_CURLY__SYNCHRONIZED);
+        t.put(LocalTokenType.SLIST, LocalTokenType.LABELED_STAT,         L_CURLY__LABELED_STAT);
+        t.put(LocalTokenType.SLIST, LocalTokenType.SLIST,                L_CURLY__BLOCK);
+
+        // Tokens that depend on the types of their parent and grandparent.
+        // SUPPRESS CHECKSTYLE LineLength:27
+        t.put(LocalTokenType.GENERIC_END,   LocalTokenType.TYPE_PARAMETERS, LocalTokenType.METHOD_DEF,    R_ANGLE__METH_DECL_TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_END,   LocalTokenType.TYPE_PARAMETERS, LocalTokenType.CTOR_DEF,      R_ANGLE__METH_DECL_TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_END,   LocalTokenType.TYPE_PARAMETERS, LocalTokenType.CLASS_DEF,     R_ANGLE__TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_END,   LocalTokenType.TYPE_PARAMETERS, LocalTokenType.INTERFACE_DEF, R_ANGLE__TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_START, LocalTokenType.TYPE_PARAMETERS, LocalTokenType.METHOD_DEF,    L_ANGLE__METH_DECL_TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_START, LocalTokenType.TYPE_PARAMETERS, LocalTokenType.CTOR_DEF,      L_ANGLE__METH_DECL_TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_START, LocalTokenType.TYPE_PARAMETERS, LocalTokenType.CLASS_DEF,     L_ANGLE__TYPE_PARAMS);
+        t.put(LocalTokenType.GENERIC_START, LocalTokenType.TYPE_PARAMETERS, LocalTokenType.INTERFACE_DEF, L_ANGLE__TYPE_PARAMS);
+
+        t.put(LocalTokenType.LCURLY, LocalTokenType.LITERAL_SWITCH,                                  L_CURLY__SWITCH);
+        t.put(LocalTokenType.LCURLY, LocalTokenType.OBJBLOCK,       LocalTokenType.ENUM_CONSTANT_DEF,    L_CURLY__ENUM_CONST);
+
+        t.put(LocalTokenType.RCURLY, LocalTokenType.LITERAL_SWITCH,                                  R_CURLY__SWITCH);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.OBJBLOCK,       LocalTokenType.ENUM_CONSTANT_DEF,    R_CURLY__ENUM_CONST_DECL);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.INSTANCE_INIT,        R_CURLY__INSTANCE_INIT);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LABELED_STAT,         R_CURLY__LABELED_STAT);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_DO,           R_CURLY__DO);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_ELSE,         R_CURLY__IF);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_FINALLY,      R_CURLY__FINALLY);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_FOR,          R_CURLY__FOR);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_IF,           R_CURLY__IF);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_SYNCHRONIZED, R_CURLY__SYNCHRONIZED);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_TRY,          R_CURLY__TRY);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.LITERAL_WHILE,        R_CURLY__WHILE);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.SLIST,                R_CURLY__BLOCK);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.STATIC_INIT,          R_CURLY__STATIC_INIT);
+        t.put(LocalTokenType.RCURLY, LocalTokenType.SLIST,          LocalTokenType.SWITCH_RULE,          R_CURLY__SWITCH);
+
+        t.put(LocalTokenType.SEMI, LocalTokenType.VARIABLE_DEF, LocalTokenType.OBJBLOCK, SEMI__FIELD_DECL);
+
+        // Tokens that are classified by "classify()" with even more context.
+        t.putResidual(LocalTokenType.ARRAY_INIT,            L_CURLY__EMPTY_ARRAY_INIT, L_CURLY__ARRAY_INIT);
+        t.putResidual(LocalTokenType.ANNOTATION_ARRAY_INIT, L_CURLY__EMPTY_ANNO_ARRAY_INIT, L_CURLY__ANNO_ARRAY_INIT);
+        t.putResidual(LocalTokenType.LITERAL_RETURN,        RETURN__NO_EXPR, RETURN__EXPR);
+        t.putResidual(
+            LocalTokenType.DOT,
+            DOT__PACKAGE_DECL,
+            DOT__IMPORT,
+            DOT__QUALIFIED_TYPE,
+            DOT__SELECTOR
+        );
+        t.putResidual(LocalTokenType.GENERIC_END,   R_ANGLE__TYPE_ARGS, R_ANGLE__METH_INVOCATION_TYPE_ARGS);
+        t.putResidual(LocalTokenType.GENERIC_START, L_ANGLE__TYPE_ARGS, L_ANGLE__METH_INVOCATION_TYPE_ARGS);
+        t.putResidual(
+            LocalTokenType.IDENT,
+            NAME__INFERRED_PARAM,
+            NAME__PARAM,
+            NAME__PACKAGE_DECL,
+            NAME__IMPORT_TYPE,
+            NAME__IMPORT_COMPONENT,
+            NAME__SIMPLE_TYPE,
+            NAME__QUALIFIED_TYPE,
+            NAME__AMBIGUOUS
+        );
+        t.putResidual(
+            LocalTokenType.LCURLY,
+            L_CURLY__EMPTY_TYPE_DECL,
+            L_CURLY__TYPE_DECL,
+            L_CURLY__EMPTY_ANON_CLASS,
+            L_CURLY__ANON_CLASS,
+            L_CURLY__EMPTY_ARRAY_INIT,
+            L_CURLY__ARRAY_INIT
+        );
+        t.putResidual(
+            LocalTokenType.LPAREN,
+            L_PAREN__FOR_NO_INIT,
+            L_PAREN__FOR,
+            L_PAREN__LAMBDA_PARAMS,
+            L_PAREN__PARAMS,
+            L_PAREN__PARENTHESIZED
+        );
+        t.putResidual(
+            LocalTokenType.RCURLY,
+            R_CURLY__EMPTY_ANNO_ARRAY_INIT,
+            R_CURLY__ANNO_ARRAY_INIT,
+            R_CURLY__EMPTY_ARRAY_INIT,
+            R_CURLY__ARRAY_INIT,
+            R_CURLY__EMPTY_TYPE_DECL,
+            R_CURLY__TYPE_DECL,
+            R_CURLY__EMPTY_ANON_CLASS,
+            R_CURLY__ANON_CLASS,
+            R_CURLY__EMPTY_METH_DECL,
+            R_CURLY__METH_DECL,
+            R_CURLY__EMPTY_CATCH,
+            R_CURLY__CATCH,
+            R_CURLY__EMPTY_LAMBDA,
+            R_CURLY__LAMBDA
+        );
+        t.putResidual(
+            LocalTokenType.RPAREN,
+            R_PAREN__FOR_NO_UPDATE,
+            R_PAREN__FOR,
+            R_PAREN__CAST,
+            R_PAREN__PARENTHESIZED
+        );
+        t.putResidual(
+            LocalTokenType.SEMI,
+            SEMI__ENUM_DECL,
+            SEMI__TYPE_DECL,
+            SEMI__STATEMENT,
+            SEMI__FOR_NO_INIT_NO_CONDITION,
+            SEMI__FOR_NO_INIT_CONDITION,
+            SEMI__FOR_INIT_NO_CONDITION,
+            SEMI__FOR_INIT_CONDITION,
+            SEMI__FOR_NO_CONDITION_NO_UPDATE,
+            SEMI__FOR_NO_CONDITION_UPDATE,
+            SEMI__FOR_CONDITION_NO_UPDATE,
+            SEMI__FOR_CONDITION_UPDATE
+        );
+        t.putResidual(
+            LocalTokenType.SLIST,
+            L_CURLY__EMPTY_CATCH,
+            L_CURLY__CATCH,
+            L_CURLY__EMPTY_METH_DECL,
+            L_CURLY__METH_DECL
+        );
+    }
+
+    /**
+     * Maps a token type, optionally in combination with the types of the token's parent and grandparent, to a
+     * {@link JavaElement}. Lookups are O(1) (at most three array accesses per level).
+     * <p>
+     *   Also maintains the inverse mapping, i.e. from each {@link JavaElement} to the token types that can be
+     *   classified as that element.
+     * </p>
+     */
+    private static final
+    class ClassificationTable {
+
+        private static final int N = LocalTokenType.values().length;
+
+        private final JavaElement[]     byType                  = new JavaElement[ClassificationTable.N];
+        private final JavaElement[][]   byTypeParent            = new JavaElement[ClassificationTable.N][];
+        private final JavaElement[][][] byTypeParentGrandParent = new JavaElement[ClassificationTable.N][][];
+
+        private final Map<JavaElement, Set<LocalTokenType>>
+        tokenTypes = new EnumMap<JavaElement, Set<LocalTokenType>>(JavaElement.class);
+
+        /** Maps the token {@code type} to the given {@link JavaElement}, regardless of the context. */
+        void
+        put(LocalTokenType type, JavaElement javaElement) {
+            assert this.byType[type.ordinal()] == null : type;
+            this.byType[type.ordinal()] = javaElement;
+            this.addTokenType(javaElement, type);
+        }
+
+        /** Maps the token {@code type} to the given {@link JavaElement} iff its parent has the given type. */
+        void
+        put(LocalTokenType type, LocalTokenType parentType, JavaElement javaElement) {
+
+            JavaElement[] a = this.byTypeParent[type.ordinal()];
+            if (a == null) a = (this.byTypeParent[type.ordinal()] = new JavaElement[ClassificationTable.N]);
+
+            assert a[parentType.ordinal()] == null : type + "/" + parentType;
+            a[parentType.ordinal()] = javaElement;
+            this.addTokenType(javaElement, type);
+        }
+
+        /**
+         * Maps the token {@code type} to the given {@link JavaElement} iff its parent and grandparent have the given
+         * types.
+         */
+        void
+        put(LocalTokenType type, LocalTokenType parentType, LocalTokenType grandParentType, JavaElement javaElement) {
+
+            JavaElement[][] a = this.byTypeParentGrandParent[type.ordinal()];
+            if (a == null) {
+                a = (this.byTypeParentGrandParent[type.ordinal()] = new JavaElement[ClassificationTable.N][]);
+            }
+
+            JavaElement[] b = a[parentType.ordinal()];
+            if (b == null) b = (a[parentType.ordinal()] = new JavaElement[ClassificationTable.N]);
+
+            assert b[grandParentType.ordinal()] == null : type + "/" + parentType + "/" + grandParentType;
+            b[grandParentType.ordinal()] = javaElement;
+            this.addTokenType(javaElement, type);
+        }
+
+        /**
+         * Declares that tokens of the given {@code type} can be classified as any of the given {@code
+         * javaElements} by code <i>outside</i> of this table. This affects only the inverse mapping; {@link
+         * #get(LocalTokenType, LocalTokenType, LocalTokenType)} is not affected.
+         */
+        void
+        putResidual(LocalTokenType type, JavaElement... javaElements) {
+            for (JavaElement javaElement : javaElements) this.addTokenType(javaElement, type);
+        }
+
+        /**
+         * @return The types of the tokens that can be classified as the given {@code javaElement}
+         */
+        Set<LocalTokenType>
+        getTokenTypes(JavaElement javaElement) {
+            Set<LocalTokenType> result = this.tokenTypes.get(javaElement);
+            if (result == null) return Collections.emptySet();
+            return Collections.unmodifiableSet(result);
+        }
+
+        private void
+        addTokenType(JavaElement javaElement, LocalTokenType type) {
+            Set<LocalTokenType> s = this.tokenTypes.get(javaElement);
+            if (s == null) this.tokenTypes.put(javaElement, (s = EnumSet.noneOf(LocalTokenType.class)));
+            s.add(type);
+        }
+
+        /**
+         * @return The most specific mapping for the given types, or {@code null} iff there is none
+         */
+        @Nullable JavaElement
+        get(LocalTokenType type, LocalTokenType parentType, LocalTokenType grandParentType) {
+
+            JavaElement[][] a = this.byTypeParentGrandParent[type.ordinal()];
+            if (a != null) {
+                JavaElement[] b = a[parentType.ordinal()];
+                if (b != null) {
+                    JavaElement result = b[grandParentType.ordinal()];
+                    if (result != null) return result;
+                }
+            }
+
+            JavaElement[] c = this.byTypeParent[type.ordinal()];
+            if (c != null) {
+                JavaElement result = c[parentType.ordinal()];
+                if (result != null) return result;
+            }
+
+            return this.byType[type.ordinal()];
+        }
+    }
+
+    /**
+     * @return The type of the closest ancestor who's type is no the given {@code tokenType}, or {@code null}
      */
     @Nullable private static LocalTokenType
-    getAncestorWithTypeNot(DetailAST ast, LocalTokenType tokenType) {
-        for (DetailAST a = Cs820.getParent(ast);; a = Cs820.getParent(a)) {
+    getAncestorWithTypeNot(FlatAst flatAst, int node, LocalTokenType tokenType) {
+        for (int a = flatAst.getParent(node);; a = flatAst.getParent(a)) {
 
-            if (a == null) return null;
+            if (a == FlatAst.NONE) return null;
 
-            int t = Cs820.getType(a);
+            int t = flatAst.getType(a);
             if (t != tokenType.delocalize()) return LocalTokenType.localize(t);
         }
     }
     /**
-     * @return The type of the closest ancestor who's type is not {@code tokenType1} or {@code tokenType2}, or -1
+     * @return The type of the closest ancestor who's type is not {@code tokenType1} or {@code tokenType2}, or {@code
+     *         null}
      */
     @Nullable private static LocalTokenType
-    getAncestorWithTypeNot(DetailAST ast, LocalTokenType tokenType1, LocalTokenType tokenType2) {
-        for (DetailAST a = Cs820.getParent(ast);; a = Cs820.getParent(a)) {
+    getAncestorWithTypeNot(FlatAst flatAst, int node, LocalTokenType tokenType1, LocalTokenType tokenType2) {
+        for (int a = flatAst.getParent(node);; a = flatAst.getParent(a)) {
 
-            if (a == null) return null;
+            if (a == FlatAst.NONE) return null;
 
-            LocalTokenType t = LocalTokenType.localize(Cs820.getType(a));
+            LocalTokenType t = flatAst.getLocalType(a);
             if (t != tokenType1 && t != tokenType2) return t;
         }
     }
@@ -0,0 +1,487 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.cscontrib.util;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+import de.unkrig.cscontrib.LocalTokenType;
+import de.unkrig.cscontrib.compat.Cs820;
+
+/**
+ * A "flat" snapshot of a CHECKSTYLE AST: Each node is identified by its index in pre-order (the "node"), and the
+ * node's attributes are stored in primitive arrays. Querying these is much cheaper than navigating the {@link
+ * DetailAST}s.
+ * <p>
+ *   Typically a check gets the snapshot in its {@link com.puppycrawl.tools.checkstyle.api.AbstractCheck#beginTree(
+ *   DetailAST) beginTree()} method through {@link #of(DetailAST)}, which creates it only once per file, and shares
+ *   it with all other checks (of the same thread). In its {@link
+ *   com.puppycrawl.tools.checkstyle.api.AbstractCheck#finishTree(DetailAST) finishTree()} method, the check {@link
+ *   #release(DetailAST) releases} the snapshot, so that it does not outlive the processing of the file.
+ * </p>
+ * <p>
+ *   The snapshot reflects the AST at the time it was created; thus it must not be used by checks that modify the
+ *   AST.
+ * </p>
+ */
+public final
+class FlatAst {
+
+    /** Indicates "no such node", e.g. the parent of a top-level node. */
+    public static final int NONE = -1;
+
+    private final DetailAST   rootAst;
+    private final int         size;
+    private final DetailAST[] asts;
+    private final int[]       types;
+    private final int[]       lineNos;
+    private final int[]       columnNos;
+    private final int[]       parents;
+    private final int[]       firstChildren;
+    private final int[]       lastChildren;
+    private final int[]       nextSiblings;
+    private final int[]       previousSiblings;
+    private final int[]       subtreeEnds;
+
+    @Nullable private Map<DetailAST, Integer> nodes;
+    @Nullable private short[]                 javaElements;
+    @Nullable private int[]                   leftmostDescendants;
+    @Nullable private int[]                   rightmostDescendants;
+    @Nullable private long[]                  fingerprints;
+
+    /** The snapshot that was created most recently in the current thread. */
+    private static final ThreadLocal<FlatAst> CACHE = new ThreadLocal<FlatAst>();
+
+    /**
+     * @param rootAst The first top-level node of a compilation unit, as passed to {@link
+     *                com.puppycrawl.tools.checkstyle.api.AbstractCheck#beginTree(DetailAST)}
+     * @return        The snapshot of the AST that starts with {@code rootAst}; created only once and then shared
+     */
+    public static FlatAst
+    of(DetailAST rootAst) {
+
+        FlatAst result = FlatAst.CACHE.get();
+        if (result == null || result.rootAst != rootAst) FlatAst.CACHE.set((result = new FlatAst(rootAst)));
+
+        return result;
+    }
+
+    /**
+     * Creates a snapshot that is <em>not</em> shared through the per-thread cache, for one-off queries outside of a
+     * TreeWalker pass, where no {@link #release(DetailAST)} would follow.
+     */
+    static FlatAst
+    uncached(DetailAST rootAst) { return new FlatAst(rootAst); }
+
+    /**
+     * Releases the shared snapshot of the AST that starts with {@code rootAst} (if any). Checks that have {@link
+     * #of(DetailAST) gotten} a snapshot invoke this method when they have finished the file. It is harmless if more
+     * than one check does so.
+     *
+     * @param rootAst The first top-level node of a compilation unit, as passed to {@link
+     *                com.puppycrawl.tools.checkstyle.api.AbstractCheck#finishTree(DetailAST)}
+     */
+    public static void
+    release(DetailAST rootAst) {
+
+        FlatAst cached = FlatAst.CACHE.get();
+        if (cached != null && cached.rootAst == rootAst) FlatAst.CACHE.remove();
+    }
+
+    private
+    FlatAst(DetailAST rootAst) {
+
+        this.rootAst = rootAst;
+
+        int capacity = 1024;
+
+        DetailAST[] asts             = new DetailAST[capacity];
+        int[]       types            = new int[capacity];
+        int[]       lineNos          = new int[capacity];
+        int[]       columnNos        = new int[capacity];
+        int[]       parents          = new int[capacity];
+        int[]       firstChildren    = new int[capacity];
+        int[]       lastChildren     = new int[capacity];
+        int[]       nextSiblings     = new int[capacity];
+        int[]       previousSiblings = new int[capacity];
+        int[]       subtreeEnds      = new int[capacity];
+
+        // Traverse the AST in pre-order; iteratively rather than recursively, so that very deep ASTs cannot cause a
+        // stack overflow.
+        int n = 0;
+        DetailAST ast = rootAst;
+        int parent = FlatAst.NONE, previousSibling = FlatAst.NONE;
+        TRAVERSE:
+        for (;;) {
+
+            if (n == capacity) {
+                capacity         *= 2;
+                asts             = Arrays.copyOf(asts, capacity);
+                types            = Arrays.copyOf(types, capacity);
+                lineNos          = Arrays.copyOf(lineNos, capacity);
+                columnNos        = Arrays.copyOf(columnNos, capacity);
+                parents          = Arrays.copyOf(parents, capacity);
+                firstChildren    = Arrays.copyOf(firstChildren, capacity);
+                lastChildren     = Arrays.copyOf(lastChildren, capacity);
+                nextSiblings     = Arrays.copyOf(nextSiblings, capacity);
+                previousSiblings = Arrays.copyOf(previousSiblings, capacity);
+                subtreeEnds      = Arrays.copyOf(subtreeEnds, capacity);
+            }
+
+            int node = n++;
+
+            asts[node]             = ast;
+            types[node]            = Cs820.getType(ast);
+            lineNos[node]          = Cs820.getLineNo(ast);
+            columnNos[node]        = Cs820.getColumnNo(ast);
+            parents[node]          = parent;
+            firstChildren[node]    = FlatAst.NONE;
+            lastChildren[node]     = FlatAst.NONE;
+            nextSiblings[node]     = FlatAst.NONE;
+            previousSiblings[node] = previousSibling;
+
+            if (previousSibling != FlatAst.NONE) {
+                nextSiblings[previousSibling] = node;
+            } else
+            if (parent != FlatAst.NONE) {
+                firstChildren[parent] = node;
+            }
+            if (parent != FlatAst.NONE) lastChildren[parent] = node;
+
+            // Descend into the first child, if any.
+            DetailAST firstChild = Cs820.getFirstChild(ast);
+            if (firstChild != null) {
+                ast             = firstChild;
+                parent          = node;
+                previousSibling = FlatAst.NONE;
+                continue;
+            }
+
+            // Otherwise, proceed with the next sibling of the node or of its closest ancestor.
+            for (;;) {
+                subtreeEnds[node] = n;
+
+                DetailAST nextSibling = Cs820.getNextSibling(asts[node]);
+                if (nextSibling != null) {
+                    ast             = nextSibling;
+                    parent          = parents[node];
+                    previousSibling = node;
+                    continue TRAVERSE;
+                }
+
+                node = parents[node];
+                if (node == FlatAst.NONE) break TRAVERSE;
+            }
+        }
+
+        this.size             = n;
+        this.asts             = asts;
+        this.types            = types;
+        this.lineNos          = lineNos;
+        this.columnNos        = columnNos;
+        this.parents          = parents;
+        this.firstChildren    = firstChildren;
+        this.lastChildren     = lastChildren;
+        this.nextSiblings     = nextSiblings;
+        this.previousSiblings = previousSiblings;
+        this.subtreeEnds      = subtreeEnds;
+    }
+
+    /** @return The number of nodes in this AST */
+    public int
+    size() { return this.size; }
+
+    /**
+     * @return The node that represents the given {@code ast}, or {@link #NONE} iff the {@code ast} is not part of
+     *         this AST
+     */
+    public int
+    indexOf(DetailAST ast) {
+
+        Map<DetailAST, Integer> nodes = this.nodes;
+        if (nodes == null) {
+            nodes = new IdentityHashMap<DetailAST, Integer>(this.size * 2);
+            for (int node = 0; node < this.size; node++) nodes.put(this.asts[node], node);
+            this.nodes = nodes;
+        }
+
+        Integer result = nodes.get(ast);
+        return result == null ? FlatAst.NONE : result;
+    }
+
+    /** @return The {@link DetailAST} that the given {@code node} represents */
+    public DetailAST
+    getAst(int node) {
+        DetailAST result = this.asts[node];
+        assert result != null;
+        return result;
+    }
+
+    /** @return The {@link DetailAST} that the given {@code node} represents, or {@code null} iff it is {@link #NONE} */
+    @Nullable public DetailAST
+    getAstOrNull(int node) { return node == FlatAst.NONE ? null : this.asts[node]; }
+
+    /** @return The {@link com.puppycrawl.tools.checkstyle.api.TokenTypes} constant of the {@code node} */
+    public int
+    getType(int node) { return this.types[node]; }
+
+    /** @return The {@link LocalTokenType} of the {@code node} */
+    public LocalTokenType
+    getLocalType(int node) { return LocalTokenType.localize(this.types[node]); }
+
+    /**
+     * @return The {@link LocalTokenType} of the {@code node}, or {@code null} iff the {@code node} is {@link #NONE}
+     */
+    @Nullable public LocalTokenType
+    getLocalTypeOrNull(int node) { return node == FlatAst.NONE ? null : LocalTokenType.localize(this.types[node]); }
+
+    /** @return The line number of the {@code node}, counting from one */
+    public int
+    getLineNo(int node) { return this.lineNos[node]; }
+
+    /** @return The column number of the {@code node}, counting from zero */
+    public int
+    getColumnNo(int node) { return this.columnNos[node]; }
+
+    /** @return The parent of the {@code node}, or {@link #NONE} */
+    public int
+    getParent(int node) { return this.parents[node]; }
+
+    /** @return The first child of the {@code node}, or {@link #NONE} */
+    public int
+    getFirstChild(int node) { return this.firstChildren[node]; }
+
+    /** @return The last child of the {@code node}, or {@link #NONE} */
+    public int
+    getLastChild(int node) { return this.lastChildren[node]; }
+
+    /** @return The next sibling of the {@code node}, or {@link #NONE} */
+    public int
+    getNextSibling(int node) { return this.nextSiblings[node]; }
+
+    /** @return The previous sibling of the {@code node}, or {@link #NONE} */
+    public int
+    getPreviousSibling(int node) { return this.previousSiblings[node]; }
+
+    /**
+     * @return One plus the last descendant of the {@code node}; i.e. the descendants of the {@code node} are the
+     *         nodes {@code node + 1 ... getSubtreeEnd(node) - 1}
+     */
+    public int
+    getSubtreeEnd(int node) { return this.subtreeEnds[node]; }
+
+    /**
+     * Equivalent with {@link AstUtil#toJavaElement(FlatAst, int)}, but classifies <em>all</em> nodes in one pass
+     * when it is invoked for the first time, so that all subsequent invocations are mere array lookups.
+     *
+     * @return The {@link JavaElement} that the {@code node} represents, or {@code null}
+     */
+    @Nullable public JavaElement
+    getJavaElement(int node) {
+
+        short[] javaElements = this.javaElements;
+        if (javaElements == null) {
+            javaElements = new short[this.size];
+            for (int n = 0; n < this.size; n++) {
+                JavaElement je;
+                try {
+                    je = AstUtil.toJavaElement(this, n);
+                } catch (AssertionError ae) {
+
+                    // Defer the assertion error until somebody actually asks for that node.
+                    javaElements[n] = FlatAst.UNEXPECTED;
+                    continue;
+                }
+                javaElements[n] = je == null ? FlatAst.NO_JAVA_ELEMENT : (short) je.ordinal();
+            }
+            this.javaElements = javaElements;
+        }
+
+        short ordinal = javaElements[node];
+        return (
+            ordinal == FlatAst.NO_JAVA_ELEMENT ? null
+            : ordinal == FlatAst.UNEXPECTED    ? AstUtil.toJavaElement(this, node)
+            : FlatAst.JAVA_ELEMENTS[ordinal]
+        );
+    }
+    private static final short         NO_JAVA_ELEMENT = -1;
+    private static final short         UNEXPECTED      = -2;
+    private static final JavaElement[] JAVA_ELEMENTS   = JavaElement.values();
+
+    /**
+     * Iff the {@code node} is an empty {@code MODIFIERS} node, then its next sibling is regarded as its first child.
+     *
+     * @return The descendant of the {@code node} that appears first in the source code (possibly the {@code node}
+     *         itself)
+     */
+    public int
+    getLeftmostDescendant(int node) {
+
+        int[] leftmostDescendants = this.leftmostDescendants;
+        if (leftmostDescendants == null) {
+
+            // Process the nodes in reverse pre-order, so that the first child and the next sibling of each node have
+            // already been processed.
+            leftmostDescendants = new int[this.size];
+            for (int n = this.size - 1; n >= 0; n--) {
+                int tmp = this.firstChildren[n];
+                if (tmp == FlatAst.NONE && this.types[n] == LocalTokenType.MODIFIERS.delocalize()) {
+                    tmp = this.nextSiblings[n];
+                }
+                leftmostDescendants[n] = tmp == FlatAst.NONE || this.isAfter(tmp, n) ? n : leftmostDescendants[tmp];
+            }
+            this.leftmostDescendants = leftmostDescendants;
+        }
+
+        return leftmostDescendants[node];
+    }
+
+    /**
+     * @return The descendant of the {@code node} that appears last in the source code (possibly the {@code node}
+     *         itself)
+     */
+    public int
+    getRightmostDescendant(int node) {
+
+        int[] rightmostDescendants = this.rightmostDescendants;
+        if (rightmostDescendants == null) {
+
+            // Process the nodes in reverse pre-order, so that the last child of each node has already been processed.
+            rightmostDescendants = new int[this.size];
+            for (int n = this.size - 1; n >= 0; n--) {
+                int tmp = this.lastChildren[n];
+                rightmostDescendants[n] = tmp == FlatAst.NONE || this.isAfter(n, tmp) ? n : rightmostDescendants[tmp];
+            }
+            this.rightmostDescendants = rightmostDescendants;
+        }
+
+        return rightmostDescendants[node];
+    }
+
+    // The layout of a fingerprint: Five "slots" of FINGERPRINT_SLOT_BITS bits each, where each slot holds a token
+    // type plus one, or 0 iff there is no such node.
+
+    /** The fingerprint slot for the type of the node itself. */
+    public static final int FINGERPRINT_SELF = 0;
+
+    /** The fingerprint slot for the type of the node's parent. */
+    public static final int FINGERPRINT_PARENT = 1;
+
+    /** The fingerprint slot for the type of the node's grandparent. */
+    public static final int FINGERPRINT_GRANDPARENT = 2;
+
+    /** The fingerprint slot for the type of the node's great-grandparent. */
+    public static final int FINGERPRINT_GREAT_GRANDPARENT = 3;
+
+    /** The fingerprint slot for the type of the previous sibling of the node's parent. */
+    public static final int FINGERPRINT_PREVIOUS_UNCLE = 4;
+
+    /** The number of bits per fingerprint slot. */
+    public static final int FINGERPRINT_SLOT_BITS = 12;
+
+    /**
+     * @return The value of the given fingerprint slot for a node of the given type
+     */
+    public static long
+    fingerprintSlot(int slot, int tokenType) {
+        assert tokenType >= 0 && tokenType + 1 < 1 << FlatAst.FINGERPRINT_SLOT_BITS : tokenType;
+        return (long) (tokenType + 1) << (slot * FlatAst.FINGERPRINT_SLOT_BITS);
+    }
+
+    /**
+     * @return The types of the {@code node} and of its parent, grandparent, great-grandparent and previous uncle,
+     *         packed into one {@code long}; see {@link #FINGERPRINT_SELF} and the other slots
+     * @see    de.unkrig.cscontrib.util.AstUtil.AncestorPattern
+     */
+    public long
+    getFingerprint(int node) {
+
+        long[] fingerprints = this.fingerprints;
+        if (fingerprints == null) {
+
+            // Process the nodes in pre-order, so that the parent of each node has already been processed; the
+            // parent's "self", "parent" and "grandparent" slots are our "parent", "grandparent" and
+            // "great-grandparent" slots.
+            long ancestorsMask = (1L << 3 * FlatAst.FINGERPRINT_SLOT_BITS) - 1;
+
+            fingerprints = new long[this.size];
+            for (int n = 0; n < this.size; n++) {
+
+                long fingerprint = FlatAst.fingerprintSlot(FlatAst.FINGERPRINT_SELF, this.types[n]);
+
+                int parent = this.parents[n];
+                if (parent != FlatAst.NONE) {
+                    fingerprint |= (fingerprints[parent] & ancestorsMask) << FlatAst.FINGERPRINT_SLOT_BITS;
+
+                    int previousUncle = this.previousSiblings[parent];
+                    if (previousUncle != FlatAst.NONE) {
+                        fingerprint |= FlatAst.fingerprintSlot(
+                            FlatAst.FINGERPRINT_PREVIOUS_UNCLE,
+                            this.types[previousUncle]
+                        );
+                    }
+                }
+
+                fingerprints[n] = fingerprint;
+            }
+            this.fingerprints = fingerprints;
+        }
+
+        return fingerprints[node];
+    }
+
+    /**
+     * @return Whether the leftmost and the rightmost descendant of the {@code node} appear in the same line
+     */
+    public boolean
+    isSingleLine(int node) {
+        return this.lineNos[this.getLeftmostDescendant(node)] == this.lineNos[this.getRightmostDescendant(node)];
+    }
+
+    /**
+     * @return Whether {@code node1} appears after {@code node2} in the source code
+     */
+    private boolean
+    isAfter(int node1, int node2) {
+        return (
+            this.lineNos[node1] > this.lineNos[node2]
+            || (this.lineNos[node1] == this.lineNos[node2] && this.columnNos[node1] > this.columnNos[node2])
+        );
+    }
+
+    /** @return The number of children of the {@code node} */
+    public int
+    getChildCount(int node) {
+        int result = 0;
+        for (int c = this.firstChildren[node]; c != FlatAst.NONE; c = this.nextSiblings[c]) result++;
+        return result;
+    }
+}
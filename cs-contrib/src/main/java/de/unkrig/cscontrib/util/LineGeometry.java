@@ -0,0 +1,328 @@
+
+/*
+ * de.unkrig.cs-contrib - Additional checks, filters and quickfixes for CheckStyle and Eclipse-CS
+ *
+ * Copyright (c) 2026, Arno Unkrig
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.cscontrib.util;
+
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * Some facts about the lines of a source file which the whitespace-related checks need for each token, computed
+ * once per file. With these, the checks can answer their questions with integer comparisons, rather than by
+ * matching regular expressions against (substrings of) the line.
+ * <p>
+ *   Also the "tab-expanded" indentations and columns, which depend on the tab width, are computed only once per file
+ *   (and tab width).
+ * </p>
+ * <p>
+ *   "Blank" characters are those that match the regular expression "{@code \s}", i.e. SPACE, TAB, LF, VT, FF and
+ *   CR.
+ * </p>
+ */
+public final
+class LineGeometry {
+
+    private final FileContents fileContents;
+    private final String[]     lines;
+    private final int[]        firstNonBlankColumns;
+    private final int[]        codeEnds;
+    private final int[]        commentStarts;
+    private final int[]        firstTabs;
+
+    // The tab-expanded indentations of all lines, and tab-expanded columns of the lines that contain TABs. Computed
+    // lazily, for one tab width at a time.
+    private int               tabWidth;
+    @Nullable private int[]   indentations;
+    @Nullable private int[][] expandedColumns;
+
+    /** The line geometry that was created most recently in the current thread. */
+    private static final ThreadLocal<LineGeometry> CACHE = new ThreadLocal<LineGeometry>();
+
+    /**
+     * @return The line geometry of the given file; created only once and then shared (with the checks of the same
+     *         thread)
+     */
+    public static LineGeometry
+    of(FileContents fileContents) {
+
+        LineGeometry result = LineGeometry.CACHE.get();
+        if (result == null || result.fileContents != fileContents) {
+            LineGeometry.CACHE.set((result = new LineGeometry(fileContents)));
+        }
+
+        return result;
+    }
+
+    /**
+     * Releases the shared line geometry of the given file (if any), so that it does not outlive the processing of
+     * the file. Checks that have {@link #of(FileContents) gotten} a line geometry invoke this method in their {@link
+     * com.puppycrawl.tools.checkstyle.api.AbstractCheck#finishTree(com.puppycrawl.tools.checkstyle.api.DetailAST)
+     * finishTree()} method. It is harmless if more than one check does so.
+     */
+    public static void
+    release(FileContents fileContents) {
+
+        LineGeometry cached = LineGeometry.CACHE.get();
+        if (cached != null && cached.fileContents == fileContents) LineGeometry.CACHE.remove();
+    }
+
+    private
+    LineGeometry(FileContents fileContents) {
+
+        this.fileContents = fileContents;
+
+        // Notice: "FileContents.getLines()" returns a COPY of the lines array, so call it only once.
+        String[] lines = fileContents.getLines();
+
+        this.lines                = lines;
+        this.firstNonBlankColumns = new int[lines.length];
+        this.codeEnds             = new int[lines.length];
+        this.commentStarts        = new int[lines.length];
+        this.firstTabs            = new int[lines.length];
+
+        // C-style comments and text blocks can span multiple lines.
+        boolean inBlockComment = false, inTextBlock = false;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int    n    = line.length();
+
+            int firstNonBlank = 0;
+            while (firstNonBlank < n && LineGeometry.isBlank(line.charAt(firstNonBlank))) firstNonBlank++;
+
+            // Find the end-of-line comment, skipping string literals, text blocks, character literals and C-style
+            // comments.
+            int commentStart = -1;
+            for (int j = 0; j < n;) {
+
+                if (inBlockComment) {
+                    int end = line.indexOf("*/", j);
+                    if (end == -1) break;
+                    inBlockComment = false;
+                    j              = end + 2;
+                    continue;
+                }
+
+                if (inTextBlock) {
+                    for (; j < n; j++) {
+                        char c2 = line.charAt(j);
+                        if (c2 == '\\') {
+                            j++;
+                        } else
+                        if (c2 == '"' && line.startsWith("\"\"\"", j)) {
+                            inTextBlock = false;
+                            j           += 3;
+                            break;
+                        }
+                    }
+                    continue;
+                }
+
+                char c = line.charAt(j);
+                if (c == '/' && j + 1 < n && line.charAt(j + 1) == '/') {
+                    commentStart = j;
+                    break;
+                }
+                if (c == '/' && j + 1 < n && line.charAt(j + 1) == '*') {
+                    inBlockComment = true;
+                    j              += 2;
+                    continue;
+                }
+                if (c == '"' && line.startsWith("\"\"\"", j)) {
+                    inTextBlock = true;
+                    j           += 3;
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    for (j++; j < n; j++) {
+                        char c2 = line.charAt(j);
+                        if (c2 == '\\') {
+                            j++;
+                        } else
+                        if (c2 == c) {
+                            j++;
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                j++;
+            }
+
+            int codeEnd = commentStart == -1 ? n : commentStart;
+            while (codeEnd > 0 && LineGeometry.isBlank(line.charAt(codeEnd - 1))) codeEnd--;
+
+            this.firstNonBlankColumns[i] = firstNonBlank;
+            this.codeEnds[i]             = codeEnd;
+            this.commentStarts[i]        = commentStart;
+            this.firstTabs[i]            = line.indexOf('\t');
+        }
+    }
+
+    /**
+     * @param lineNo Counting from one
+     * @return       The text of the line, without the line separator
+     */
+    public String
+    getLine(int lineNo) { return this.lines[lineNo - 1]; }
+
+    /**
+     * @param lineNo Counting from one
+     * @return       The column (counting from zero) of the first non-blank character, or the length of the line iff
+     *               the line is blank
+     */
+    public int
+    getFirstNonBlankColumn(int lineNo) { return this.firstNonBlankColumns[lineNo - 1]; }
+
+    /**
+     * @param lineNo Counting from one
+     * @return       One plus the column (counting from zero) of the last non-blank character that precedes the
+     *               end-of-line comment (or the end of the line), or zero
+     */
+    public int
+    getCodeEnd(int lineNo) { return this.codeEnds[lineNo - 1]; }
+
+    /**
+     * @param lineNo Counting from one
+     * @return       The column (counting from zero) of the "{@code //}" that starts the end-of-line comment, or -1
+     *               iff the line has no end-of-line comment
+     */
+    public int
+    getCommentStart(int lineNo) { return this.commentStarts[lineNo - 1]; }
+
+    /**
+     * @return Whether the characters of the line before the given column are all blank
+     */
+    public boolean
+    isBlankBefore(int lineNo, int columnNo) { return this.firstNonBlankColumns[lineNo - 1] >= columnNo; }
+
+    /**
+     * @return Whether the characters of the line from the given column on are all blank, or blank up to an
+     *         end-of-line comment
+     */
+    public boolean
+    isBlankOrCommentFrom(int lineNo, int columnNo) { return this.codeEnds[lineNo - 1] <= columnNo; }
+
+    /**
+     * @return Whether the character at the given column of the line exists and is blank
+     */
+    public boolean
+    isBlankAt(int lineNo, int columnNo) {
+        String line = this.lines[lineNo - 1];
+        return columnNo < line.length() && LineGeometry.isBlank(line.charAt(columnNo));
+    }
+
+    /**
+     * @param lineNo Counting from one
+     * @return       The width of the leading SPACEs and TABs of the line, with TABs expanded; zero iff the line
+     *               consists only of SPACEs and TABs
+     */
+    public int
+    getIndentation(int lineNo, int tabWidth) {
+
+        int[] indentations = this.indentations;
+        if (indentations == null || tabWidth != this.tabWidth) {
+            this.setTabWidth(tabWidth);
+            this.indentations = (indentations = new int[this.lines.length]);
+            for (int i = 0; i < indentations.length; i++) {
+                indentations[i] = LineGeometry.calculateIndentation(this.lines[i], tabWidth);
+            }
+        }
+
+        return indentations[lineNo - 1];
+    }
+
+    /**
+     * @param lineNo   Counting from one
+     * @param columnNo Counting from zero
+     * @return         The column (counting from zero) that the given column of the line has when the TABs in the
+     *                 line are expanded
+     */
+    public int
+    getExpandedColumn(int lineNo, int columnNo, int tabWidth) {
+
+        // Notice: Only few lines contain TABs, and even fewer have TABs after their indentation.
+        int firstTab = this.firstTabs[lineNo - 1];
+        if (firstTab == -1 || columnNo <= firstTab) return columnNo;
+
+        if (tabWidth != this.tabWidth) this.setTabWidth(tabWidth);
+
+        int[][] expandedColumns = this.expandedColumns;
+        if (expandedColumns == null) this.expandedColumns = (expandedColumns = new int[this.lines.length][]);
+
+        int[] ec = expandedColumns[lineNo - 1];
+        if (ec == null) {
+            String line = this.lines[lineNo - 1];
+
+            expandedColumns[lineNo - 1] = (ec = new int[line.length() + 1]);
+
+            int len = 0;
+            for (int idx = 0; idx < line.length(); idx++) {
+                ec[idx] = len;
+                len     = line.charAt(idx) == '\t' ? (len / tabWidth + 1) * tabWidth : len + 1;
+            }
+            ec[line.length()] = len;
+        }
+
+        return ec[columnNo];
+    }
+
+    /**
+     * Invalidates all cached values that depend on the tab width.
+     */
+    private void
+    setTabWidth(int tabWidth) {
+        this.tabWidth        = tabWidth;
+        this.indentations    = null;
+        this.expandedColumns = null;
+    }
+
+    private static int
+    calculateIndentation(String line, int tabWidth) {
+
+        int result = 0;
+        for (int i = 0; i < line.length(); ++i) {
+            switch (line.charAt(i)) {
+
+            case ' ':
+                ++result;
+                break;
+
+            case '\t':
+                result += tabWidth - (result % tabWidth);
+                break;
+
+            default:
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /** @return Whether {@code c} matches the regular expression "{@code \s}" */
+    public static boolean
+    isBlank(char c) { return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r'; }
+}